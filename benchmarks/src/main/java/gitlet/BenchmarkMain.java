@@ -0,0 +1,30 @@
+package gitlet;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the gitlet benchmarks with the gc profiler enabled and JSON
+ * results, accepting the usual JMH command-line options.
+ * @author corey hu **/
+public class BenchmarkMain {
+
+    /** Runs the benchmarks selected by ARGS in the working directory,
+     * which must be empty or a previous benchmark directory.
+     * @param args JMH command-line options **/
+    public static void main(String... args) throws Exception {
+        RepoGenerator.wipe();
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Options opts = new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(cli.getResultFormat()
+                        .orElse(ResultFormatType.JSON))
+                .result(cli.getResult().orElse("../jmh-result.json"))
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** JMH benchmarks of gitlet's core operations on generated repositories
+ * of parameterized size. Every benchmark reports throughput and sampled
+ * latency; BenchmarkMain adds the gc profiler for allocation rates.
+ * @author corey hu **/
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitletBenchmark {
+
+    /** A generated repository with a side branch that merges cleanly
+     * into master. **/
+    @State(Scope.Benchmark)
+    public static class RepoState {
+        /** Number of files in the tree. **/
+        @Param({"100", "1000"})
+        public int files;
+        /** Number of commits on master. **/
+        @Param({"50"})
+        public int depth;
+        /** Number of extra branches. **/
+        @Param({"10"})
+        public int branches;
+        /** Size of each file in bytes. **/
+        @Param({"1024"})
+        public int fileSize;
+
+        /** The generator that built the repository. **/
+        RepoGenerator generator;
+        /** The head of master before the side branch is merged. **/
+        String mergeBase;
+        /** The head commit's full ID. **/
+        String headId;
+        /** The contents hashed by the sha1 benchmark. **/
+        byte[] contents;
+        /** Picks files to modify. **/
+        Random random = new Random(42);
+
+        /** Generates the repository and the side branch. **/
+        @Setup(Level.Trial)
+        public void generate() {
+            generator = new RepoGenerator(files, depth, branches,
+                    fileSize, 42);
+            generator.generate();
+            Repo repo = Repo.deserialize();
+            repo.makeBranch("side");
+            repo.checkout("side");
+            repo = Repo.deserialize();
+            generator.write(RepoGenerator.fileName(0));
+            repo.stage(RepoGenerator.fileName(0));
+            RepoGenerator.commit(repo, "side change");
+            repo.checkout("master");
+            repo = Repo.deserialize();
+            generator.write(RepoGenerator.fileName(files - 1));
+            repo.stage(RepoGenerator.fileName(files - 1));
+            RepoGenerator.commit(repo, "master change");
+            mergeBase = Commit.getHeadCommit().id();
+            headId = mergeBase;
+            CommitGraph.write(new File(".gitlet"));
+            Bitmaps.write(new File(".gitlet"));
+            contents = new byte[fileSize];
+            random.nextBytes(contents);
+        }
+
+        /** Returns the name of a random tracked file. **/
+        String anyFile() {
+            return RepoGenerator.fileName(random.nextInt(files));
+        }
+    }
+
+    /** Per-invocation state with one working file modified. **/
+    @State(Scope.Thread)
+    public static class Modified {
+        /** The modified file. **/
+        String file;
+
+        /** Modifies a random file of the repository in S.
+         * @param s the repository state **/
+        @Setup(Level.Invocation)
+        public void modify(RepoState s) {
+            file = s.anyFile();
+            s.generator.write(file);
+        }
+    }
+
+    /** Per-invocation state with one modification staged. **/
+    @State(Scope.Thread)
+    public static class Staged {
+        /** Stages a change to a random file of the repository in S.
+         * @param s the repository state **/
+        @Setup(Level.Invocation)
+        public void stage(RepoState s) {
+            String file = s.anyFile();
+            s.generator.write(file);
+            Repo repo = Repo.deserialize();
+            repo.stage(file);
+            repo.serialize();
+        }
+    }
+
+    /** Per-invocation state with master reset to before the merge. **/
+    @State(Scope.Thread)
+    public static class Unmerged {
+        /** Resets master in S to its head before merging.
+         * @param s the repository state **/
+        @Setup(Level.Invocation)
+        public void reset(RepoState s) {
+            Repo.deserialize().reset(s.mergeBase);
+        }
+    }
+
+    /** Stages a modified file, as the add command does.
+     * @param s the repository state
+     * @param m the modified file **/
+    @Benchmark
+    public void stage(RepoState s, Modified m) {
+        Repo repo = Repo.deserialize();
+        repo.stage(m.file);
+        repo.serialize();
+    }
+
+    /** Commits one staged change, as the commit command does.
+     * @param s the repository state
+     * @param staged a staged change **/
+    @Benchmark
+    public void commit(RepoState s, Staged staged) {
+        Repo repo = Repo.deserialize();
+        Commit.makeCommit("benchmark commit", repo);
+        repo.serialize();
+    }
+
+    /** Computes the status message.
+     * @param s the repository state
+     * @return the status message **/
+    @Benchmark
+    public String status(RepoState s) {
+        return Repo.deserialize().getStatusMsg();
+    }
+
+    /** Merges the side branch into master.
+     * @param s the repository state
+     * @param u master reset before the merge **/
+    @Benchmark
+    public void merge(RepoState s, Unmerged u) {
+        Repo.deserialize().merge("side");
+    }
+
+    /** Lists the ancestors of the head commit.
+     * @param s the repository state
+     * @return the ancestors **/
+    @Benchmark
+    public List<ObjectId> ancestors(RepoState s) {
+        return Commit.getHeadCommit().getAncestors();
+    }
+
+    /** Lists the commits on master that change one file, skipping the
+     * others by their changed-path filters.
+     * @param s the repository state
+     * @return the IDs of the commits **/
+    @Benchmark
+    public List<String> fileHistory(RepoState s) {
+        return CommitGraph.history(Commit.getHeadCommit(),
+                RepoGenerator.fileName(1));
+    }
+
+    /** Counts the commits master reaches from the reachability bitmaps.
+     * @param s the repository state
+     * @return the number of commits **/
+    @Benchmark
+    public int countCommits(RepoState s) {
+        File dir = new File(".gitlet");
+        return Bitmaps.read(dir).reach(dir, List.of(s.headId)).commitCount();
+    }
+
+    /** Looks up the head commit by its full ID through the cache.
+     * @param s the repository state
+     * @return the commit **/
+    @Benchmark
+    public Commit lookup(RepoState s) {
+        return Commit.lookup(s.headId);
+    }
+
+    /** Looks up the head commit by an abbreviated ID with a cold cache.
+     * @param s the repository state
+     * @return the commit **/
+    @Benchmark
+    public Commit lookupPrefixCold(RepoState s) {
+        ObjectCache.METADATA.clear();
+        return Commit.lookup(s.headId.substring(0, 8));
+    }
+
+    /** Hashes one file's worth of bytes.
+     * @param s the repository state
+     * @param bh sink for the hash **/
+    @Benchmark
+    public void sha1(RepoState s, Blackhole bh) {
+        bh.consume(Utils.sha1(s.contents));
+    }
+}
@@ -0,0 +1,394 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/** Replays a random mix of gitlet commands against a generated repository
+ * and reports, per command, latency percentiles, bytes written and peak
+ * resident memory. Unlike the JMH benchmarks, which time library calls in
+ * a warm JVM, the harness can run every command through the real CLI in a
+ * fresh JVM (mode cli), so start-up, deserialization and output are part
+ * of each measurement. Mode inproc runs the same workload through
+ * Main.main in the harness's own JVM.
+ * <pre>
+ *   java -cp benchmarks.jar gitlet.LoadHarness [--shape linear|branchy|merges]
+ *       [--sizes fixed|uniform|pareto] [--files N] [--depth N]
+ *       [--branches N] [--size BYTES] [--ops N] [--seed N]
+ *       [--mix add=30,commit=10,status=30,checkout=10,merge=5,log=15]
+ *       [--mode cli|inproc|both] [--out FILE]
+ * </pre>
+ * Work that only prepares a command, such as building a diverged branch
+ * before a merge, runs in process and is not measured. Both modes replay
+ * the same workload on identically generated repositories. Results go to
+ * FILE as JSON, ../load-result.json by default, and to standard output as
+ * a table. Like the benchmarks, the harness must run in an empty or
+ * previously used scratch directory.
+ * @author corey hu **/
+public class LoadHarness {
+
+    /** Commands the harness knows how to replay. **/
+    private static final List<String> COMMANDS = Arrays.asList(
+            "add", "commit", "status", "checkout", "merge", "log");
+    /** Percentiles reported for every command. **/
+    private static final double[] PERCENTILES = {0.50, 0.95, 0.99};
+
+    /** Index of the latency in nanoseconds in a sample. **/
+    private static final int NANOS = 0;
+    /** Index of the bytes sent to storage in a sample. **/
+    private static final int WRITE_BYTES = 1;
+    /** Index of the bytes passed to write calls in a sample. **/
+    private static final int WCHAR = 2;
+    /** Index of the peak resident set in kilobytes in a sample. **/
+    private static final int HWM_KB = 3;
+
+    /** Option values, keyed by name without the leading dashes. **/
+    private final Map<String, String> options = new LinkedHashMap<>();
+    /** Relative weight of each command in the workload. **/
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+    /** Samples per mode, then per command. **/
+    private final Map<String, Map<String, List<long[]>>> samples =
+            new LinkedHashMap<>();
+    /** Picks commands and files; reseeded for every mode. **/
+    private Random random;
+    /** The generator of the current repository. **/
+    private RepoGenerator generator;
+    /** Counter making branch names and commit messages unique. **/
+    private int serial;
+
+    /** A harness configured by the command-line ARGS.
+     * @param args the options described in the class comment **/
+    LoadHarness(String... args) {
+        options.put("shape", "linear");
+        options.put("sizes", "fixed");
+        options.put("files", "100");
+        options.put("depth", "50");
+        options.put("branches", "5");
+        options.put("size", "1024");
+        options.put("ops", "200");
+        options.put("seed", "42");
+        options.put("mix",
+                "add=30,commit=10,status=30,checkout=10,merge=5,log=15");
+        options.put("mode", "both");
+        options.put("out", "../load-result.json");
+        for (int i = 0; i < args.length; i += 1) {
+            String arg = args[i];
+            String key = arg.replaceFirst("^--", "");
+            if (!arg.startsWith("--") || !options.containsKey(key)
+                    || i + 1 == args.length) {
+                throw new IllegalArgumentException("Bad option: " + arg);
+            }
+            options.put(key, args[++i]);
+        }
+        for (String entry : options.get("mix").split(",")) {
+            String[] kv = entry.split("=");
+            if (kv.length != 2 || !COMMANDS.contains(kv[0])) {
+                throw new IllegalArgumentException("Bad mix: " + entry);
+            }
+            mix.put(kv[0], Integer.parseInt(kv[1]));
+        }
+    }
+
+    /** Runs the load test described by ARGS in the working directory.
+     * @param args the options described in the class comment **/
+    public static void main(String... args) throws IOException {
+        LoadHarness harness = new LoadHarness(args);
+        String mode = harness.options.get("mode");
+        for (String m : new String[] {"cli", "inproc"}) {
+            if (mode.equals(m) || mode.equals("both")) {
+                harness.run(m);
+            }
+        }
+        String json = harness.toJson();
+        File out = new File(harness.options.get("out"));
+        Utils.writeContents(out, json);
+        System.out.print(harness.table());
+        System.out.println("Results written to " + out.getCanonicalPath());
+    }
+
+    /** Returns the integer option KEY.
+     * @param key an option name **/
+    private int intOption(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    /** Generates a fresh repository and replays the workload in MODE.
+     * @param mode cli or inproc **/
+    void run(String mode) throws IOException {
+        long seed = Long.parseLong(options.get("seed"));
+        generator = new RepoGenerator(intOption("files"),
+                intOption("depth"), intOption("branches"),
+                intOption("size"),
+                RepoGenerator.Shape.valueOf(
+                        options.get("shape").toUpperCase(Locale.ROOT)),
+                RepoGenerator.Sizes.valueOf(
+                        options.get("sizes").toUpperCase(Locale.ROOT)),
+                seed);
+        quietly(generator::generate);
+        random = new Random(seed);
+        serial = 0;
+        Map<String, List<long[]>> byCommand = new LinkedHashMap<>();
+        samples.put(mode, byCommand);
+        for (int k = 0; k < intOption("ops"); k += 1) {
+            String cmd = pick();
+            String[] line = prepare(cmd);
+            long[] sample = mode.equals("cli") ? cli(line) : inproc(line);
+            byCommand.computeIfAbsent(cmd, c -> new ArrayList<>())
+                .add(sample);
+        }
+    }
+
+    /** Returns a command drawn from the mix. **/
+    private String pick() {
+        int total = 0;
+        for (int w : mix.values()) {
+            total += w;
+        }
+        int r = random.nextInt(Math.max(1, total));
+        for (Map.Entry<String, Integer> e : mix.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) {
+                return e.getKey();
+            }
+        }
+        return "status";
+    }
+
+    /** Puts the repository in a state where CMD has work to do, without
+     * measuring it, and returns the command line to measure.
+     * @param cmd one of COMMANDS **/
+    private String[] prepare(String cmd) {
+        serial += 1;
+        switch (cmd) {
+        case "add": {
+            String file = generator.anyFile();
+            generator.write(file);
+            return new String[] {"add", file};
+        }
+        case "commit": {
+            String file = generator.anyFile();
+            generator.write(file);
+            quietly("add", file);
+            return new String[] {"commit", "load commit " + serial};
+        }
+        case "checkout": {
+            settle();
+            String current = RefTable.head();
+            List<String> names = new ArrayList<>(RefTable.read().names());
+            names.remove(current);
+            if (names.isEmpty()) {
+                return new String[] {"checkout", current};
+            }
+            return new String[] {"checkout",
+                names.get(random.nextInt(names.size()))};
+        }
+        case "merge": {
+            settle();
+            String current = RefTable.head();
+            String topic = "load-topic" + serial;
+            int half = Math.max(1, generator.getFiles() / 2);
+            quietly("branch", topic);
+            quietly("checkout", topic);
+            commitFile(RepoGenerator.fileName(random.nextInt(half)));
+            quietly("checkout", current);
+            commitFile(RepoGenerator.fileName(half + random.nextInt(
+                    Math.max(1, generator.getFiles() - half))));
+            return new String[] {"merge", topic};
+        }
+        case "log":
+            return new String[] {"log"};
+        default:
+            return new String[] {"status"};
+        }
+    }
+
+    /** Commits whatever is staged together with a fresh change, so that
+     * commands refusing to run with uncommitted changes can proceed. **/
+    private void settle() {
+        commitFile(generator.anyFile());
+    }
+
+    /** Rewrites FILE and commits it along with anything staged.
+     * @param file a tracked file **/
+    private void commitFile(String file) {
+        generator.write(file);
+        quietly("add", file);
+        quietly("commit", "load setup " + serial);
+    }
+
+    /** Runs the gitlet command ARGS in process with output discarded.
+     * @param args a gitlet command line **/
+    private static void quietly(String... args) {
+        quietly(() -> Main.main(args));
+    }
+
+    /** Runs BODY with standard output discarded.
+     * @param body the work to run **/
+    private static void quietly(Runnable body) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            body.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /** Runs the gitlet command LINE in process and returns its sample.
+     * @param line a gitlet command line **/
+    private static long[] inproc(String[] line) {
+        long bytes = Probe.io("write_bytes");
+        long chars = Probe.io("wchar");
+        long start = System.nanoTime();
+        quietly(line);
+        long nanos = System.nanoTime() - start;
+        return new long[] {nanos, delta(bytes, Probe.io("write_bytes")),
+            delta(chars, Probe.io("wchar")), Probe.peakRssKb()};
+    }
+
+    /** Returns AFTER - BEFORE, or -1 if either is unknown.
+     * @param before a counter's earlier value
+     * @param after its later value **/
+    private static long delta(long before, long after) {
+        return before < 0 || after < 0 ? -1 : after - before;
+    }
+
+    /** Runs the gitlet command LINE in a new JVM through Probe and
+     * returns its sample.
+     * @param line a gitlet command line **/
+    private static long[] cli(String[] line) throws IOException {
+        List<String> cmd = new ArrayList<>(Arrays.asList(
+                System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                Probe.class.getName()));
+        cmd.addAll(Arrays.asList(line));
+        ProcessBuilder builder = new ProcessBuilder(cmd)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        String report = null;
+        StringBuilder errors = new StringBuilder();
+        try (BufferedReader err = new BufferedReader(
+                new InputStreamReader(process.getErrorStream()))) {
+            for (String s = err.readLine(); s != null; s = err.readLine()) {
+                if (s.startsWith(Probe.PREFIX)) {
+                    report = s;
+                } else {
+                    errors.append(s).append('\n');
+                }
+            }
+        }
+        try {
+            process.waitFor();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        long nanos = System.nanoTime() - start;
+        if (report == null) {
+            throw new IllegalStateException(String.join(" ", line)
+                    + " failed:\n" + errors);
+        }
+        return new long[] {nanos, Probe.parse(report, "write_bytes"),
+            Probe.parse(report, "wchar"), Probe.parse(report, "hwm_kb")};
+    }
+
+    /** Returns the summary of SAMPLES: count, the latency percentiles and
+     * maximum in nanoseconds, mean bytes written and wchar, and peak RSS.
+     * @param list the samples of one command in one mode **/
+    private static long[] summarize(List<long[]> list) {
+        long[] nanos = new long[list.size()];
+        long bytes = 0;
+        long chars = 0;
+        long hwm = -1;
+        for (int i = 0; i < nanos.length; i += 1) {
+            long[] s = list.get(i);
+            nanos[i] = s[NANOS];
+            bytes += s[WRITE_BYTES];
+            chars += s[WCHAR];
+            hwm = Math.max(hwm, s[HWM_KB]);
+        }
+        Arrays.sort(nanos);
+        long[] result = new long[PERCENTILES.length + 5];
+        result[0] = nanos.length;
+        for (int p = 0; p < PERCENTILES.length; p += 1) {
+            int rank = (int) Math.ceil(PERCENTILES[p] * nanos.length);
+            result[p + 1] = nanos[Math.max(0, rank - 1)];
+        }
+        result[PERCENTILES.length + 1] = nanos[nanos.length - 1];
+        result[PERCENTILES.length + 2] = bytes / nanos.length;
+        result[PERCENTILES.length + 3] = chars / nanos.length;
+        result[PERCENTILES.length + 4] = hwm;
+        return result;
+    }
+
+    /** Returns NANOS in milliseconds with three decimals.
+     * @param nanos a duration in nanoseconds **/
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /** Returns the configuration and results as a JSON document. **/
+    String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"config\": {");
+        String sep = "";
+        for (Map.Entry<String, String> e : options.entrySet()) {
+            json.append(sep).append("\n    \"").append(e.getKey())
+                .append("\": \"").append(e.getValue()).append('"');
+            sep = ",";
+        }
+        json.append("\n  },\n  \"results\": [");
+        sep = "";
+        for (Map.Entry<String, Map<String, List<long[]>>> mode
+                 : samples.entrySet()) {
+            for (Map.Entry<String, List<long[]>> cmd
+                     : mode.getValue().entrySet()) {
+                long[] s = summarize(cmd.getValue());
+                json.append(sep).append("\n    {\"mode\": \"")
+                    .append(mode.getKey()).append("\", \"command\": \"")
+                    .append(cmd.getKey()).append("\", \"count\": ")
+                    .append(s[0]).append(", \"p50Ms\": ")
+                    .append(millis(s[1])).append(", \"p95Ms\": ")
+                    .append(millis(s[2])).append(", \"p99Ms\": ")
+                    .append(millis(s[3])).append(", \"maxMs\": ")
+                    .append(millis(s[4])).append(", \"writeBytes\": ")
+                    .append(s[5]).append(", \"wcharBytes\": ")
+                    .append(s[6]).append(", \"peakRssKb\": ")
+                    .append(s[7]).append('}');
+                sep = ",";
+            }
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    /** Returns the results as a table for people. **/
+    String table() {
+        StringBuilder t = new StringBuilder(String.format(Locale.ROOT,
+                "%-7s %-9s %6s %10s %10s %10s %10s %12s %10s%n", "mode",
+                "command", "count", "p50 ms", "p95 ms", "p99 ms", "max ms",
+                "write B/op", "peak KB"));
+        for (Map.Entry<String, Map<String, List<long[]>>> mode
+                 : samples.entrySet()) {
+            for (Map.Entry<String, List<long[]>> cmd
+                     : mode.getValue().entrySet()) {
+                long[] s = summarize(cmd.getValue());
+                t.append(String.format(Locale.ROOT,
+                        "%-7s %-9s %6d %10s %10s %10s %10s %12d %10d%n",
+                        mode.getKey(), cmd.getKey(), s[0], millis(s[1]),
+                        millis(s[2]), millis(s[3]), millis(s[4]), s[5],
+                        s[7]));
+            }
+        }
+        return t.toString();
+    }
+}
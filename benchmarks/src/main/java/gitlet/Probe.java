@@ -0,0 +1,73 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/** Runs one gitlet command like Main, then reports what the process
+ * cost on standard error as a single line
+ * <pre>
+ *   #probe write_bytes=N wchar=N hwm_kb=N
+ * </pre>
+ * read from /proc/self. The load harness launches the real CLI through
+ * this class so that every measurement includes JVM start-up, repository
+ * deserialization and output. Values that cannot be read are -1.
+ * @author corey hu **/
+public class Probe {
+
+    /** Prefix of the report line. **/
+    static final String PREFIX = "#probe ";
+
+    /** Runs the gitlet command ARGS and reports its cost.
+     * @param args a gitlet command line **/
+    public static void main(String... args) {
+        Main.main(args);
+        System.out.flush();
+        System.err.println(PREFIX + "write_bytes=" + io("write_bytes")
+                + " wchar=" + io("wchar") + " hwm_kb=" + peakRssKb());
+    }
+
+    /** Returns the counter KEY of /proc/self/io, or -1.
+     * @param key write_bytes, wchar, ... **/
+    static long io(String key) {
+        return field("/proc/self/io", key + ":");
+    }
+
+    /** Returns the peak resident set size of this process in kilobytes,
+     * or -1. **/
+    static long peakRssKb() {
+        return field("/proc/self/status", "VmHWM:");
+    }
+
+    /** Returns the number following KEY on its line of the /proc file
+     * PATH, or -1 if there is none.
+     * @param path a file of "key: value" lines
+     * @param key the key, with its colon **/
+    private static long field(String path, String key) {
+        try {
+            List<String> lines = Files.readAllLines(new File(path).toPath());
+            for (String line : lines) {
+                if (line.startsWith(key)) {
+                    return Long.parseLong(line.substring(key.length())
+                            .trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /** Returns the value of KEY in the report LINE, or -1.
+     * @param line a report line
+     * @param key write_bytes, wchar or hwm_kb **/
+    static long parse(String line, String key) {
+        for (String pair : line.substring(PREFIX.length()).split(" ")) {
+            if (pair.startsWith(key + "=")) {
+                return Long.parseLong(pair.substring(key.length() + 1));
+            }
+        }
+        return -1;
+    }
+}
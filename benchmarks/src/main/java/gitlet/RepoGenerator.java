@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** Builds synthetic gitlet repositories in the working directory for
+ * benchmarking. Gitlet only works on the current directory, so the
+ * generator wipes it first; to keep that safe it only runs in a directory
+ * that is empty or that it has marked as its own.
+ * @author corey hu **/
+class RepoGenerator {
+
+    /** File marking a directory as a benchmark scratch directory. **/
+    static final String MARKER = ".gitlet-bench";
+
+    /** The shape of the generated history. **/
+    enum Shape {
+        /** One line of commits with branches pointing into it. **/
+        LINEAR,
+        /** A trunk with a line of commits on every branch. **/
+        BRANCHY,
+        /** A trunk that merges a short topic branch every few commits. **/
+        MERGES
+    }
+
+    /** How file sizes are distributed around the nominal size. **/
+    enum Sizes {
+        /** Every file has the nominal size. **/
+        FIXED,
+        /** Sizes are uniform between one byte and twice the nominal. **/
+        UNIFORM,
+        /** Sizes follow a heavy-tailed Pareto distribution whose minimum
+         * is half the nominal size, capped at a hundred times it. **/
+        PARETO
+    }
+
+    /** Number of files in the generated tree. **/
+    private final int files;
+    /** Number of commits on master after the initial one. **/
+    private final int depth;
+    /** Number of extra branches. **/
+    private final int branches;
+    /** Nominal size of each file in bytes. **/
+    private final int fileSize;
+    /** The shape of the history. **/
+    private final Shape shape;
+    /** The distribution of file sizes. **/
+    private final Sizes sizes;
+    /** Source of file contents and of which files each commit changes. **/
+    private final Random random;
+
+    /** A generator of linear repositories with FILES files of FILESIZE
+     * bytes, DEPTH commits and BRANCHES branches, deterministic for SEED.
+     * @param files number of files
+     * @param depth number of commits
+     * @param branches number of extra branches
+     * @param fileSize size of each file in bytes
+     * @param seed random seed **/
+    RepoGenerator(int files, int depth, int branches, int fileSize,
+                  long seed) {
+        this(files, depth, branches, fileSize, Shape.LINEAR, Sizes.FIXED,
+                seed);
+    }
+
+    /** A generator of repositories with FILES files of nominal size
+     * FILESIZE distributed as SIZES, DEPTH commits on master and BRANCHES
+     * branches, whose history has SHAPE, deterministic for SEED.
+     * @param files number of files
+     * @param depth number of commits on master
+     * @param branches number of extra branches
+     * @param fileSize nominal size of each file in bytes
+     * @param shape shape of the history
+     * @param sizes distribution of file sizes
+     * @param seed random seed **/
+    RepoGenerator(int files, int depth, int branches, int fileSize,
+                  Shape shape, Sizes sizes, long seed) {
+        this.files = files;
+        this.depth = depth;
+        this.branches = branches;
+        this.fileSize = fileSize;
+        this.shape = shape;
+        this.sizes = sizes;
+        this.random = new Random(seed);
+    }
+
+    /** Empties the working directory after checking that it is a scratch
+     * directory, marking it as one. **/
+    static void wipe() {
+        File cwd = new File(".").getAbsoluteFile();
+        String[] entries = cwd.list();
+        boolean marked = new File(cwd, MARKER).isFile();
+        if (!marked && entries != null && entries.length > 0) {
+            throw new IllegalStateException(cwd + " is not empty and is not"
+                    + " a gitlet benchmark directory; refusing to wipe it");
+        }
+        try (Stream<Path> walk = Files.walk(cwd.toPath())) {
+            walk.sorted(Comparator.reverseOrder())
+                .filter(p -> !p.equals(cwd.toPath()))
+                .forEach(p -> p.toFile().delete());
+            Files.createFile(new File(cwd, MARKER).toPath());
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Returns the name of the Ith generated file.
+     * @param i file index **/
+    static String fileName(int i) {
+        return "f" + i + ".txt";
+    }
+
+    /** Returns the number of files in the generated tree. **/
+    int getFiles() {
+        return files;
+    }
+
+    /** Returns the name of a random file of the tree. **/
+    String anyFile() {
+        return fileName(random.nextInt(files));
+    }
+
+    /** Wipes the working directory and generates the repository there,
+     * leaving master checked out and nothing staged. **/
+    void generate() {
+        wipe();
+        new Repo().init();
+        Repo repo = Repo.deserialize();
+        for (int i = 0; i < files; i += 1) {
+            write(fileName(i));
+            repo.stage(fileName(i));
+        }
+        commit(repo, "generated tree");
+        switch (shape) {
+        case BRANCHY:
+            generateBranchy();
+            break;
+        case MERGES:
+            generateMerges();
+            break;
+        default:
+            generateLinear();
+            break;
+        }
+    }
+
+    /** Generates DEPTH commits on master with the branches spread evenly
+     * along it. **/
+    private void generateLinear() {
+        int spacing = branches == 0 ? 0 : Math.max(1, depth / branches);
+        int made = 0;
+        for (int d = 1; d < depth; d += 1) {
+            if (made < branches && d % spacing == 0) {
+                Repo.deserialize().makeBranch("branch" + made);
+                made += 1;
+            }
+            change(1 + random.nextInt(Math.max(1, files / 20)),
+                    "generated commit " + d);
+        }
+        for (; made < branches; made += 1) {
+            Repo.deserialize().makeBranch("branch" + made);
+        }
+    }
+
+    /** Generates half of DEPTH commits on master, then for each branch a
+     * line of commits forking from a later point of master, so that the
+     * branches together hold the other half. **/
+    private void generateBranchy() {
+        int trunk = Math.max(1, depth / 2);
+        int perBranch = branches == 0 ? 0
+                : Math.max(1, (depth - trunk) / branches);
+        for (int b = 0; b < branches || trunk > 0; b += 1) {
+            int steps = branches == 0 ? trunk
+                    : Math.max(1, trunk / Math.max(1, branches - b));
+            for (int d = 0; d < steps && trunk > 0; d += 1, trunk -= 1) {
+                change(1, "trunk commit");
+            }
+            if (b >= branches) {
+                continue;
+            }
+            String name = "branch" + b;
+            Repo.deserialize().makeBranch(name);
+            Repo.deserialize().checkout(name);
+            for (int d = 0; d < perBranch; d += 1) {
+                change(1, name + " commit " + d);
+            }
+            Repo.deserialize().checkout("master");
+        }
+    }
+
+    /** Generates DEPTH commits on master, merging a two-commit topic
+     * branch every fourth commit. Topic branches change the first half of
+     * the files and master the second, so merges never conflict. The
+     * last BRANCHES topic branches are kept. **/
+    private void generateMerges() {
+        int topics = 0;
+        for (int d = 1; d < depth; d += 1) {
+            if (d % 4 != 0 || files < 2) {
+                change(1, "generated commit " + d);
+                continue;
+            }
+            String name = "topic" + topics;
+            Repo.deserialize().makeBranch(name);
+            Repo.deserialize().checkout(name);
+            for (int k = 0; k < 2; k += 1) {
+                changeFile(fileName(random.nextInt(files / 2)),
+                        name + " commit " + k);
+            }
+            Repo.deserialize().checkout("master");
+            changeFile(fileName(files / 2 + random.nextInt(files - files / 2)),
+                    "generated commit " + d);
+            Repo.deserialize().merge(name);
+            if (topics >= branches) {
+                Repo.deserialize().removeBranch("topic" + (topics - branches));
+            }
+            topics += 1;
+        }
+    }
+
+    /** Modifies N random files and commits them with message MSG.
+     * @param n number of files to change
+     * @param msg the commit message **/
+    void change(int n, String msg) {
+        Repo repo = Repo.deserialize();
+        for (int k = 0; k < n; k += 1) {
+            String name = anyFile();
+            write(name);
+            repo.stage(name);
+        }
+        commit(repo, msg);
+    }
+
+    /** Modifies NAME and commits it with message MSG.
+     * @param name the file to change
+     * @param msg the commit message **/
+    void changeFile(String name, String msg) {
+        Repo repo = Repo.deserialize();
+        write(name);
+        repo.stage(name);
+        commit(repo, msg);
+    }
+
+    /** Returns a file size drawn from the size distribution. **/
+    private int nextSize() {
+        switch (sizes) {
+        case UNIFORM:
+            return 1 + random.nextInt(Math.max(1, 2 * fileSize));
+        case PARETO:
+            double scale = Math.max(1, fileSize / 2.0);
+            double x = scale / Math.pow(1 - random.nextDouble(), 1 / 1.5);
+            return (int) Math.min(x, 100.0 * fileSize);
+        default:
+            return fileSize;
+        }
+    }
+
+    /** Overwrites the working file NAME with fresh random contents.
+     * @param name the file to write **/
+    void write(String name) {
+        byte[] contents = new byte[nextSize()];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) ('a' + random.nextInt(26));
+            if (i % 64 == 63) {
+                contents[i] = '\n';
+            }
+        }
+        Utils.writeContents(new File(name), contents);
+    }
+
+    /** Commits everything staged in REPO with message MSG.
+     * @param repo the repository
+     * @param msg the commit message **/
+    static void commit(Repo repo, String msg) {
+        Commit.makeCommit(msg, repo);
+        repo.serialize();
+    }
+}
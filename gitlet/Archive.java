@@ -0,0 +1,229 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Archives of the files of a commit, as a tar or zip stream, read from
+ * the object store without touching the working directory or the
+ * staging area. Files go in name order and are dated by the commit, so
+ * an archive of a commit is the same every time it is made. Blobs are
+ * read on a pool of threads a window ahead of the one being written, so
+ * no more than the window's blobs are held at once.
+ * @author corey hu **/
+class Archive {
+
+    /** Blobs read ahead of the one being written, per thread. **/
+    private static final int AHEAD_PER_THREAD = 4;
+    /** Size of the output buffer. **/
+    private static final int BUFFER = 1 << 16;
+    /** Size of a tar block. **/
+    private static final int BLOCK = 512;
+    /** The longest name a tar header holds. **/
+    private static final int NAME_LENGTH = 100;
+
+    /** The format being written, "tar" or "zip". **/
+    private final String format;
+    /** The commit archived. **/
+    private final Commit commit;
+
+    /** An archive in FORMAT of the files of COMMIT.
+     * @param format "tar" or "zip"
+     * @param commit the commit archived **/
+    Archive(String format, Commit commit) {
+        this.format = format;
+        this.commit = commit;
+    }
+
+    /** Writes the archive to FILE, or to standard output if FILE is
+     * null.
+     * @param file where the archive goes, or null **/
+    void write(File file) {
+        try (OutputStream out = new BufferedOutputStream(file == null
+                ? new FileOutputStream(FileDescriptor.out)
+                : new FileOutputStream(file), BUFFER)) {
+            if (format.equals("zip")) {
+                writeZip(out);
+            } else {
+                writeTar(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the files as a tar stream to OUT.
+     * @param out the stream written to **/
+    private void writeTar(OutputStream out) throws IOException {
+        long seconds = commit.getTime() / 1000;
+        eachFile((name, contents) -> {
+            byte[] path = name.getBytes(StandardCharsets.UTF_8);
+            if (path.length > NAME_LENGTH) {
+                byte[] record = paxRecord("path", name);
+                out.write(tarHeader("././@PaxHeader", record.length,
+                        seconds, 'x'));
+                writePadded(out, record);
+            }
+            out.write(tarHeader(name, contents.length, seconds, '0'));
+            writePadded(out, contents);
+        });
+        out.write(new byte[2 * BLOCK]);
+    }
+
+    /** Writes the files as a zip stream to OUT.
+     * @param out the stream written to **/
+    private void writeZip(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out,
+                StandardCharsets.UTF_8);
+        eachFile((name, contents) -> {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(commit.getTime());
+            zip.putNextEntry(entry);
+            zip.write(contents);
+            zip.closeEntry();
+        });
+        zip.finish();
+    }
+
+    /** Gives each file of the commit, in name order, with its contents,
+     * to ACTION, reading blobs a window ahead on a pool of threads.
+     * @param action what is done with each file **/
+    private void eachFile(FileAction action) throws IOException {
+        Map<String, String> files = new TreeMap<>(commit.getBlobs());
+        Promisor.prefetch(files.values());
+        File dir = new File(Worktree.common(), "FILES");
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<byte[]>> ahead = new ArrayDeque<>();
+        Deque<String> names = new ArrayDeque<>();
+        try {
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                if (ahead.size() == AHEAD_PER_THREAD * threads) {
+                    action.apply(names.removeFirst(),
+                            take(ahead.removeFirst()));
+                }
+                String sha = e.getValue();
+                names.addLast(e.getKey());
+                ahead.addLast(pool.submit(() -> Blob.deserialize(
+                        new File(dir, sha).getPath())
+                        .getContents().getBytes()));
+            }
+            while (!ahead.isEmpty()) {
+                action.apply(names.removeFirst(), take(ahead.removeFirst()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Waits for and returns CONTENTS.
+     * @param contents a blob's contents being read **/
+    private static byte[] take(Future<byte[]> contents) {
+        try {
+            return contents.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted while reading blobs.");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a ustar header for a file NAME of SIZE bytes dated SECONDS
+     * since the epoch, of entry type TYPE. A NAME too long for the header
+     * is cut short, for a pax record before it to give in full.
+     * @param name the file's name
+     * @param size its length
+     * @param seconds its modification time
+     * @param type '0' for a file or 'x' for pax records **/
+    private static byte[] tarHeader(String name, long size, long seconds,
+                                    char type) {
+        byte[] header = new byte[BLOCK];
+        byte[] path = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(path, 0, header, 0,
+                Math.min(path.length, NAME_LENGTH));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, seconds);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII),
+                0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        putOctal(header, 148, 7, sum);
+        return header;
+    }
+
+    /** Writes VALUE in octal, zero-padded and NUL-terminated, to the LEN
+     * bytes of HEADER at OFFSET.
+     * @param header a tar header
+     * @param offset where the field starts
+     * @param len the field's length
+     * @param value the number written **/
+    private static void putOctal(byte[] header, int offset, int len,
+                                 long value) {
+        String digits = Long.toOctalString(value);
+        digits = "0".repeat(Math.max(0, len - 1 - digits.length())) + digits;
+        byte[] bytes = digits.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, len - 1);
+        header[offset + len - 1] = 0;
+    }
+
+    /** Returns the pax extended header record setting KEY to VALUE,
+     * which begins with its own length in decimal.
+     * @param key the record's key
+     * @param value its value **/
+    private static byte[] paxRecord(String key, String value) {
+        int rest = (" " + key + "=" + value + "\n")
+                .getBytes(StandardCharsets.UTF_8).length;
+        int len = rest + Integer.toString(rest).length();
+        if (Integer.toString(len).length() > Integer.toString(rest).length()) {
+            len += 1;
+        }
+        return (len + " " + key + "=" + value + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Writes BYTES to OUT, padded with zeros to a whole block.
+     * @param out the tar stream
+     * @param bytes the entry's data **/
+    private static void writePadded(OutputStream out, byte[] bytes)
+        throws IOException {
+        out.write(bytes);
+        int tail = bytes.length % BLOCK;
+        if (tail != 0) {
+            out.write(new byte[BLOCK - tail]);
+        }
+    }
+
+    /** Something done with each file in an archive. **/
+    private interface FileAction {
+        /** Does it with the file NAME holding CONTENTS.
+         * @param name the file's name
+         * @param contents its contents **/
+        void apply(String name, byte[] contents) throws IOException;
+    }
+}
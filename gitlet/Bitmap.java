@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** A fixed-size set of small integers, one bit each, kept as plain words
+ * in memory and compressed on disk in the manner of EWAH: a marker word
+ * says how many words that follow are all zeros or all ones, stored as
+ * no words at all, and how many literal words come after them. A
+ * compressed bitmap is or'ed in without being expanded first, so reading
+ * one costs only its compressed size.
+ * @author corey hu **/
+class Bitmap {
+
+    /** Bits in a word. **/
+    private static final int WORD = 64;
+    /** The longest run a marker can hold. **/
+    private static final int MAX_RUN = Integer.MAX_VALUE;
+
+    /** The bits, WORD to a word. **/
+    private final long[] words;
+
+    /** An empty bitmap of SIZE bits.
+     * @param size the number of bits **/
+    Bitmap(int size) {
+        words = new long[(size + WORD - 1) / WORD];
+    }
+
+    /** Sets bit I.
+     * @param i a bit **/
+    void set(int i) {
+        words[i / WORD] |= 1L << (i % WORD);
+    }
+
+    /** Returns whether bit I is set.
+     * @param i a bit **/
+    boolean get(int i) {
+        return (words[i / WORD] & (1L << (i % WORD))) != 0;
+    }
+
+    /** Clears every bit that is set in OTHER, of the same size.
+     * @param other a bitmap **/
+    void andNot(Bitmap other) {
+        for (int w = 0; w < words.length; w += 1) {
+            words[w] &= ~other.words[w];
+        }
+    }
+
+    /** Returns the number of bits set from FROM up to, but not including,
+     * TO.
+     * @param from the first bit counted
+     * @param to the bit after the last **/
+    int cardinality(int from, int to) {
+        int result = 0;
+        for (int i = nextSetBit(from); i >= 0 && i < to;
+             i = nextSetBit(i + 1)) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Returns the first bit set at or after FROM, or -1 if there is none.
+     * @param from a bit **/
+    int nextSetBit(int from) {
+        int w = from / WORD;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << (from % WORD));
+        while (word == 0) {
+            w += 1;
+            if (w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return w * WORD + Long.numberOfTrailingZeros(word);
+    }
+
+    /** Returns the compressed form of the bitmap: a series of marker
+     * words, each with the value of a run in its top bit, the run's length
+     * in words in the next 31 and the number of literal words following it
+     * in the low 32, each marker followed by its literals. **/
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int w = 0;
+            while (w < words.length) {
+                long fill = words[w];
+                int run = 0;
+                if (fill == 0 || fill == -1L) {
+                    while (w < words.length && words[w] == fill
+                            && run < MAX_RUN) {
+                        run += 1;
+                        w += 1;
+                    }
+                }
+                int start = w;
+                while (w < words.length && words[w] != 0
+                        && words[w] != -1L) {
+                    w += 1;
+                }
+                out.writeLong((run > 0 && fill != 0 ? Long.MIN_VALUE : 0)
+                        | (long) run << 32 | (w - start));
+                for (int k = start; k < w; k += 1) {
+                    out.writeLong(words[k]);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Sets every bit set in the compressed bitmap, of this size, that
+     * starts at START in BUF.
+     * @param buf the bytes holding it
+     * @param start where it starts **/
+    void or(ByteBuffer buf, int start) {
+        int at = start;
+        int w = 0;
+        while (w < words.length) {
+            long marker = buf.getLong(at);
+            at += 8;
+            int run = (int) ((marker >>> 32) & MAX_RUN);
+            if (marker < 0) {
+                for (int k = w; k < w + run; k += 1) {
+                    words[k] = -1L;
+                }
+            }
+            w += run;
+            for (int k = (int) marker; k > 0; k -= 1) {
+                words[w] |= buf.getLong(at);
+                at += 8;
+                w += 1;
+            }
+        }
+    }
+}
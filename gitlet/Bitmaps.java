@@ -0,0 +1,376 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Reachability bitmaps, kept in .gitlet/bitmaps. Every stored object
+ * has a position: commits first, by their rank among the sorted commit
+ * IDs, then blobs, likewise. Selected commits, every ref's tip and every
+ * SPACING'th commit back along its first parents, have a bitmap with the
+ * position of each commit and blob they reach set. The file holds
+ * <pre>
+ *   int MAGIC, byte idLength, int commits, int blobs, int selected,
+ *   commits raw IDs, sorted, then blobs raw IDs, sorted,
+ *   selected ints, the positions of the selected commits, ascending,
+ *   selected ints, where each bitmap ends,
+ *   the bitmaps, compressed by Bitmap
+ * </pre>
+ * A walk for what some commits reach or'es in the bitmap of each
+ * selected commit it meets instead of going on, so it reads at most the
+ * few commits between selected ones; commits made since the file was
+ * written are walked by reading them. Which objects a remote lacks and
+ * how many commits a branch has then come from set operations rather
+ * than full walks. The file is rewritten by bitmap write and by gc.
+ * @author corey hu **/
+class Bitmaps {
+
+    /** The first bytes of the file, "GLB1". **/
+    private static final int MAGIC = 0x474c4231;
+    /** Commits along a first-parent history between selected ones. **/
+    private static final int SPACING = 100;
+    /** Bytes before the IDs. **/
+    private static final int HEADER = 17;
+
+    /** The mapped file. **/
+    private final ByteBuffer data;
+    /** Bytes in an ID. **/
+    private final int idLength;
+    /** The numbers of commits and blobs. **/
+    private final int commits, blobs;
+    /** The positions of the selected commits, ascending. **/
+    private final int[] selected;
+    /** Where each selected commit's bitmap starts in DATA, and where the
+     * last one ends. **/
+    private final int[] starts;
+
+    /** The bitmaps mapped in DATA.
+     * @param data the file's contents **/
+    private Bitmaps(ByteBuffer data) {
+        this.data = data;
+        if (data.getInt(0) != MAGIC) {
+            throw Utils.error("Not a bitmap index.");
+        }
+        idLength = data.get(4);
+        commits = data.getInt(5);
+        blobs = data.getInt(9);
+        selected = new int[data.getInt(13)];
+        starts = new int[selected.length + 1];
+        int at = HEADER + (commits + blobs) * idLength;
+        starts[0] = at + 8 * selected.length;
+        for (int k = 0; k < selected.length; k += 1) {
+            selected[k] = data.getInt(at + 4 * k);
+            starts[k + 1] = starts[0]
+                    + data.getInt(at + 4 * (selected.length + k));
+        }
+    }
+
+    /** Returns the bitmaps of the repository whose .gitlet is DIR, or null
+     * if it has none or they were made with another hash.
+     * @param dir a .gitlet directory **/
+    static Bitmaps read(File dir) {
+        File f = new File(dir, "bitmaps");
+        if (!f.isFile()) {
+            return null;
+        }
+        Trace.ObjectRead span = new Trace.ObjectRead("bitmaps",
+                f.getPath());
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer map =
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            span.done(ch.size());
+            Bitmaps b = new Bitmaps(map);
+            return b.idLength == HashAlgorithm.of(dir).length() ? b : null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrites the bitmaps of the repository whose .gitlet is DIR for
+     * every object it stores. Each ref's first-parent history is taken
+     * from its oldest selected commit forward, so a bitmap is made by
+     * walking back only to the selected commits made before it.
+     * @param dir a .gitlet directory **/
+    static void write(File dir) {
+        String[] commitIds = sorted(dir, "COMMITS");
+        String[] blobIds = sorted(dir, "FILES");
+        int size = commitIds.length + blobIds.length;
+        Map<Integer, byte[]> made = new HashMap<>();
+        for (String tip : Remote.tips(dir)) {
+            List<Integer> chain = new ArrayList<>();
+            int n = 0;
+            for (String id = tip; id != null; n += 1) {
+                int pos = Arrays.binarySearch(commitIds, id);
+                Commit c = pos < 0 ? null : Commit.lookup(dir, id);
+                if (c == null || made.containsKey(pos)) {
+                    break;
+                }
+                if (n % SPACING == 0) {
+                    chain.add(pos);
+                }
+                id = c.getParent();
+            }
+            for (int k = chain.size() - 1; k >= 0; k -= 1) {
+                made.put(chain.get(k), reachable(dir, commitIds, blobIds,
+                        size, made, commitIds[chain.get(k)]).encode());
+            }
+        }
+
+        int[] positions = made.keySet().stream().mapToInt(i -> i)
+                .sorted().toArray();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(HashAlgorithm.of(dir).length());
+            out.writeInt(commitIds.length);
+            out.writeInt(blobIds.length);
+            out.writeInt(positions.length);
+            for (String id : commitIds) {
+                out.write(Utils.fromHex(id));
+            }
+            for (String id : blobIds) {
+                out.write(Utils.fromHex(id));
+            }
+            for (int pos : positions) {
+                out.writeInt(pos);
+            }
+            int end = 0;
+            for (int pos : positions) {
+                end += made.get(pos).length;
+                out.writeInt(end);
+            }
+            for (int pos : positions) {
+                out.write(made.get(pos));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        RefTable.replace(new File(dir, "bitmaps"), bytes.toByteArray());
+    }
+
+    /** Returns the bitmap of what commit TIP reaches in DIR, whose sorted
+     * commit and blob IDs are COMMITIDS and BLOBIDS, SIZE in all, or'ing
+     * in the compressed bitmaps MADE so far rather than walking past
+     * them.
+     * @param dir a .gitlet directory
+     * @param commitIds the stored commits, sorted
+     * @param blobIds the stored blobs, sorted
+     * @param size the number of objects
+     * @param made compressed bitmaps by commit position
+     * @param tip the commit to start from **/
+    private static Bitmap reachable(File dir, String[] commitIds,
+                                    String[] blobIds, int size,
+                                    Map<Integer, byte[]> made, String tip) {
+        Bitmap result = new Bitmap(size);
+        Deque<String> work = new ArrayDeque<>();
+        work.push(tip);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            int pos = Arrays.binarySearch(commitIds, id);
+            if (pos < 0 || result.get(pos)) {
+                continue;
+            }
+            byte[] bits = id.equals(tip) ? null : made.get(pos);
+            if (bits != null) {
+                result.or(ByteBuffer.wrap(bits), 0);
+                continue;
+            }
+            Commit c = Commit.lookup(dir, id);
+            if (c == null) {
+                continue;
+            }
+            result.set(pos);
+            for (String sha : c.getBlobs().values()) {
+                int b = Arrays.binarySearch(blobIds, sha);
+                if (b >= 0) {
+                    result.set(commitIds.length + b);
+                }
+            }
+            pushParents(c, work);
+        }
+        return result;
+    }
+
+    /** Returns what the commits TIPS, in the repository whose .gitlet is
+     * DIR, reach. Commits that are not stored end the walk.
+     * @param dir the .gitlet directory these bitmaps belong to
+     * @param tips the commits to start from **/
+    Reach reach(File dir, Collection<String> tips) {
+        Reach r = new Reach();
+        Deque<String> work = new ArrayDeque<>(tips);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            int pos = position(id, 0, commits);
+            if (pos >= 0) {
+                if (r.bits.get(pos)) {
+                    continue;
+                }
+                int k = Arrays.binarySearch(selected, pos);
+                if (k >= 0) {
+                    r.bits.or(data, starts[k]);
+                    continue;
+                }
+            } else if (r.extraCommits.contains(id)) {
+                continue;
+            }
+            Commit c = Commit.lookup(dir, id);
+            if (c == null) {
+                continue;
+            }
+            if (pos >= 0) {
+                r.bits.set(pos);
+            } else {
+                r.extraCommits.add(id);
+            }
+            for (String sha : c.getBlobs().values()) {
+                int b = position(sha, commits, commits + blobs);
+                if (b >= 0) {
+                    r.bits.set(b);
+                } else {
+                    r.extraBlobs.add(sha);
+                }
+            }
+            pushParents(c, work);
+        }
+        return r;
+    }
+
+    /** The objects some commits reach: those with a position as bits, and
+     * those stored since the bitmaps were written by ID. **/
+    class Reach {
+        /** The positions reached. **/
+        private final Bitmap bits = new Bitmap(commits + blobs);
+        /** Commits reached that have no position. **/
+        private final Set<String> extraCommits = new LinkedHashSet<>();
+        /** Blobs reached that have no position. **/
+        private final Set<String> extraBlobs = new LinkedHashSet<>();
+
+        /** Drops everything OTHER reaches.
+         * @param other what other commits reach **/
+        void remove(Reach other) {
+            bits.andNot(other.bits);
+            extraCommits.removeAll(other.extraCommits);
+            extraBlobs.removeAll(other.extraBlobs);
+        }
+
+        /** Returns the number of commits reached. **/
+        int commitCount() {
+            return bits.cardinality(0, commits) + extraCommits.size();
+        }
+
+        /** Returns the IDs of the commits reached. **/
+        List<String> commitIds() {
+            List<String> result = ids(0, commits);
+            result.addAll(extraCommits);
+            return result;
+        }
+
+        /** Returns the IDs of the blobs reached. **/
+        List<String> blobIds() {
+            List<String> result = ids(commits, commits + blobs);
+            result.addAll(extraBlobs);
+            return result;
+        }
+
+        /** Returns the IDs at the positions reached from FROM up to, but
+         * not including, TO.
+         * @param from the first position
+         * @param to the position after the last **/
+        private List<String> ids(int from, int to) {
+            List<String> result = new ArrayList<>();
+            for (int i = bits.nextSetBit(from); i >= 0 && i < to;
+                 i = bits.nextSetBit(i + 1)) {
+                result.add(id(i));
+            }
+            return result;
+        }
+    }
+
+    /** Returns the position of the object ID among positions FROM up to,
+     * but not including, TO, or -1 if it is not there.
+     * @param id an object ID
+     * @param from the first position searched
+     * @param to the position after the last **/
+    private int position(String id, int from, int to) {
+        if (id.length() != 2 * idLength) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        int lo = from, hi = to - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, key);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the ID at POS with KEY, as unsigned bytes.
+     * @param pos a position
+     * @param key a raw ID **/
+    private int compare(int pos, byte[] key) {
+        int base = HEADER + pos * idLength;
+        for (int i = 0; i < idLength; i += 1) {
+            int cmp = Integer.compare(data.get(base + i) & 0xff,
+                    key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the ID at POS.
+     * @param pos a position **/
+    private String id(int pos) {
+        byte[] raw = new byte[idLength];
+        data.get(HEADER + pos * idLength, raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the sorted names of the files in the directory NAME of DIR.
+     * An absent directory is empty.
+     * @param dir a .gitlet directory
+     * @param name COMMITS or FILES **/
+    private static String[] sorted(File dir, String name) {
+        List<String> names = Utils.plainFilenamesIn(new File(dir, name));
+        String[] result = names == null ? new String[0]
+                : names.toArray(new String[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Pushes the parents of C onto WORK.
+     * @param c a commit
+     * @param work the stack of commits still to visit **/
+    private static void pushParents(Commit c, Deque<String> work) {
+        if (c.getParent() != null) {
+            work.push(c.getParent());
+        }
+        if (c.getMergeParent() != null) {
+            work.push(c.getMergeParent());
+        }
+    }
+}
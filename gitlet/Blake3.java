@@ -0,0 +1,357 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/** BLAKE3 in its default hashing mode with 32-byte output, in pure Java.
+ * BLAKE3 splits its input into 1 KiB chunks whose chaining values are
+ * combined pairwise up a binary tree, so independent subtrees can be
+ * hashed at once: digest(byte[]) hashes inputs of PARALLEL_MIN bytes or
+ * more on the common fork-join pool. The streaming Hasher is sequential
+ * and keeps the usual stack of pending subtree chaining values.
+ * @author corey hu **/
+class Blake3 extends HashAlgorithm {
+
+    /** Bytes in a chunk. **/
+    private static final int CHUNK_LEN = 1024;
+    /** Bytes in a block. **/
+    private static final int BLOCK_LEN = 64;
+    /** Bytes in a chaining value and in the output. **/
+    private static final int OUT_LEN = 32;
+    /** Inputs at least this long are hashed in parallel. **/
+    static final int PARALLEL_MIN = 1 << 20;
+    /** Subtrees at most this long are hashed on one thread. **/
+    private static final int SUBTREE_MIN = 1 << 16;
+
+    /** Flag of a chunk's first block. **/
+    private static final int CHUNK_START = 1;
+    /** Flag of a chunk's last block. **/
+    private static final int CHUNK_END = 2;
+    /** Flag of a parent node. **/
+    private static final int PARENT = 4;
+    /** Flag of the root node. **/
+    private static final int ROOT = 8;
+
+    /** The initial chaining value. **/
+    private static final int[] IV = {
+        0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A,
+        0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19,
+    };
+
+    /** The order message words are permuted into after each round. **/
+    private static final int[] PERMUTATION = {
+        2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8,
+    };
+
+    /** For each round, the block word used in each message slot: the
+     * permutation applied round times, so blocks are never copied. **/
+    private static final int[][] SCHEDULE = new int[7][16];
+
+    static {
+        for (int i = 0; i < 16; i += 1) {
+            SCHEDULE[0][i] = i;
+        }
+        for (int r = 1; r < 7; r += 1) {
+            for (int i = 0; i < 16; i += 1) {
+                SCHEDULE[r][i] = SCHEDULE[r - 1][PERMUTATION[i]];
+            }
+        }
+    }
+
+    @Override
+    String getName() {
+        return "blake3";
+    }
+
+    @Override
+    int length() {
+        return OUT_LEN;
+    }
+
+    @Override
+    Hasher newHasher() {
+        return new Stream();
+    }
+
+    @Override
+    byte[] digest(byte[] data) {
+        if (data.length < PARALLEL_MIN) {
+            return super.digest(data);
+        }
+        Trace.Hash span = new Trace.Hash();
+        int left = leftLength(data.length);
+        Subtree l = new Subtree(data, 0, left, 0);
+        l.fork();
+        int[] rightCv = new Subtree(data, left, data.length - left,
+                left / CHUNK_LEN).compute();
+        int[] block = concat(l.join(), rightCv);
+        byte[] result = bytes(compress(IV, block, 0, BLOCK_LEN,
+                PARENT | ROOT));
+        span.done(data.length);
+        return result;
+    }
+
+    /** The chaining value of a subtree of the input, computed by hashing
+     * its halves in parallel while they are large. **/
+    private static class Subtree extends RecursiveTask<int[]> {
+        /** The whole input. **/
+        private final byte[] data;
+        /** Where the subtree starts. **/
+        private final int off;
+        /** Its length, a power of two chunks unless it is rightmost. **/
+        private final int len;
+        /** The index of its first chunk. **/
+        private final long counter;
+
+        /** The subtree of LEN bytes of DATA at OFF whose first chunk is
+         * chunk COUNTER of the input.
+         * @param data the input
+         * @param off where the subtree starts
+         * @param len its length
+         * @param counter the index of its first chunk **/
+        Subtree(byte[] data, int off, int len, long counter) {
+            this.data = data;
+            this.off = off;
+            this.len = len;
+            this.counter = counter;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (len <= CHUNK_LEN) {
+                return chunkCv(data, off, len, counter);
+            }
+            int left = leftLength(len);
+            Subtree r = new Subtree(data, off + left, len - left,
+                    counter + left / CHUNK_LEN);
+            Subtree l = new Subtree(data, off, left, counter);
+            int[] leftCv;
+            int[] rightCv;
+            if (len <= SUBTREE_MIN) {
+                leftCv = l.compute();
+                rightCv = r.compute();
+            } else {
+                r.fork();
+                leftCv = l.compute();
+                rightCv = r.join();
+            }
+            return first8(compress(IV, concat(leftCv, rightCv), 0,
+                    BLOCK_LEN, PARENT));
+        }
+    }
+
+    /** Returns the length of the left subtree of an input of LEN bytes,
+     * more than one chunk: the largest power of two chunks that leaves at
+     * least one byte for the right.
+     * @param len the input length **/
+    private static int leftLength(int len) {
+        int fullChunks = (len - 1) / CHUNK_LEN;
+        return Integer.highestOneBit(fullChunks) * CHUNK_LEN;
+    }
+
+    /** Returns the chaining value of the chunk of LEN bytes of DATA at
+     * OFF, which is chunk COUNTER of the input and not the root.
+     * @param data the input
+     * @param off where the chunk starts
+     * @param len its length, at most CHUNK_LEN
+     * @param counter the chunk's index **/
+    private static int[] chunkCv(byte[] data, int off, int len,
+                                 long counter) {
+        int[] cv = IV;
+        int[] block = new int[16];
+        int pos = 0;
+        do {
+            int n = Math.min(BLOCK_LEN, len - pos);
+            words(data, off + pos, n, block);
+            int flags = (pos == 0 ? CHUNK_START : 0)
+                    | (pos + n == len ? CHUNK_END : 0);
+            cv = first8(compress(cv, block, counter, n, flags));
+            pos += n;
+        } while (pos < len);
+        return cv;
+    }
+
+    /** An incremental BLAKE3 computation. **/
+    private static class Stream implements Hasher {
+        /** Chaining values of completed subtrees, largest first. **/
+        private final int[][] stack = new int[54][];
+        /** Number of chaining values on STACK. **/
+        private int depth;
+        /** The chaining value of the current chunk so far. **/
+        private int[] cv = IV;
+        /** The index of the current chunk. **/
+        private long chunk;
+        /** The current block's bytes. **/
+        private final byte[] block = new byte[BLOCK_LEN];
+        /** Bytes in BLOCK. **/
+        private int blockLen;
+        /** Blocks of the current chunk already compressed. **/
+        private int blocks;
+
+        @Override
+        public void update(byte[] data, int off, int len) {
+            int end = off + len;
+            while (off < end) {
+                if (blockLen == BLOCK_LEN) {
+                    if (blocks == CHUNK_LEN / BLOCK_LEN - 1) {
+                        endChunk();
+                    } else {
+                        cv = first8(compress(cv, words(block), chunk,
+                                BLOCK_LEN, blocks == 0 ? CHUNK_START : 0));
+                        blocks += 1;
+                        blockLen = 0;
+                    }
+                    continue;
+                }
+                int n = Math.min(BLOCK_LEN - blockLen, end - off);
+                System.arraycopy(data, off, block, blockLen, n);
+                blockLen += n;
+                off += n;
+            }
+        }
+
+        /** Finishes the full current chunk, merges its chaining value
+         * into the stack and starts the next chunk. **/
+        private void endChunk() {
+            int[] chunkCv = first8(compress(cv, words(block), chunk,
+                    BLOCK_LEN, CHUNK_END | (blocks == 0 ? CHUNK_START : 0)));
+            chunk += 1;
+            for (long total = chunk; (total & 1) == 0; total >>= 1) {
+                depth -= 1;
+                chunkCv = first8(compress(IV, concat(stack[depth], chunkCv),
+                        0, BLOCK_LEN, PARENT));
+            }
+            stack[depth] = chunkCv;
+            depth += 1;
+            cv = IV;
+            blocks = 0;
+            blockLen = 0;
+        }
+
+        @Override
+        public byte[] finish() {
+            int flags = CHUNK_END | (blocks == 0 ? CHUNK_START : 0);
+            int[] input = words(block, blockLen);
+            int[] nodeCv = cv;
+            long counter = chunk;
+            int len = blockLen;
+            for (int k = depth - 1; k >= 0; k -= 1) {
+                int[] childCv = first8(compress(nodeCv, input, counter,
+                        len, flags));
+                input = concat(stack[k], childCv);
+                nodeCv = IV;
+                counter = 0;
+                len = BLOCK_LEN;
+                flags = PARENT;
+            }
+            return bytes(compress(nodeCv, input, counter, len,
+                    flags | ROOT));
+        }
+    }
+
+    /** Returns the BLAKE3 compression of BLOCK, LEN bytes long, into the
+     * chaining value CV, with block counter COUNTER and FLAGS.
+     * @param cv the input chaining value
+     * @param block the message block as 16 words
+     * @param counter the block counter
+     * @param len the number of bytes in the block
+     * @param flags the domain flags **/
+    private static int[] compress(int[] cv, int[] block, long counter,
+                                  int len, int flags) {
+        int[] s = {
+            cv[0], cv[1], cv[2], cv[3], cv[4], cv[5], cv[6], cv[7],
+            IV[0], IV[1], IV[2], IV[3],
+            (int) counter, (int) (counter >>> 32), len, flags,
+        };
+        for (int[] w : SCHEDULE) {
+            g(s, 0, 4, 8, 12, block[w[0]], block[w[1]]);
+            g(s, 1, 5, 9, 13, block[w[2]], block[w[3]]);
+            g(s, 2, 6, 10, 14, block[w[4]], block[w[5]]);
+            g(s, 3, 7, 11, 15, block[w[6]], block[w[7]]);
+            g(s, 0, 5, 10, 15, block[w[8]], block[w[9]]);
+            g(s, 1, 6, 11, 12, block[w[10]], block[w[11]]);
+            g(s, 2, 7, 8, 13, block[w[12]], block[w[13]]);
+            g(s, 3, 4, 9, 14, block[w[14]], block[w[15]]);
+        }
+        for (int i = 0; i < 8; i += 1) {
+            s[i] ^= s[i + 8];
+            s[i + 8] ^= cv[i];
+        }
+        return s;
+    }
+
+    /** The quarter-round mixing function, applied to state S in place.
+     * @param s the state
+     * @param a first word index
+     * @param b second word index
+     * @param c third word index
+     * @param d fourth word index
+     * @param x first message word
+     * @param y second message word **/
+    private static void g(int[] s, int a, int b, int c, int d, int x, int y) {
+        s[a] += s[b] + x;
+        s[d] = Integer.rotateRight(s[d] ^ s[a], 16);
+        s[c] += s[d];
+        s[b] = Integer.rotateRight(s[b] ^ s[c], 12);
+        s[a] += s[b] + y;
+        s[d] = Integer.rotateRight(s[d] ^ s[a], 8);
+        s[c] += s[d];
+        s[b] = Integer.rotateRight(s[b] ^ s[c], 7);
+    }
+
+    /** Returns the first eight words of STATE, a chaining value.
+     * @param state a compression output **/
+    private static int[] first8(int[] state) {
+        int[] result = new int[8];
+        System.arraycopy(state, 0, result, 0, 8);
+        return result;
+    }
+
+    /** Returns the block holding the chaining values LEFT and RIGHT.
+     * @param left the left child's chaining value
+     * @param right the right child's chaining value **/
+    private static int[] concat(int[] left, int[] right) {
+        int[] result = new int[16];
+        System.arraycopy(left, 0, result, 0, 8);
+        System.arraycopy(right, 0, result, 8, 8);
+        return result;
+    }
+
+    /** Returns the words of the full block BLOCK.
+     * @param block 64 bytes **/
+    private static int[] words(byte[] block) {
+        return words(block, BLOCK_LEN);
+    }
+
+    /** Returns the words of the first LEN bytes of BLOCK, zero padded.
+     * @param block the block's bytes
+     * @param len how many are used **/
+    private static int[] words(byte[] block, int len) {
+        int[] result = new int[16];
+        words(block, 0, len, result);
+        return result;
+    }
+
+    /** Sets WORDS to the little-endian words of the LEN bytes of DATA at
+     * OFF, zero padded to a block.
+     * @param data the input
+     * @param off where the block starts
+     * @param len its length, at most BLOCK_LEN
+     * @param words receives the 16 words **/
+    private static void words(byte[] data, int off, int len, int[] words) {
+        Arrays.fill(words, 0);
+        for (int i = 0; i < len; i += 1) {
+            words[i >> 2] |= (data[off + i] & 0xff) << (8 * (i & 3));
+        }
+    }
+
+    /** Returns the first OUT_LEN little-endian bytes of STATE.
+     * @param state a root compression output **/
+    private static byte[] bytes(int[] state) {
+        byte[] result = new byte[OUT_LEN];
+        for (int i = 0; i < OUT_LEN; i += 1) {
+            result[i] = (byte) (state[i >> 2] >>> (8 * (i & 3)));
+        }
+        return result;
+    }
+}
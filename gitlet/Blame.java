@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Finds the commit that last changed each line of a file. Starting at
+ * the head commit, the lines not yet attributed are followed back along
+ * first parents: commits that store the same blob as their parent are
+ * passed over without reading it, and otherwise the parent's version is
+ * diffed against the child's, the lines the child added are attributed
+ * to it, and the walk ends as soon as none are left. The attribution of
+ * every blamed (commit, file) pair is kept in .gitlet/blame, and a walk
+ * that reaches a commit whose attribution is kept finishes from it, so
+ * blaming a file again only reads the commits made since.
+ * @author corey hu **/
+class Blame {
+
+    /** Hex digits of a commit ID printed per line. **/
+    private static final int ABBREV = 7;
+
+    /** The file being blamed. **/
+    private final String fileName;
+    /** Its lines in the head commit. **/
+    private final String[] lines;
+    /** The commit each line was last changed in, or null if not known
+     * yet. **/
+    private final String[] owners;
+    /** The head commit. **/
+    private final Commit head;
+
+    /** A blame of FILENAME at the head commit, which must track it.
+     * @param fileName the file
+     * @param head the commit to blame at **/
+    Blame(String fileName, Commit head) {
+        this.fileName = fileName;
+        this.head = head;
+        this.lines = lines(head.getBlobs().get(fileName));
+        this.owners = new String[lines.length];
+    }
+
+    /** Attributes every line and returns this. **/
+    Blame run() {
+        int[] at = new int[lines.length];
+        for (int i = 0; i < at.length; i += 1) {
+            at[i] = i;
+        }
+        int pending = lines.length;
+        Commit c = head;
+        String[] version = lines;
+        while (pending > 0) {
+            String[] cached = readCache(c.id());
+            if (cached != null && cached.length == version.length) {
+                for (int i = 0; i < at.length; i += 1) {
+                    if (owners[i] == null) {
+                        owners[i] = cached[at[i]];
+                    }
+                }
+                break;
+            }
+            Commit p = c.getParent() == null ? null
+                    : Commit.lookup(c.getParent());
+            String sha = c.getBlobs().get(fileName);
+            String parentSha = p == null ? null
+                    : p.getBlobs().get(fileName);
+            if (parentSha == null) {
+                attributeRest(c.id());
+                break;
+            }
+            if (!parentSha.equals(sha)) {
+                String[] older = lines(parentSha);
+                int[] kept = Diff.match(older, version);
+                for (int i = 0; i < at.length; i += 1) {
+                    if (owners[i] != null) {
+                        continue;
+                    }
+                    at[i] = kept[at[i]];
+                    if (at[i] < 0) {
+                        owners[i] = c.id();
+                        pending -= 1;
+                    }
+                }
+                version = older;
+            }
+            c = p;
+        }
+        writeCache();
+        return this;
+    }
+
+    /** Attributes every line not yet attributed to commit ID.
+     * @param id the commit that added them **/
+    private void attributeRest(String id) {
+        for (int i = 0; i < owners.length; i += 1) {
+            if (owners[i] == null) {
+                owners[i] = id;
+            }
+        }
+    }
+
+    /** Returns the commit each line of the file was last changed in. **/
+    String[] getOwners() {
+        return owners;
+    }
+
+    /** Returns the annotated file: each line preceded by the abbreviated
+     * commit that last changed it, that commit's date and the line's
+     * number. **/
+    String format() {
+        DateTimeFormatter date = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        Map<String, String> dates = new HashMap<>();
+        int width = Integer.toString(lines.length).length();
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < lines.length; i += 1) {
+            String when = dates.computeIfAbsent(owners[i],
+                id -> Instant.ofEpochMilli(Commit.lookup(id).getTime())
+                        .atZone(ZoneId.systemDefault()).format(date));
+            out.append(String.format("%s (%s %" + width + "d) %s%n",
+                    owners[i].substring(0, ABBREV), when, i + 1, lines[i]));
+        }
+        return out.toString();
+    }
+
+    /** Returns the lines of the blob SHA. A final newline does not start
+     * another line.
+     * @param sha a blob ID **/
+    private static String[] lines(String sha) {
+        String contents = Blob.getBlob(sha).getContents();
+        if (contents.isEmpty()) {
+            return new String[0];
+        }
+        if (contents.endsWith("\n")) {
+            contents = contents.substring(0, contents.length() - 1);
+        }
+        return contents.split("\n", -1);
+    }
+
+    /** Returns the file holding the kept attribution of FILENAME at
+     * commit ID. Its name starts with ID, so gc can drop it along with
+     * the commit.
+     * @param id a commit ID
+     * @param fileName the blamed file **/
+    private static File cacheFile(String id, String fileName) {
+        return new File(Worktree.common(), "blame/" + id + "-"
+                + HashAlgorithm.current().hex(fileName));
+    }
+
+    /** Returns the kept attribution of the file at commit ID, or null if
+     * there is none or it cannot be read. It holds the number of distinct
+     * commits, their raw IDs, the number of lines and, for each line, the
+     * position of its commit among those IDs.
+     * @param id a commit ID **/
+    private String[] readCache(String id) {
+        File f = cacheFile(id, fileName);
+        if (!f.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Utils.readContents(f)))) {
+            String[] ids = new String[in.readInt()];
+            byte[] raw = new byte[HashAlgorithm.current().length()];
+            for (int k = 0; k < ids.length; k += 1) {
+                in.readFully(raw);
+                ids[k] = Utils.toHex(raw);
+            }
+            String[] result = new String[in.readInt()];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = ids[in.readInt()];
+            }
+            return result;
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Keeps the attribution of the file at the head commit, in the form
+     * readCache reads. **/
+    private void writeCache() {
+        File f = cacheFile(head.id(), fileName);
+        if (f.isFile()) {
+            return;
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (String id : owners) {
+            if (positions.putIfAbsent(id, ids.size()) == null) {
+                ids.add(id);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+            out.writeInt(owners.length);
+            for (String id : owners) {
+                out.writeInt(positions.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        f.getParentFile().mkdirs();
+        try {
+            RefTable.replace(f, bytes.toByteArray());
+        } catch (GitletException excp) {
+            return;
+        }
+    }
+}
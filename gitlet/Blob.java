@@ -1,8 +1,13 @@
 package gitlet;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.List;
 
 /** The Blob class. Has some utilities to allow Commits to manipulate blobs
  * @author corey hu **/
@@ -13,6 +18,17 @@ public class Blob implements Serializable {
     /** Contents of said filename. **/
     private String contents;
 
+    /** Lets only a blob and its strings be read from a stored blob that
+     * came from another repository. **/
+    private static final ObjectInputFilter STORED_ONLY = info -> {
+        Class<?> c = info.serialClass();
+        if (info.depth() > 2 || info.references() > 4
+                || (c != null && c != Blob.class && c != String.class)) {
+            return ObjectInputFilter.Status.REJECTED;
+        }
+        return ObjectInputFilter.Status.ALLOWED;
+    };
+
     /** Constructor for blobs.
      * @param filename the filename the blob is to clone **/
     public Blob(String filename) {
@@ -20,6 +36,15 @@ public class Blob implements Serializable {
         this.contents = new String(Utils.readContents(new File(fileName)));
     }
 
+    /** A blob of the file FILENAME holding CONTENTS, which need not be in
+     * the working directory.
+     * @param fileName the file's name
+     * @param contents its contents **/
+    public Blob(String fileName, String contents) {
+        this.fileName = fileName;
+        this.contents = contents;
+    }
+
     /** A static method of staging file given just a fileName.
      * @param fileName the fileName in WD that is to be staged
      * @return returns the blob object of the staged file **/
@@ -35,16 +60,45 @@ public class Blob implements Serializable {
         serialize(filePath);
     }
 
+    /** Adds the blob to FILES unless it is there already, and returns its
+     * ID. **/
+    public String store() {
+        String sha = id();
+        File stored = new File(Worktree.common(), "FILES/" + sha);
+        if (!stored.exists()) {
+            serialize(stored.getPath());
+        }
+        return sha;
+    }
+
     /** Returns the blob from the FILE dump.
      * @param sha the SHA1 code of the blob in FILES**/
     public static Blob getBlob(String sha) {
-        return deserialize(".gitlet/FILES/" + sha);
+        return lookup(Worktree.common() + "/FILES/", sha);
     }
 
     /** Returns a deserialized blob from the STAGING area.
      * @param sha the SHA1 code of the blob in STAGING **/
     public static Blob getStagedBlob(String sha) {
-        return deserialize(".gitlet/STAGING/" + sha);
+        return lookup(".gitlet/STAGING/", sha);
+    }
+
+    /** Returns the blob SHA from the object cache, or else from DIR.
+     * @param dir the directory holding the serialized blob
+     * @param sha the SHA1 code of the blob **/
+    private static Blob lookup(String dir, String sha) {
+        Blob b = ObjectCache.CONTENT.get(sha);
+        if (b == null) {
+            b = deserialize(dir + sha);
+            if (b == null && Promisor.remote() != null) {
+                Promisor.prefetch(List.of(sha));
+                b = deserialize(dir + sha);
+            }
+            if (b != null) {
+                ObjectCache.CONTENT.put(sha, b, b.weight());
+            }
+        }
+        return b;
     }
 
     /** Reads the blob's contents and replaces the file
@@ -69,6 +123,24 @@ public class Blob implements Serializable {
         return null;
     }
 
+    /** Returns the blob whose stored form is STORED, which may come from
+     * another repository, so nothing but a Blob and its Strings is read
+     * from it. Throws IllegalArgumentException if it is anything else.
+     * @param stored the contents of a file in FILES **/
+    static Blob parse(byte[] stored) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(stored))) {
+            in.setObjectInputFilter(STORED_ONLY);
+            Object result = in.readObject();
+            if (!(result instanceof Blob) || in.read() != -1) {
+                throw new IllegalArgumentException("not a blob");
+            }
+            return (Blob) result;
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Returns the blob's file's fileName. **/
     public String getFileName() {
         return fileName;
@@ -79,9 +151,20 @@ public class Blob implements Serializable {
         return contents;
     }
 
+    /** Returns the estimated heap size of the blob in bytes. **/
+    long weight() {
+        return 64 + 2L * (fileName.length() + contents.length());
+    }
+
     /** Returns the SHA1 id of the blob. **/
     public String id() {
-        return Utils.sha1(this.fileName + this.contents);
+        return id(HashAlgorithm.current());
+    }
+
+    /** Returns the ID ALG gives the blob.
+     * @param alg the hash algorithm **/
+    String id(HashAlgorithm alg) {
+        return alg.hex(this.fileName, this.contents);
     }
 
 }
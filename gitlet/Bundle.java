@@ -0,0 +1,355 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Bundles: a single file holding the objects reachable from some refs
+ * but not from a set of prerequisite commits, so history can be moved
+ * between hosts as one sequential write and one sequential read. A
+ * bundle is the stream
+ * <pre>
+ *   magic, int version, UTF hash algorithm,
+ *   int count, count * prerequisite ID,
+ *   int count, count * (UTF ref name, ID),
+ *   objects: byte type, ID, int length, byte[length] stored object,
+ *   byte END, byte[20] SHA-1 of everything before it
+ * </pre>
+ * Blobs come before the commits that use them and commits come parents
+ * first. Every object is re-hashed as it is read and the trailing
+ * checksum is checked before any ref is created.
+ * @author corey hu **/
+class Bundle {
+
+    /** The first bytes of every bundle. **/
+    private static final byte[] MAGIC = "GLBUNDLE".getBytes();
+    /** The bundle format version. **/
+    private static final int VERSION = 2;
+    /** Type tag ending the object list. **/
+    static final byte END = 0;
+    /** Type tag of a commit. **/
+    static final byte COMMIT = 1;
+    /** Type tag of a blob. **/
+    static final byte BLOB = 2;
+    /** Size of stream buffers. **/
+    private static final int BUFFER = 1 << 16;
+    /** The largest stored object read, in bytes. **/
+    private static final int MAX_OBJECT = 1 << 30;
+    /** The report of a bundle that ends early or is malformed. **/
+    private static final String UNREADABLE =
+            "Bundle is truncated or unreadable.";
+
+    /** Writes a bundle of the history named by REVS to FILE. Each rev is
+     * a branch or commit to include, ^REV for a prerequisite the
+     * receiver already has, or BASE..REV for both.
+     * @param file the bundle to write
+     * @param revs the revisions describing the range **/
+    static void create(File file, List<String> revs) {
+        Map<String, String> refs = new LinkedHashMap<>();
+        Set<String> prereqs = new HashSet<>();
+        for (String rev : revs) {
+            String[] range = rev.split("\\.\\.", -1);
+            String include = range[range.length - 1];
+            String exclude = range.length == 2 ? range[0]
+                    : rev.startsWith("^") ? rev.substring(1) : null;
+            if (exclude != null && resolve(exclude) == null) {
+                return;
+            }
+            if (exclude != null) {
+                prereqs.add(resolve(exclude));
+            }
+            if (!rev.startsWith("^") && !include.isEmpty()) {
+                if (resolve(include) == null) {
+                    return;
+                }
+                refs.put(include, resolve(include));
+            }
+        }
+        if (refs.isEmpty()) {
+            System.out.println("Refusing to create an empty bundle.");
+            return;
+        }
+        File local = Worktree.common();
+        List<String> known = Remote.select(local, prereqs, 0);
+        Set<String> haveBlobs = new HashSet<>();
+        for (String id : prereqs) {
+            haveBlobs.addAll(Commit.lookup(id).getBlobs().values());
+        }
+        List<String> commits = Remote.negotiate(local, null,
+                refs.values(), new HashSet<>(known));
+        Set<String> blobs = new LinkedHashSet<>();
+        for (String id : commits) {
+            blobs.addAll(Commit.lookup(id).getBlobs().values());
+        }
+        blobs.removeAll(haveBlobs);
+        Promisor.prefetch(blobs);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        MessageDigest md = digest();
+        try (DigestOutputStream digested = new DigestOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(tmp.toPath()), BUFFER), md);
+             DataOutputStream out = new DataOutputStream(digested)) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(HashAlgorithm.current().getName());
+            out.writeInt(prereqs.size());
+            for (String id : prereqs) {
+                out.write(Utils.fromHex(id));
+            }
+            out.writeInt(refs.size());
+            for (Map.Entry<String, String> ref : refs.entrySet()) {
+                out.writeUTF(ref.getKey());
+                out.write(Utils.fromHex(ref.getValue()));
+            }
+            for (String sha : blobs) {
+                writeObject(out, BLOB, sha,
+                        new File(Worktree.common(), "FILES/" + sha));
+            }
+            for (String id : commits) {
+                writeObject(out, COMMIT, id,
+                        new File(Worktree.common(), "COMMITS/" + id));
+            }
+            out.writeByte(END);
+            digested.on(false);
+            out.write(md.digest());
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the stored object FILE, of type TYPE and with ID, to OUT.
+     * @param out the bundle stream
+     * @param type the object's type tag
+     * @param id the object's ID
+     * @param file the stored object **/
+    static void writeObject(DataOutputStream out, byte type, String id,
+                            File file)
+        throws IOException {
+        out.writeByte(type);
+        out.write(Utils.fromHex(id));
+        out.writeInt((int) file.length());
+        Files.copy(file.toPath(), out);
+    }
+
+    /** Reads the bundle FILE into the repository, verifying each object
+     * as it arrives, records the new commits in commitHistory, and points
+     * a branch bundle/NAME at each of its refs.
+     * @param file the bundle to read **/
+    static void unbundle(File file) {
+        List<String> commits = new ArrayList<>();
+        Map<String, String> refs = read(Worktree.common(), file, commits);
+        if (refs == null) {
+            return;
+        }
+        Remote.recordHistory(Worktree.common(), commits);
+        RefTable table = RefTable.read();
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            table.update("bundle/" + ref.getKey(), ref.getValue(),
+                    "unbundle: " + file.getName());
+            System.out.println(ref.getValue() + " bundle/" + ref.getKey());
+        }
+    }
+
+    /** Reads the objects of the bundle FILE into the repository whose
+     * .gitlet directory is DIR, adding the IDs of the commits it stores to
+     * COMMITS, and returns the bundle's refs, or null after reporting why
+     * the bundle could not be read.
+     * @param dir the .gitlet directory to read into
+     * @param file the bundle to read
+     * @param commits collects the IDs of new commits, parents first **/
+    static Map<String, String> read(File dir, File file,
+                                    List<String> commits) {
+        HashAlgorithm alg = HashAlgorithm.of(dir);
+        MessageDigest md = digest();
+        Map<String, String> refs = new LinkedHashMap<>();
+        try (DigestInputStream digested = new DigestInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath()),
+                        BUFFER), md);
+             DataInputStream in = new DataInputStream(digested)) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                System.out.println("Not a gitlet bundle.");
+                return null;
+            }
+            String name = in.readUTF();
+            if (!name.equals(alg.getName())) {
+                System.out.println("Bundle uses the " + name + " hash, "
+                        + "but this repository uses " + alg + ".");
+                return null;
+            }
+            List<String> missing = new ArrayList<>();
+            for (int k = in.readInt(); k > 0; k -= 1) {
+                String id = readId(dir, in);
+                if (Commit.lookup(dir, id) == null) {
+                    missing.add(id);
+                }
+            }
+            if (!missing.isEmpty()) {
+                System.out.println("Repository lacks these prerequisite "
+                        + "commits: " + String.join(" ", missing));
+                return null;
+            }
+            for (int k = in.readInt(); k > 0; k -= 1) {
+                String ref = in.readUTF();
+                refs.put(ref, readId(dir, in));
+            }
+            for (byte type = in.readByte(); type != END;
+                 type = in.readByte()) {
+                String stored = readObject(dir, in, type);
+                if (stored != null && type == COMMIT) {
+                    commits.add(stored);
+                }
+            }
+            digested.on(false);
+            byte[] checksum = new byte[md.getDigestLength()];
+            in.readFully(checksum);
+            if (!MessageDigest.isEqual(checksum, md.digest())) {
+                System.out.println("Bundle checksum mismatch.");
+                return null;
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return null;
+        } catch (IOException excp) {
+            System.out.println(UNREADABLE);
+            return null;
+        }
+        return refs;
+    }
+
+    /** Reads one object of type TYPE from IN into the repository whose
+     * .gitlet directory is DIR, checks that its contents hash to its ID
+     * and stores it unless it is already present. The object is copied to
+     * a temporary file a buffer at a time, so its length is never trusted
+     * for more than the bytes that actually arrive. Blobs are parsed with
+     * Blob.parse, which reads no other class. Returns the object's ID if
+     * it was stored, or null if it was present. Throws a GitletException
+     * if the object is corrupt or its length is out of range.
+     * @param dir the .gitlet directory to store into
+     * @param in the bundle stream, positioned after the type tag
+     * @param type the object's type tag **/
+    static String readObject(File dir, DataInputStream in, byte type)
+        throws IOException {
+        String id = readId(dir, in);
+        int length = in.readInt();
+        if (length < 0 || length > MAX_OBJECT) {
+            throw Utils.error(UNREADABLE);
+        }
+        File tmp = File.createTempFile(id, ".tmp", dir);
+        try {
+            copy(in, tmp, length);
+            byte[] contents = Utils.readContents(tmp);
+            String actual = null;
+            File dest = null;
+            try {
+                if (type == COMMIT) {
+                    actual = Commit.parse(contents).id();
+                    dest = new File(dir, "COMMITS/" + id);
+                } else if (type == BLOB) {
+                    actual = Blob.parse(contents).id();
+                    dest = new File(dir, "FILES/" + id);
+                }
+            } catch (IllegalArgumentException excp) {
+                actual = null;
+            }
+            if (!id.equals(actual)) {
+                throw Utils.error("Bundle object %s is corrupt.", id);
+            }
+            if (dest.exists()) {
+                return null;
+            }
+            Files.move(tmp.toPath(), dest.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            return id;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /** Copies the next LENGTH bytes of IN to FILE.
+     * @param in the bundle stream
+     * @param file the file to write
+     * @param length the number of bytes to copy **/
+    private static void copy(DataInputStream in, File file, int length)
+        throws IOException {
+        byte[] buf = new byte[Math.min(length, BUFFER)];
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int left = length; left > 0;) {
+                int n = in.read(buf, 0, Math.min(left, buf.length));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                out.write(buf, 0, n);
+                left -= n;
+            }
+        }
+    }
+
+    /** Returns the hex form of the raw ID, as long as the IDs of the
+     * repository whose .gitlet directory is DIR, read from IN.
+     * @param dir the .gitlet directory
+     * @param in the bundle stream **/
+    private static String readId(File dir, DataInputStream in)
+        throws IOException {
+        byte[] id = new byte[HashAlgorithm.of(dir).length()];
+        in.readFully(id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the commit ID REV names, a branch or an abbreviated commit
+     * ID, or null after reporting that there is no such revision.
+     * @param rev a branch name or commit ID **/
+    static String resolve(String rev) {
+        if (rev.isEmpty()) {
+            System.out.println("Empty revision.");
+            return null;
+        }
+        String id = RefTable.read().resolve(rev);
+        if (id == null) {
+            Commit c = Commit.lookup(rev);
+            id = c == null ? null : c.id();
+        }
+        if (id == null) {
+            System.out.println("No such revision " + rev + ".");
+        }
+        return id;
+    }
+
+    /** Returns a fresh SHA-1 digest for bundle checksums. **/
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(
+                    "System does not support SHA-1");
+        }
+    }
+}
@@ -1,28 +1,53 @@
 package gitlet;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /** The Command class. All the commands for gitlet
  * @author corey hu **/
 class Command {
 
-    /** Initalizes a .gitlet directory.
+    /** Days an unreachable object is kept by gc unless --prune says. **/
+    private static final long GC_GRACE_DAYS = 14;
+
+    /** Initalizes a .gitlet directory, whose objects are named by the
+     * hash given as --hash=sha1|sha256|blake3, SHA-1 by default.
      * @param operands the operands of the operation **/
     public static void doInit(String... operands) {
-        if (operands.length != 1) {
+        HashAlgorithm alg = HashAlgorithm.SHA1;
+        if (operands.length == 2 && operands[1].startsWith("--hash=")) {
+            alg = HashAlgorithm.forName(operands[1].substring(7));
+            if (alg == null) {
+                System.out.println("Unknown hash algorithm.");
+                return;
+            }
+        } else if (operands.length != 1) {
             System.out.println("Incorrect operands.");
             return;
         }
         Repo repo = new Repo();
-        repo.init();
+        repo.init(alg);
     }
 
-    /** Prints a log of the ancestry of the head commit.
+    /** Prints a log of the ancestry of the head commit, or with -- FILE
+     * only of the commits in it that change FILE.
      * @param operands the operands of the operation **/
     public static void doLog(String ... operands) {
         Commit c = Commit.getHeadCommit();
         String result = "";
+        if (operands.length == 3 && operands[1].equals("--")) {
+            for (String id : CommitGraph.history(c, operands[2])) {
+                result += Commit.lookup(id).logEntry() + "\n\n";
+            }
+            if (!result.isEmpty()) {
+                System.out.println(result.trim() + "\n");
+            }
+            return;
+        }
         while (true) {
             result += c.logEntry() + "\n\n";
             if (c.getParent() == null) {
@@ -36,13 +61,37 @@ class Command {
     /** Prints the logs of all commits made in the repo.
      * @param operands the operands of the operation **/
     public static void doGlobalLog(String ... operands) {
-        List<String> files = Utils.plainFilenamesIn(".gitlet/COMMITS");
+        List<RefLog.Entry> history =
+                RefLog.read(new File(Worktree.common(), "commitHistory"));
+        List<String> ids = new ArrayList<>();
+        for (RefLog.Entry entry : history) {
+            ids.add(entry.getNewId());
+        }
+        new CommitScan(Worktree.common(), c -> c.logEntry() + "\n\n")
+                .print(ids);
+    }
+
+    /** Prints the reflog of a branch, newest entry first.
+     * @param operands the operands of the operation **/
+    public static void doReflog(String ... operands) {
+        if (operands.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        String branch = operands.length == 2 ? operands[1] : RefTable.head();
+        List<RefLog.Entry> entries =
+                RefLog.read(RefLog.logOf(Worktree.common(), branch));
+        if (entries.isEmpty()) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
         String result = "";
-        for (String sha : files) {
-            Commit c = Commit.lookup(sha);
-            result += c.logEntry() + "\n\n";
+        for (int k = 0; k < entries.size(); k += 1) {
+            RefLog.Entry entry = entries.get(entries.size() - 1 - k);
+            result += entry.getNewId().substring(0, 7) + " " + branch
+                    + "@{" + k + "}: " + entry.getMsg() + "\n";
         }
-        System.out.println(result.trim() + "\n");
+        System.out.print(result);
     }
 
     /** Adds a file to the STAGING area.
@@ -72,7 +121,6 @@ class Command {
         }
         String msg = operands[1];
         Repo repo = Repo.deserialize();
-        repo.stagingToCommit();
         Commit.makeCommit(msg, repo);
         repo.serialize();
     }
@@ -98,20 +146,13 @@ class Command {
             return;
         }
         String msg = operands[1];
-        String result = "";
-        for (String commitID : Utils.plainFilenamesIn(".gitlet/COMMITS")) {
-            Commit c = Commit.lookup(commitID);
-            if (c.getMsg().equals(msg)) {
-                result += c.id() + "\n";
-            }
-        }
-
-        if (result.equals("")) {
+        File dir = Worktree.common();
+        int found = new CommitScan(dir,
+                c -> c.getMsg().equals(msg) ? c.id() + "\n" : null)
+                .print(Utils.plainFilenamesIn(new File(dir, "COMMITS")));
+        if (found == 0) {
             System.out.println("Found no commit with that message.");
-        } else {
-            System.out.println(result.trim());
         }
-
     }
 
     /** Prints the status of the repo.
@@ -206,6 +247,280 @@ class Command {
         repo.merge(branchName);
     }
 
+    /** Applies the changes a commit made to the head commit.
+     * @param operands the operands of the operation **/
+    public static void doCherryPick(String... operands) {
+        if (operands.length != 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Repo repo = Repo.deserialize();
+        repo.cherryPick(operands[1]);
+    }
+
+    /** Replays the current branch on top of another branch.
+     * @param operands the operands of the operation **/
+    public static void doRebase(String... operands) {
+        if (operands.length != 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Repo repo = Repo.deserialize();
+        repo.rebase(operands[1]);
+    }
+
+    /** Clones a remote repository into the working directory, optionally
+     * shallow (--depth N) or without blobs (--filter=blob:none).
+     * @param operands the operands of the operation **/
+    public static void doClone(String... operands) {
+        int depth = 0;
+        boolean blobless = false;
+        for (int i = 2; i < operands.length; i += 1) {
+            if (operands[i].equals("--depth") && i + 1 < operands.length
+                    && operands[i + 1].matches("[1-9][0-9]*")) {
+                i += 1;
+                depth = Integer.parseInt(operands[i]);
+            } else if (operands[i].equals("--filter=blob:none")) {
+                blobless = true;
+            } else {
+                depth = -1;
+                break;
+            }
+        }
+        if (operands.length < 2 || depth < 0) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        new Repo().cloneFrom(operands[1], depth, blobless);
+    }
+
+    /** Prints the files changed between two commits, with renames and
+     * copies found: from the head commit to the staged files, from a
+     * commit to the head commit, or from one commit to another.
+     * @param operands the command's operands **/
+    public static void doDiff(String... operands) {
+        if (operands.length > 3) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Commit head = Commit.getHeadCommit();
+        Map<String, String> before = head.getBlobs();
+        Map<String, String> after;
+        if (operands.length == 1) {
+            after = Repo.deserialize().getIndex(head);
+        } else {
+            Commit from = Commit.lookup(operands[1]);
+            Commit to = operands.length == 3
+                    ? Commit.lookup(operands[2]) : head;
+            if (from == null || to == null) {
+                System.out.println("No commit with that id exists.");
+                return;
+            }
+            before = from.getBlobs();
+            after = to.getBlobs();
+        }
+        System.out.print(Renames.nameStatus(before, after));
+    }
+
+    /** Prints each line of a file in the head commit with the commit that
+     * last changed it.
+     * @param operands the command's operands **/
+    public static void doBlame(String... operands) {
+        if (operands.length != 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Commit head = Commit.getHeadCommit();
+        if (!head.getBlobs().containsKey(operands[1])) {
+            System.out.println("File does not exist in that commit.");
+            return;
+        }
+        System.out.print(new Blame(operands[1], head).run().format());
+    }
+
+    /** Rewrites the reachability bitmaps for every stored object.
+     * @param operands the command's operands **/
+    public static void doBitmap(String... operands) {
+        if (operands.length != 2 || !operands[1].equals("write")) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Bitmaps.write(Worktree.common());
+    }
+
+    /** Prints the number of commits a branch, by default the current
+     * one, reaches, from the reachability bitmaps when there are some.
+     * @param operands the command's operands **/
+    public static void doRevList(String... operands) {
+        if (operands.length < 2 || operands.length > 3
+                || !operands[1].equals("--count")) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        String branch = operands.length == 3 ? operands[2] : RefTable.head();
+        String tip = RefTable.read().resolve(branch);
+        if (tip == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        File dir = Worktree.common();
+        Bitmaps index = Bitmaps.read(dir);
+        System.out.println(index != null
+                ? index.reach(dir, List.of(tip)).commitCount()
+                : Remote.select(dir, List.of(tip), 0).size());
+    }
+
+    /** Rewrites the commit graph with every stored commit.
+     * @param operands the command's operands **/
+    public static void doCommitGraph(String... operands) {
+        if (operands.length != 2 || !operands[1].equals("write")) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        CommitGraph.write(Worktree.common());
+    }
+
+    /** Sets, lists or disables the sparse checkout patterns, as
+     * sparse-checkout set PATTERN..., list or disable.
+     * @param operands the command's operands **/
+    public static void doSparseCheckout(String... operands) {
+        if (operands.length >= 3 && operands[1].equals("set")) {
+            Repo.deserialize().sparseCheckout(Arrays.asList(
+                    operands).subList(2, operands.length));
+        } else if (operands.length == 2 && operands[1].equals("list")) {
+            for (String pattern : Sparse.patterns()) {
+                System.out.println(pattern);
+            }
+        } else if (operands.length == 2 && operands[1].equals("disable")) {
+            Repo.deserialize().sparseCheckout(null);
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Adds, lists or removes linked worktrees, as worktree add DIR
+     * BRANCH, list or remove DIR.
+     * @param operands the command's operands **/
+    public static void doWorktree(String... operands) {
+        if (operands.length == 4 && operands[1].equals("add")) {
+            Repo.deserialize().addWorktree(operands[2], operands[3]);
+        } else if (operands.length == 2 && operands[1].equals("list")) {
+            for (File dir : Worktree.all()) {
+                System.out.println(dir.getAbsoluteFile().toPath()
+                        .normalize().getParent() + " ["
+                        + RefTable.head(dir) + "]");
+            }
+        } else if (operands.length == 3 && operands[1].equals("remove")) {
+            if (!Worktree.remove(new File(operands[2]))) {
+                System.out.println("No such worktree exists.");
+            }
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Verifies every stored object and reports missing, corrupt,
+     * dangling and unreachable ones.
+     * @param operands the command's operands **/
+    public static void doFsck(String... operands) {
+        if (operands.length != 1) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        for (String problem : new Fsck(Worktree.common()).check()) {
+            System.out.println(problem);
+        }
+    }
+
+    /** Deletes unreachable objects and stale staged copies older than
+     * the grace period: two weeks, the number of days given by
+     * --prune=DAYS, or none for --prune=now.
+     * @param operands the command's operands **/
+    public static void doGc(String... operands) {
+        long days = GC_GRACE_DAYS;
+        if (operands.length == 2 && operands[1].startsWith("--prune=")) {
+            String prune = operands[1].substring(8);
+            try {
+                days = prune.equals("now") ? 0 : Long.parseLong(prune);
+            } catch (NumberFormatException excp) {
+                days = -1;
+            }
+            if (days < 0) {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        } else if (operands.length != 1) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        System.out.println(new Gc(Worktree.common(),
+                TimeUnit.DAYS.toMillis(days)).collect());
+    }
+
+    /** Creates or reads a bundle file.
+     * @param operands the operands of the operation **/
+    public static void doBundle(String... operands) {
+        if (operands.length >= 4 && operands[1].equals("create")) {
+            Bundle.create(new File(operands[2]), Arrays.asList(
+                    operands).subList(3, operands.length));
+        } else if (operands.length == 3 && operands[1].equals("unbundle")) {
+            if (!new File(operands[2]).isFile()) {
+                System.out.println("Bundle does not exist.");
+                return;
+            }
+            Bundle.unbundle(new File(operands[2]));
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Serves the repository to fetches and pushes over TCP on the
+     * loopback interface, on the port given or a default one.
+     * @param operands the operands of the operation **/
+    public static void doServe(String... operands) {
+        int port = Sync.DEFAULT_PORT;
+        if (operands.length == 2 && operands[1].matches("[0-9]{1,5}")) {
+            port = Integer.parseInt(operands[1]);
+        }
+        if (operands.length > 2 || operands.length == 2
+                && !operands[1].matches("[0-9]{1,5}") || port > 65535) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Sync.serve(port);
+    }
+
+    /** Writes an archive of a commit's files without checking it out:
+     * archive [--format=tar|zip] [--output=FILE] COMMIT, to standard
+     * output unless a file is given.
+     * @param operands the operands of the operation **/
+    public static void doArchive(String... operands) {
+        String format = "tar";
+        File output = null;
+        String rev = null;
+        for (int i = 1; i < operands.length; i += 1) {
+            if (operands[i].matches("--format=(tar|zip)")) {
+                format = operands[i].substring("--format=".length());
+            } else if (operands[i].startsWith("--output=")) {
+                output = new File(
+                        operands[i].substring("--output=".length()));
+            } else if (rev == null && !operands[i].startsWith("--")) {
+                rev = operands[i];
+            } else {
+                rev = null;
+                break;
+            }
+        }
+        if (rev == null) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        String id = Bundle.resolve(rev);
+        if (id != null) {
+            new Archive(format, Commit.lookup(id)).write(output);
+        }
+    }
+
     /** Performs the add remote command.
      * @param operands the operands of the operation **/
     public static void doAddRemote(String... operands) {
@@ -216,8 +531,51 @@ class Command {
 
         String name = operands[1];
         Repo repo = Repo.deserialize();
+        repo.addRemote(name, operands[2]);
     }
 
+    /** Performs the remove remote command.
+     * @param operands the operands of the operation **/
+    public static void doRemoveRemote(String... operands) {
+        if (operands.length != 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Repo repo = Repo.deserialize();
+        repo.removeRemote(operands[1]);
+    }
 
+    /** Pushes the current head to a branch of a remote.
+     * @param operands the operands of the operation **/
+    public static void doPush(String... operands) {
+        if (operands.length != 3) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Repo repo = Repo.deserialize();
+        repo.pushRemote(operands[1], operands[2]);
+    }
+
+    /** Fetches a branch of a remote.
+     * @param operands the operands of the operation **/
+    public static void doFetch(String... operands) {
+        if (operands.length != 3) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Repo repo = Repo.deserialize();
+        repo.fetchRemote(operands[1], operands[2]);
+    }
+
+    /** Fetches a branch of a remote and merges it into the current one.
+     * @param operands the operands of the operation **/
+    public static void doPull(String... operands) {
+        if (operands.length != 3) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Repo repo = Repo.deserialize();
+        repo.pullRemote(operands[1], operands[2]);
+    }
 
 }
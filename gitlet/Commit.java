@@ -1,58 +1,178 @@
 package gitlet;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-
-/** The commit class. Has a bunch of utility functions that help gitlet
+import java.util.Map;
+
+/** The commit class. Has a bunch of utility functions that help gitlet.
+ * A commit is stored in COMMITS under its ID, the SHA-1 of its canonical
+ * encoding
+ * <pre>
+ *   int magic, long time (epoch ms), int zone offset (s),
+ *   byte parent count, parent count * raw parent ID,
+ *   UTF branch, int length, byte[length] UTF-8 message,
+ *   int file count, file count * (UTF file name, raw blob ID)
+ * </pre>
+ * with files sorted by name, so equal commits always get equal IDs. The
+ * ID is computed once, when the commit is made or read. Reading a commit
+ * decodes only the header; the file list is decoded the first time it is
+ * asked for, so history walks never pay for it.
  * @author corey hu **/
-public class Commit implements Serializable {
+public class Commit {
+
+    /** The first bytes of every encoded commit, "GLC2". **/
+    private static final int MAGIC = 0x474c4332;
+
+    /** The commit's ID. **/
+    private final String id;
+
+    /** The commit's canonical encoding. **/
+    private final byte[] encoded;
+
+    /** Where the file list starts in ENCODED. **/
+    private final int blobsAt;
+
+    /** When the commit was made, in epoch milliseconds. **/
+    private final long time;
 
-    /** The date object. **/
-    private ZonedDateTime datetime;
+    /** The offset from UTC of the zone the commit was made in, in
+     * seconds. **/
+    private final int zoneOffset;
 
     /** The commit's message. **/
-    private String msg;
+    private final String msg;
 
     /** The branch name. **/
-    private String branch;
+    private final String branch;
 
     /** The parent SHA1. **/
-    private String parent;
+    private final String parent;
 
     /** The merge parent (if applicable) SHA1. **/
-    private String mergeParent;
+    private final String mergeParent;
 
-    /** A hashmap mapping all tracked filenames to their SHA1 code. **/
-    private HashMap<String, String> blobs;
+    /** A map of all tracked filenames to their SHA1 code, or null until
+     * it is decoded. **/
+    private PathTrie blobs;
 
     /** Commit object constructor for initial commit. **/
     public Commit() {
-        datetime = ZonedDateTime.now();
-        msg = "initial commit";
-        branch = "master";
-        parent = null;
-        mergeParent = null;
-        blobs = new HashMap<>();
-
+        this("initial commit", "master", null, null, PathTrie.EMPTY);
     }
 
-    /** The second constructor.
+    /** The second constructor, holding the files R would track once its
+     * staged changes are committed.
      * @param r the repo the commit is made in
      * @param head the current head (soon to be parent)
      * @param message the commit's message **/
     public Commit(String message, Commit head, Repo r) {
-        this.datetime = ZonedDateTime.now();
+        this(message, r.getCurrentBranch(), head.id(), null,
+                r.getIndex(head));
+    }
+
+    /** A commit made now on BRANCH with message MESSAGE, parents PARENT
+     * and MERGEPARENT, and files BLOBS.
+     * @param message the commit's message
+     * @param branch the branch it is made on
+     * @param parent the parent's ID, or null
+     * @param mergeParent the merge parent's ID, or null
+     * @param blobs the tracked files and their blob IDs **/
+    private Commit(String message, String branch, String parent,
+                   String mergeParent, Map<String, String> blobs) {
+        ZonedDateTime now = ZonedDateTime.now();
+        this.time = now.toInstant().toEpochMilli();
+        this.zoneOffset = now.getOffset().getTotalSeconds();
         this.msg = message;
-        this.branch = r.getCurrentBranch();
-        this.parent = head.id();
-        this.mergeParent = null;
-        this.blobs = r.getTracking();
+        this.branch = branch;
+        this.parent = parent;
+        this.mergeParent = mergeParent;
+        this.blobs = PathTrie.of(blobs);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeLong(time);
+            out.writeInt(zoneOffset);
+            out.writeByte(parent == null ? 0 : mergeParent == null ? 1 : 2);
+            if (parent != null) {
+                out.write(Utils.fromHex(parent));
+            }
+            if (mergeParent != null) {
+                out.write(Utils.fromHex(mergeParent));
+            }
+            out.writeUTF(branch);
+            Utils.writeString(out, message);
+            this.blobsAt = out.size();
+            out.writeInt(this.blobs.size());
+            String[] names = this.blobs.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            byte[] raw = new byte[ObjectId.MAX_LENGTH];
+            for (String name : names) {
+                ObjectId sha = this.blobs.getId(name);
+                sha.copyTo(raw, 0);
+                out.writeUTF(name);
+                out.write(raw, 0, sha.length());
+            }
+            this.encoded = bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        this.id = HashAlgorithm.current().hex(encoded);
+    }
+
+    /** The commit whose canonical encoding is ENCODED and whose ID is ID,
+     * decoding only its header.
+     * @param encoded the commit's encoding
+     * @param id its ID **/
+    private Commit(byte[] encoded, String id) {
+        this.encoded = encoded;
+        this.id = id;
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(encoded));
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("not a gitlet commit");
+            }
+            time = in.readLong();
+            zoneOffset = in.readInt();
+            int parents = in.readByte();
+            parent = parents > 0 ? readId(in) : null;
+            mergeParent = parents > 1 ? readId(in) : null;
+            branch = in.readUTF();
+            msg = Utils.readString(in);
+            blobsAt = encoded.length - in.available();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the commit encoded as BYTES, computing its ID. Throws
+     * IllegalArgumentException if BYTES is not an encoded commit.
+     * @param bytes a commit's encoding **/
+    static Commit parse(byte[] bytes) {
+        return new Commit(bytes, HashAlgorithm.current().hex(bytes));
+    }
+
+    /** Returns the hex form of the raw ID, as long as this commit's own,
+     * read from IN.
+     * @param in a commit's encoding **/
+    private String readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[id.length() / 2];
+        in.readFully(raw);
+        return Utils.toHex(raw);
     }
 
     /** Make the first commit (following git init). **/
@@ -63,36 +183,69 @@ public class Commit implements Serializable {
         head.updateCommitHist();
     }
 
-    /** Make a commit based on the current state of Repo r.
+    /** Make a commit based on the current state of Repo r, then move its
+     * staged files into it. The commit is built first, so r is left as it
+     * was if that fails.
      * @param msg the commit message
      * @param r the repo being committed to **/
     public static void makeCommit(String msg, Repo r) {
-        Commit head = deserialize(".gitlet/head");
+        Commit head = getHeadCommit();
         Commit c = new Commit(msg, head, r);
+        r.stagingToCommit();
         c.saveToDump();
         c.updateHeads();
         c.updateCommitHist();
     }
 
     /** Make a commit following a merge.
-     * @param r the repo the merge commit is being made in
+     * @param tree the merged files and their blob IDs
      * @param msg the commit message
      * @param mergeParentID the other parent's ID **/
     public static void makeMergeCommit(String msg,
-                                       Repo r, String mergeParentID) {
-        Commit head = deserialize(".gitlet/head");
-        Commit c = new Commit(msg, head, r);
-        c.mergeParent = mergeParentID;
+                                       Map<String, String> tree,
+                                       String mergeParentID) {
+        Commit head = getHeadCommit();
+        Commit c = new Commit(msg, RefTable.head(), head.id(),
+                mergeParentID, tree);
         c.saveToDump();
         c.updateHeads();
         c.updateCommitHist();
     }
 
-    /** Returns the commit's parent. **/
+    /** Returns a commit on the current branch with message MSG, parent
+     * PARENT and files TREE, not yet saved.
+     * @param msg the commit message
+     * @param parent the parent's ID
+     * @param tree the files and their blob IDs **/
+    static Commit make(String msg, String parent,
+                       Map<String, String> tree) {
+        return new Commit(msg, RefTable.head(), parent, null, tree);
+    }
+
+    /** Saves the commit and records it in the commitHistory log, without
+     * moving any branch. **/
+    void save() {
+        saveToDump();
+        updateCommitHist();
+    }
+
+    /** Returns the commit's parent, or null if it has none or was
+     * cut off by a shallow clone. **/
     public String getParent() {
+        if (parent != null && Promisor.isGraft(id())) {
+            return null;
+        }
         return parent;
     }
 
+    /** Returns the commit's merge parent, or null. **/
+    public String getMergeParent() {
+        if (mergeParent != null && Promisor.isGraft(id())) {
+            return null;
+        }
+        return mergeParent;
+    }
+
     /** Returns the commit's msg. **/
     public String getMsg() {
         return msg;
@@ -103,125 +256,190 @@ public class Commit implements Serializable {
         return branch;
     }
 
-    /** Returns the blob map of the commit.  **/
-    public HashMap<String, String> getBlobs() {
+    /** Returns the blob map of the commit, decoding it on first use.
+     * When the parent is cached with its map decoded, the map is made
+     * from the parent's, sharing every part the commit did not change.
+     * A cached commit is charged for its map once it is decoded.
+     * Callers must not modify it. **/
+    public PathTrie getBlobs() {
+        if (blobs == null) {
+            Commit p = parent == null ? null
+                    : ObjectCache.METADATA.peek(parent);
+            PathTrie base = p == null || p.blobs == null ? PathTrie.EMPTY
+                    : p.blobs;
+            try {
+                DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(encoded, blobsAt,
+                                encoded.length - blobsAt));
+                int count = in.readInt();
+                PathTrie.Builder result = base.edit();
+                String[] names = new String[count];
+                int kept = 0;
+                byte[] raw = new byte[id.length() / 2];
+                for (int k = 0; k < count; k += 1) {
+                    names[k] = in.readUTF();
+                    in.readFully(raw);
+                    ObjectId sha = ObjectId.fromRaw(raw, 0, raw.length);
+                    ObjectId was = base.getId(names[k]);
+                    if (was != null) {
+                        kept += 1;
+                    }
+                    if (!sha.equals(was)) {
+                        result.put(PathMap.intern(names[k]), sha);
+                    }
+                }
+                if (kept < base.size()) {
+                    for (String name : base.keySet()) {
+                        if (Arrays.binarySearch(names, name) < 0) {
+                            result.remove(name);
+                        }
+                    }
+                }
+                blobs = result.build();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            ObjectCache.METADATA.resize(id, this, weight());
+        }
         return blobs;
     }
 
+    /** Returns when the commit was made, in epoch milliseconds. **/
+    public long getTime() {
+        return time;
+    }
+
     /** Serializes commit to the COMMIT folder dump. **/
     private void saveToDump() {
-        String filepath = ".gitlet/COMMITS/" + id();
+        String filepath = Worktree.common() + "/COMMITS/" + id();
         serialize(filepath);
+        ObjectCache.METADATA.put(id(), this, weight());
     }
 
-    /** Serializes the current commit to the head file
-     * and updates its branch's head commit. **/
+    /** Points the commit's branch at this commit
+     * and makes that branch the HEAD. **/
     public void updateHeads() {
-        updateHeads(branch);
+        updateHeads(branch, "commit: " + msg);
     }
 
     /** Updating heads using a specific branchName.
-     * @param branchName name of branch to update head of **/
-    public void updateHeads(String branchName) {
-        serialize(".gitlet/head");
-        serialize(".gitlet/BRANCHES/" + branchName);
+     * @param branchName name of branch to update head of
+     * @param reason the reason recorded in the branch's reflog **/
+    public void updateHeads(String branchName, String reason) {
+        makeBranchHead(branchName, reason);
+        RefTable.setHead(branchName);
     }
 
-    /** Updates the commithistory file by adding a SHA1 to the list. **/
+    /** Appends this commit to the commitHistory log. **/
     private void updateCommitHist() {
-        File history = new File(".gitlet/commitHistory");
-        String cur = new String(
-                Utils.readContents(new File(".gitlet/commitHistory")));
-        cur += id() + "\n";
-        Utils.writeContents(history, cur.getBytes());
+        RefLog.append(new File(Worktree.common(), "commitHistory"),
+                parent, id(), msg);
     }
 
-    /** Restores all files (blobs) tied to the commit. **/
+    /** Restores all files (blobs) tied to the commit that the sparse
+     * checkout patterns include. **/
     public void restore() {
-        for (String sha : blobs.values()) {
+        Collection<String> shas = Sparse.select(getBlobs()).values();
+        Promisor.prefetch(shas);
+        for (String sha : shas) {
             Blob b = Blob.getBlob(sha);
             b.restore();
         }
     }
 
-    /** Serializes the commit into path.
-     * @param path the path the commit object is being serialized to **/
+    /** Writes the commit's encoding to path.
+     * @param path the path the commit is being written to **/
     private void serialize(String path) {
-        Utils.writeObject(new File(path), this);
+        Utils.writeContents(new File(path), encoded);
     }
 
     /** Lookup the commit in the commit dump folder given a SHA1 code.
      * @param sha the SHA code being looked up
      * @return the commit after being lookedup **/
     public static Commit lookup(String sha) {
-        if (sha.length() != Utils.UID_LENGTH) {
-            for (String commitSHA : Utils.plainFilenamesIn(".gitlet/COMMITS")) {
+        if (sha.length() != HashAlgorithm.current().hexLength()) {
+            for (String commitSHA : Utils.plainFilenamesIn(
+                    new File(Worktree.common(), "COMMITS"))) {
                 if (commitSHA.startsWith(sha)) {
                     sha = commitSHA;
                     break;
                 }
             }
         }
-        return deserialize(".gitlet/COMMITS/" + sha);
+        return lookup(Worktree.common(), sha);
+    }
+
+    /** Lookup the commit with the full SHA1 code SHA in the repository
+     * whose .gitlet directory is DIR.
+     * @param dir the .gitlet directory to look in
+     * @param sha the complete SHA code being looked up
+     * @return the commit, or null if DIR does not have it **/
+    public static Commit lookup(File dir, String sha) {
+        Commit c = ObjectCache.METADATA.get(sha);
+        if (c == null) {
+            c = deserialize(new File(dir, "COMMITS/" + sha).getPath());
+            if (c != null) {
+                ObjectCache.METADATA.put(sha, c, c.weight());
+            }
+        }
+        return c;
     }
 
     /** Deserialize the head commit.
      * @return a commit head object **/
     public static Commit getHeadCommit() {
-        return deserialize(".gitlet/head");
+        return getBranchHead(RefTable.head());
     }
 
     /** Returns the deserialized head commit of Branch branchName.
      * @param branchName the name of the branch being looked up**/
     public static Commit getBranchHead(String branchName) {
-        return deserialize(".gitlet/BRANCHES/" + branchName);
-    }
-
-    /** Serializes a certain commit to replace the
-     * serialization of Branch branchname's head commit.
-     * @param branchName name of branch to replace headfile of **/
-    public void makeBranchHead(String branchName) {
-        serialize(".gitlet/BRANCHES/" + branchName);
+        String id = RefTable.read().resolve(branchName);
+        if (id == null) {
+            return null;
+        }
+        return lookup(id);
     }
 
-    /** Deserializes the head commit of a branch in a remote repo.
-     * @return deserialized commit
-     * @param remoteRepoPath the path to the remote repo to be deserialized
-     * @param branchName the name of the branch to deserialize **/
-    public static Commit deserializeRemoteHead(String remoteRepoPath,
-                                               String branchName) {
-        return Utils.readObject(new File(remoteRepoPath
-                + "/BRANCHES/" + branchName), Commit.class);
+    /** Points Branch branchName at this commit.
+     * @param branchName name of branch to move
+     * @param reason the reason recorded in the branch's reflog **/
+    public void makeBranchHead(String branchName, String reason) {
+        RefTable.read().update(branchName, id(), reason);
     }
 
-    /** Deserializes the commit from path.
-     * @return deserialized commit
-     * @param path the path of the object to be deserialized **/
-    private static Commit deserialize(String path) {
+    /** Reads the commit stored at path, named by its ID, bypassing the
+     * cache.
+     * @return the commit, or null if there is none
+     * @param path the path of the commit being read **/
+    static Commit deserialize(String path) {
         File f = new File(path);
         if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+            return new Commit(Utils.readContents(f), f.getName());
         }
         return null;
     }
 
-    /** Returns a list of SHA1s all previous parents. **/
-    public List<String> getAncestors() {
-        List<String> ancestors = new ArrayList<>();
-        ancestors.add(id());
-
-        if (parent != null) {
-            Commit p = lookup(parent);
-            ancestors.addAll(p.getAncestors());
+    /** Returns the IDs of the commit and all of its first-parent
+     * ancestors, newest first. **/
+    public List<ObjectId> getAncestors() {
+        List<ObjectId> ancestors = new ArrayList<>();
+        for (Commit c = this; c != null;
+             c = c.getParent() == null ? null : lookup(c.getParent())) {
+            ancestors.add(ObjectId.fromHex(c.id()));
         }
         return ancestors;
     }
 
+    /** Returns the estimated heap size of the commit in bytes. **/
+    long weight() {
+        return 256 + encoded.length
+            + (blobs == null ? 0 : blobs.weight());
+    }
+
     /** Returns the SHA1 id of the commit. **/
     public String id() {
-        return Utils.sha1(this.datetime
-                + this.msg + this.branch
-                + this.blobs + this.parent + this.mergeParent);
+        return id;
     }
 
     /** Returns the log entry of the commit. **/
@@ -236,7 +454,9 @@ public class Commit implements Serializable {
         String result = "==="
                 + "\ncommit " + id()
                 + mergeLine
-                + "\nDate: " + datetime.format(format)
+                + "\nDate: " + Instant.ofEpochMilli(time)
+                    .atZone(ZoneOffset.ofTotalSeconds(zoneOffset))
+                    .format(format)
                 + "\n" + msg;
         return result;
     }
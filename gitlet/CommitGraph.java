@@ -0,0 +1,435 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/** The shape of a repository's history, kept in .gitlet/commit-graph so
+ * walks need not read commits. Every stored commit has a position, its
+ * rank among the stored IDs, and the file holds
+ * <pre>
+ *   int MAGIC, int count, byte idLength,
+ *   count raw IDs, sorted,
+ *   count ints, the position of each parent, or NONE,
+ *   count ints, the position of each merge parent, or NONE,
+ *   count ints, where each changed-path filter ends,
+ *   the filters
+ * </pre>
+ * A commit's filter is a Bloom filter of the files it changes from its
+ * parent: BITS_PER_PATH bits for each, set by HASHES hashes of the name.
+ * A file whose bits are not all set is certainly unchanged, so a path's
+ * history skips most commits without reading them. Commits changing more
+ * than MAX_PATHS files get a filter of one full byte, which every name
+ * matches. The file is mapped rather than read, so a walk only touches
+ * the pages it visits. It is rebuilt by commit-graph write and by gc;
+ * commits made since are walked by reading them.
+ * @author corey hu **/
+class CommitGraph {
+
+    /** The first bytes of the file, "GLG1". **/
+    private static final int MAGIC = 0x474c4731;
+    /** The position of an absent parent. **/
+    private static final int NONE = -1;
+    /** Filter bits per changed file. **/
+    private static final int BITS_PER_PATH = 10;
+    /** Bits set per file. **/
+    private static final int HASHES = 7;
+    /** Changed files beyond which a commit's filter matches everything. **/
+    private static final int MAX_PATHS = 512;
+    /** The filter of a commit changing too many files. **/
+    private static final byte[] FULL = {(byte) 0xff};
+    /** Seeds of the two hashes combined into HASHES. **/
+    private static final int SEED1 = 0x293ae76f, SEED2 = 0x7e646e2c;
+    /** Bytes before the IDs. **/
+    private static final int HEADER = 9;
+
+    /** The mapped file. **/
+    private final ByteBuffer data;
+    /** The number of commits. **/
+    private final int count;
+    /** Bytes in an ID. **/
+    private final int idLength;
+    /** Where the parents, merge parents, filter ends and filters start. **/
+    private final int parents, mergeParents, ends, filters;
+
+    /** The graph mapped in DATA.
+     * @param data the file's contents **/
+    private CommitGraph(ByteBuffer data) {
+        this.data = data;
+        if (data.getInt(0) != MAGIC) {
+            throw Utils.error("Not a commit graph.");
+        }
+        count = data.getInt(4);
+        idLength = data.get(8);
+        parents = HEADER + count * idLength;
+        mergeParents = parents + 4 * count;
+        ends = mergeParents + 4 * count;
+        filters = ends + 4 * count;
+    }
+
+    /** Returns the graph of the repository whose .gitlet is DIR, or null
+     * if it has none or it was made with another hash.
+     * @param dir a .gitlet directory **/
+    static CommitGraph read(File dir) {
+        File f = new File(dir, "commit-graph");
+        if (!f.isFile()) {
+            return null;
+        }
+        Trace.ObjectRead span = new Trace.ObjectRead("commit-graph",
+                f.getPath());
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            MappedByteBuffer map =
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            span.done(ch.size());
+            CommitGraph g = new CommitGraph(map);
+            return g.idLength == HashAlgorithm.of(dir).length() ? g : null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Rewrites the graph of the repository whose .gitlet is DIR to hold
+     * every stored commit. Commits already in the old graph keep their
+     * parents and filters; only the others are read.
+     * @param dir a .gitlet directory **/
+    static void write(File dir) {
+        List<String> stored = Utils.plainFilenamesIn(new File(dir, "COMMITS"));
+        String[] ids = stored == null ? new String[0]
+                : stored.toArray(new String[0]);
+        Arrays.sort(ids);
+        CommitGraph old = read(dir);
+        int[] parent = new int[ids.length];
+        int[] mergeParent = new int[ids.length];
+        byte[][] filter = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i += 1) {
+            int pos = old == null ? NONE : old.position(ids[i]);
+            String p, mp;
+            if (pos >= 0) {
+                p = old.id(old.parent(pos));
+                mp = old.id(old.mergeParent(pos));
+                filter[i] = old.filter(pos);
+            } else {
+                Commit c = Commit.lookup(dir, ids[i]);
+                p = c.getParent();
+                mp = c.getMergeParent();
+                filter[i] = filterOf(changed(dir, c));
+            }
+            parent[i] = p == null ? NONE : Math.max(NONE,
+                    Arrays.binarySearch(ids, p));
+            mergeParent[i] = mp == null ? NONE : Math.max(NONE,
+                    Arrays.binarySearch(ids, mp));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int idLength = HashAlgorithm.of(dir).length();
+            out.writeInt(MAGIC);
+            out.writeInt(ids.length);
+            out.writeByte(idLength);
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+            for (int p : parent) {
+                out.writeInt(p);
+            }
+            for (int p : mergeParent) {
+                out.writeInt(p);
+            }
+            int end = 0;
+            for (byte[] f : filter) {
+                end += f.length;
+                out.writeInt(end);
+            }
+            for (byte[] f : filter) {
+                out.write(f);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        RefTable.replace(new File(dir, "commit-graph"), bytes.toByteArray());
+    }
+
+    /** Returns the IDs of the commits on the first-parent history of HEAD
+     * that change FILENAME, newest first. Commits in the graph whose
+     * filters rule the file out are passed over without being read. Where
+     * a commit adds the file by renaming another, the history continues
+     * with the other file.
+     * @param head the commit to start from
+     * @param fileName the file **/
+    static List<String> history(Commit head, String fileName) {
+        CommitGraph g = read(Worktree.common());
+        String name = fileName;
+        int[] bits = hashes(name);
+        List<String> result = new ArrayList<>();
+        String id = head.id();
+        while (id != null) {
+            int pos = g == null ? NONE : g.position(id);
+            if (pos >= 0) {
+                for (; pos != NONE; pos = g.parent(pos)) {
+                    Commit c = g.mayChange(pos, bits)
+                            ? Commit.lookup(g.id(pos)) : null;
+                    if (c != null && changes(c, name)) {
+                        result.add(g.id(pos));
+                        String from = renamedFrom(c, name);
+                        if (from != null) {
+                            name = from;
+                            bits = hashes(name);
+                        }
+                    }
+                }
+                break;
+            }
+            Commit c = Commit.lookup(id);
+            if (changes(c, name)) {
+                result.add(id);
+                String from = renamedFrom(c, name);
+                if (from != null) {
+                    name = from;
+                    bits = hashes(name);
+                }
+            }
+            id = c.getParent();
+        }
+        return result;
+    }
+
+    /** Returns the file that commit C renames to FILENAME, or null if C
+     * does not add FILENAME by renaming a file its parent has.
+     * @param c a commit
+     * @param fileName a file C tracks **/
+    private static String renamedFrom(Commit c, String fileName) {
+        String sha = c.getBlobs().get(fileName);
+        if (sha == null || c.getParent() == null) {
+            return null;
+        }
+        PathTrie before = Commit.lookup(c.getParent()).getBlobs();
+        if (before.containsKey(fileName)) {
+            return null;
+        }
+        PathTrie.Builder after = before.edit();
+        before.diff(c.getBlobs(), (name, was, now) -> {
+            if (now == null) {
+                after.remove(name);
+            } else if (was != null || name.equals(fileName)) {
+                after.put(name, now);
+            }
+        });
+        List<Renames.Pair> found = Renames.renames(before, after.build());
+        return found.isEmpty() ? null : found.get(0).getFrom();
+    }
+
+    /** Returns whether commit C stores a different version of FILENAME
+     * than its parent, including adding or removing it.
+     * @param c a commit
+     * @param fileName the file **/
+    private static boolean changes(Commit c, String fileName) {
+        String before = c.getParent() == null ? null
+                : Commit.lookup(c.getParent()).getBlobs().get(fileName);
+        return !Objects.equals(before, c.getBlobs().get(fileName));
+    }
+
+    /** Returns the names of the files commit C, stored in the .gitlet
+     * directory DIR, changes from its parent.
+     * @param dir a .gitlet directory
+     * @param c a commit **/
+    private static Set<String> changed(File dir, Commit c) {
+        Commit p = c.getParent() == null ? null
+                : Commit.lookup(dir, c.getParent());
+        PathTrie before = p == null ? PathTrie.EMPTY : p.getBlobs();
+        Set<String> result = new HashSet<>();
+        before.diff(c.getBlobs(), (name, was, now) -> result.add(name));
+        return result;
+    }
+
+    /** Returns the changed-path filter of the files NAMES.
+     * @param names the changed files **/
+    static byte[] filterOf(Set<String> names) {
+        if (names.size() > MAX_PATHS) {
+            return FULL;
+        }
+        byte[] result = new byte[(names.size() * BITS_PER_PATH + 7) / 8];
+        long size = 8L * result.length;
+        for (String name : names) {
+            int[] h = hashes(name);
+            for (int i = 0; i < HASHES; i += 1) {
+                int bit = bit(h, i, size);
+                result[bit / 8] |= 1 << (bit % 8);
+            }
+        }
+        return result;
+    }
+
+    /** Returns whether the commit at POS may change the file whose two
+     * hashes are H.
+     * @param pos a position
+     * @param h the file's hashes **/
+    boolean mayChange(int pos, int[] h) {
+        int start = pos == 0 ? 0 : data.getInt(ends + 4 * (pos - 1));
+        return mayContain(data, filters + start,
+                data.getInt(ends + 4 * pos) - start, h);
+    }
+
+    /** Returns whether the filter of LENGTH bytes at START in BUF may
+     * hold the file whose two hashes are H. An empty filter holds none.
+     * @param buf the bytes holding the filter
+     * @param start where it starts
+     * @param length its length in bytes
+     * @param h the file's hashes **/
+    static boolean mayContain(ByteBuffer buf, int start, int length,
+                              int[] h) {
+        if (length == 0) {
+            return false;
+        }
+        long size = 8L * length;
+        for (int i = 0; i < HASHES; i += 1) {
+            int bit = bit(h, i, size);
+            if ((buf.get(start + bit / 8) & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the two hashes of NAME that the filter bits come from.
+     * @param name a file name **/
+    static int[] hashes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return new int[] {murmur3(SEED1, bytes), murmur3(SEED2, bytes)};
+    }
+
+    /** Returns the Ith filter bit, of SIZE, for the hashes H.
+     * @param h a file's hashes
+     * @param i which of the HASHES bits
+     * @param size the number of bits in the filter **/
+    private static int bit(int[] h, int i, long size) {
+        return (int) (Integer.toUnsignedLong(h[0] + i * h[1]) % size);
+    }
+
+    /** Returns the 32-bit MurmurHash3 of DATA with SEED.
+     * @param seed the seed
+     * @param data the bytes to hash **/
+    private static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+        int h = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i += 1) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                    | (data[4 * i + 2] & 0xff) << 16 | data[4 * i + 3] << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (data.length & 3) {
+        case 3:
+            k ^= (data[4 * blocks + 2] & 0xff) << 16;
+            // fall through
+        case 2:
+            k ^= (data[4 * blocks + 1] & 0xff) << 8;
+            // fall through
+        case 1:
+            k ^= data[4 * blocks] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            break;
+        default:
+            break;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** Returns the position of commit ID, or NONE if it is not in the
+     * graph.
+     * @param id a commit ID **/
+    int position(String id) {
+        if (id.length() != 2 * idLength) {
+            return NONE;
+        }
+        byte[] key = Utils.fromHex(id);
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, key);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return NONE;
+    }
+
+    /** Compares the ID at POS with KEY, as unsigned bytes.
+     * @param pos a position
+     * @param key a raw ID **/
+    private int compare(int pos, byte[] key) {
+        int base = HEADER + pos * idLength;
+        for (int i = 0; i < idLength; i += 1) {
+            int cmp = Integer.compare(data.get(base + i) & 0xff,
+                    key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the ID at POS, or null if POS is NONE.
+     * @param pos a position **/
+    String id(int pos) {
+        if (pos == NONE) {
+            return null;
+        }
+        byte[] raw = new byte[idLength];
+        data.get(HEADER + pos * idLength, raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the position of the parent of the commit at POS, or NONE.
+     * @param pos a position **/
+    int parent(int pos) {
+        return data.getInt(parents + 4 * pos);
+    }
+
+    /** Returns the position of the merge parent of the commit at POS, or
+     * NONE.
+     * @param pos a position **/
+    int mergeParent(int pos) {
+        return data.getInt(mergeParents + 4 * pos);
+    }
+
+    /** Returns the changed-path filter of the commit at POS.
+     * @param pos a position **/
+    private byte[] filter(int pos) {
+        int start = pos == 0 ? 0 : data.getInt(ends + 4 * (pos - 1));
+        byte[] result = new byte[data.getInt(ends + 4 * pos) - start];
+        data.get(filters + start, result);
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/** A pass over many stored commits that reads and formats them on a pool
+ * of threads and writes what it makes in order as it goes. Only a window
+ * of commits, a few per thread, is read ahead of the one being written,
+ * so the pass holds little however many commits there are, and it keeps
+ * the disk busy while earlier results are written out.
+ * @author corey hu **/
+class CommitScan {
+
+    /** Commits read ahead of the one being written, per thread. **/
+    private static final int AHEAD_PER_THREAD = 64;
+
+    /** The .gitlet directory whose commits are read. **/
+    private final File dir;
+    /** Makes the text written for a commit, or null to write none. **/
+    private final Function<Commit, String> format;
+
+    /** A scan of the commits in DIR, writing what FORMAT makes of each.
+     * @param dir a .gitlet directory
+     * @param format makes the text for a commit, or null to skip it **/
+    CommitScan(File dir, Function<Commit, String> format) {
+        this.dir = dir;
+        this.format = format;
+    }
+
+    /** Writes to standard output the text made for each commit in IDS, in
+     * order, skipping commits that are missing, and returns the number of
+     * texts written.
+     * @param ids the commits' IDs **/
+    int print(List<String> ids) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            int written = run(ids, out);
+            out.flush();
+            return written;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes to OUT the text made for each commit in IDS, in order,
+     * skipping commits that are missing, and returns the number of texts
+     * written.
+     * @param ids the commits' IDs
+     * @param out where the texts go **/
+    int run(List<String> ids, Writer out) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<String>> ahead = new ArrayDeque<>();
+        int written = 0;
+        try {
+            for (String id : ids) {
+                if (ahead.size() == AHEAD_PER_THREAD * threads) {
+                    written += write(ahead.removeFirst(), out);
+                }
+                ahead.addLast(pool.submit(() -> make(id)));
+            }
+            while (!ahead.isEmpty()) {
+                written += write(ahead.removeFirst(), out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return written;
+    }
+
+    /** Returns the text for the commit ID, or null if there is none.
+     * @param id a commit's ID **/
+    private String make(String id) {
+        Commit c = Commit.lookup(dir, id);
+        return c == null ? null : format.apply(c);
+    }
+
+    /** Waits for TEXT and writes it to OUT, returning 1, or returns 0 if
+     * there is none.
+     * @param text a text being made
+     * @param out where it goes **/
+    private static int write(Future<String> text, Writer out)
+        throws IOException {
+        String result;
+        try {
+            result = text.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted while reading commits.");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (result == null) {
+            return 0;
+        }
+        out.write(result);
+        return 1;
+    }
+}
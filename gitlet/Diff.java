@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line diffs, by Myers' O(ND) algorithm. Lines are first numbered so
+ * that equal lines get equal numbers, and the common prefix and suffix
+ * are matched directly, leaving the search only the lines in between.
+ * @author corey hu **/
+class Diff {
+
+    /** Returns, for each line of AFTER, the index of the line of BEFORE it
+     * is kept from in a shortest edit from BEFORE to AFTER, or -1 for
+     * lines the edit inserts.
+     * @param before the old lines
+     * @param after the new lines **/
+    static int[] match(String[] before, String[] after) {
+        Map<String, Integer> numbers = new HashMap<>();
+        int[] a = number(before, numbers);
+        int[] b = number(after, numbers);
+        int[] result = new int[b.length];
+        Arrays.fill(result, -1);
+
+        int start = 0;
+        while (start < a.length && start < b.length
+                && a[start] == b[start]) {
+            result[start] = start;
+            start += 1;
+        }
+        int endA = a.length, endB = b.length;
+        while (endA > start && endB > start && a[endA - 1] == b[endB - 1]) {
+            endA -= 1;
+            endB -= 1;
+            result[endB] = endA;
+        }
+        if (start < endA && start < endB) {
+            myers(a, b, start, endA, endB, result);
+        }
+        return result;
+    }
+
+    /** Returns the numbers of LINES, numbering lines not yet in NUMBERS
+     * after those that are.
+     * @param lines the lines to number
+     * @param numbers the numbers given so far **/
+    private static int[] number(String[] lines, Map<String, Integer> numbers) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer n = numbers.putIfAbsent(lines[i], numbers.size());
+            result[i] = n == null ? numbers.size() - 1 : n;
+        }
+        return result;
+    }
+
+    /** Records in MATCH the lines of B[START..ENDB) kept from
+     * A[START..ENDA) by a shortest edit script. The furthest-reaching
+     * path of each diagonal is kept for every edit distance, only for the
+     * diagonals that distance can reach, and then traced back from the
+     * end.
+     * @param a numbered old lines
+     * @param b numbered new lines
+     * @param start where both ranges begin
+     * @param endA where the range of A ends
+     * @param endB where the range of B ends
+     * @param match receives the index in A of each kept line of B **/
+    private static void myers(int[] a, int[] b, int start, int endA,
+                              int endB, int[] match) {
+        int n = endA - start, m = endB - start;
+        int offset = n + m + 1;
+        int[] v = new int[2 * offset + 1];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= n + m; d += 1) {
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d
+                        && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[start + x] == b[start + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, d, n, m, start, match);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Walks the furthest-reaching paths in TRACE back from (N, M) after
+     * D edits, recording the diagonal moves, which keep a line, in MATCH.
+     * @param trace the paths before each edit distance, trimmed to the
+     *              diagonals it can reach
+     * @param d the length of the shortest edit
+     * @param n the length of the old range
+     * @param m the length of the new range
+     * @param start where both ranges begin
+     * @param match receives the index in A of each kept line of B **/
+    private static void backtrack(List<int[]> trace, int d, int n, int m,
+                                  int start, int[] match) {
+        int x = n, y = m;
+        for (; d > 0; d -= 1) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && v[k - 1 + d] < v[k + 1 + d])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = v[prevK + d];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                match[start + y] = start + x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            match[start + y] = start + x;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Verifies the integrity of a repository's object store. Every object in
+ * COMMITS and FILES is read back and re-hashed on all cores, with at most
+ * a few tasks per thread queued so the listing never runs far ahead of
+ * the disk. Then reachability is walked from every ref, and problems are
+ * reported one per line, as
+ * <pre>
+ *   missing branch NAME         the branch HEAD names has no ref
+ *   missing commit|blob ID      referenced but not stored
+ *   corrupt commit|blob ID      stored, but not hashing to its name
+ *   dangling commit|blob ID     unreachable and unreferenced by any
+ *                               other unreachable object
+ *   unreachable commit|blob ID  any other unreachable object
+ * </pre>
+ * Blobs a partial clone has not fetched and the parents of shallow grafts
+ * are expected to be absent and are not reported.
+ * @author corey hu **/
+class Fsck {
+
+    /** Tasks queued per verifying thread. **/
+    private static final int QUEUE_PER_THREAD = 4;
+
+    /** The .gitlet directory being checked. **/
+    private final File dir;
+    /** The verified commits by ID. **/
+    private final Map<String, Commit> commits = new ConcurrentHashMap<>();
+    /** IDs of the stored blobs that verified. **/
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+    /** Problems found, sorted by kind and ID. **/
+    private final Set<String> problems =
+            Collections.synchronizedSet(new TreeSet<>());
+
+    /** A check of the repository in the .gitlet directory DIR.
+     * @param dir a .gitlet directory **/
+    Fsck(File dir) {
+        this.dir = dir;
+    }
+
+    /** Checks the repository and returns the problems found, one per
+     * line, in the order listed in the class comment. **/
+    List<String> check() {
+        List<String> storedCommits =
+                Utils.plainFilenamesIn(new File(dir, "COMMITS"));
+        List<String> storedBlobs =
+                Utils.plainFilenamesIn(new File(dir, "FILES"));
+        verify(storedCommits, storedBlobs);
+
+        Set<String> reached = new HashSet<>();
+        Set<String> reachedBlobs = new HashSet<>();
+        Deque<String> work = new ArrayDeque<>(Remote.tips(dir));
+        String head = RefTable.head(dir);
+        if (RefTable.read(dir).resolve(head) == null) {
+            problems.add("missing branch " + head);
+        }
+        walk(work, reached, reachedBlobs);
+
+        Set<String> referenced = new HashSet<>();
+        Set<String> referencedBlobs = new HashSet<>();
+        for (String id : storedCommits) {
+            Commit c = commits.get(id);
+            if (c == null || reached.contains(id)) {
+                continue;
+            }
+            for (String p : new String[] {c.getParent(),
+                                          c.getMergeParent()}) {
+                if (p != null) {
+                    referenced.add(p);
+                }
+            }
+            referencedBlobs.addAll(c.getBlobs().values());
+        }
+        for (String id : storedCommits) {
+            if (commits.containsKey(id) && !reached.contains(id)) {
+                problems.add((referenced.contains(id) ? "unreachable"
+                        : "dangling") + " commit " + id);
+            }
+        }
+        for (String sha : storedBlobs) {
+            if (blobs.contains(sha) && !reachedBlobs.contains(sha)) {
+                problems.add((referencedBlobs.contains(sha) ? "unreachable"
+                        : "dangling") + " blob " + sha);
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String kind : new String[] {"missing", "corrupt", "dangling",
+                                         "unreachable"}) {
+            for (String problem : problems) {
+                if (problem.startsWith(kind + " ")) {
+                    result.add(problem);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Reads and re-hashes every stored commit in COMMITIDS and blob in
+     * BLOBSHAS in parallel, recording those that verify and reporting
+     * those that do not.
+     * @param commitIds names of the files in COMMITS
+     * @param blobShas names of the files in FILES **/
+    private void verify(List<String> commitIds, List<String> blobShas) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_PER_THREAD * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        for (String id : commitIds) {
+            pool.execute(() -> verifyCommit(id));
+        }
+        for (String sha : blobShas) {
+            pool.execute(() -> verifyBlob(sha));
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted while checking objects.");
+        }
+    }
+
+    /** Checks that the stored commit ID hashes to its name.
+     * @param id the commit's file name **/
+    private void verifyCommit(String id) {
+        Commit c;
+        try {
+            c = Commit.parse(
+                    Utils.readContents(new File(dir, "COMMITS/" + id)));
+        } catch (IllegalArgumentException excp) {
+            c = null;
+        }
+        if (c != null && id.equals(c.id())) {
+            commits.put(id, c);
+        } else {
+            problems.add("corrupt commit " + id);
+        }
+    }
+
+    /** Checks that the stored blob SHA hashes to its name.
+     * @param sha the blob's file name **/
+    private void verifyBlob(String sha) {
+        Blob b;
+        try {
+            b = Utils.readObject(new File(dir, "FILES/" + sha), Blob.class);
+        } catch (IllegalArgumentException excp) {
+            b = null;
+        }
+        if (b != null && sha.equals(b.id())) {
+            blobs.add(sha);
+        } else {
+            problems.add("corrupt blob " + sha);
+        }
+    }
+
+    /** Marks everything reachable from the commits in WORK, adding the
+     * commits to REACHED and their blobs to REACHEDBLOBS, and reports
+     * referenced objects that are not stored.
+     * @param work commits still to visit
+     * @param reached commits visited
+     * @param reachedBlobs blobs referenced by visited commits **/
+    private void walk(Deque<String> work, Set<String> reached,
+                      Set<String> reachedBlobs) {
+        boolean partial = Promisor.remote() != null;
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (!reached.add(id)) {
+                continue;
+            }
+            Commit c = commits.get(id);
+            if (c == null) {
+                if (!new File(dir, "COMMITS/" + id).isFile()) {
+                    problems.add("missing commit " + id);
+                }
+                continue;
+            }
+            for (String sha : c.getBlobs().values()) {
+                if (reachedBlobs.add(sha) && !partial
+                        && !new File(dir, "FILES/" + sha).isFile()) {
+                    problems.add("missing blob " + sha);
+                }
+            }
+            for (String p : new String[] {c.getParent(),
+                                          c.getMergeParent()}) {
+                if (p != null) {
+                    work.push(p);
+                }
+            }
+        }
+    }
+}
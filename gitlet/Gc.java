@@ -0,0 +1,260 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/** Deletes the objects no ref can reach. Every stored commit and blob is
+ * given an index, commits first, by its position in the sorted listing
+ * of COMMITS and FILES, and marking sets one bit per index, so the mark
+ * phase costs a bit per object rather than a set of IDs. Marking starts
+ * from every ref, every commit any reflog has recorded and the blobs the
+ * repository tracks or stages, and walks the history a generation at a
+ * time, reading each generation's commits on all cores, or, when the
+ * repository has reachability bitmaps, takes what they say the roots
+ * reach. The sweep then deletes unmarked objects, and staged copies
+ * nothing is staged for, that are older than the grace period, along
+ * with the blame attributions kept for deleted commits, and the commit
+ * graph and bitmaps are rewritten to match. Commands running alongside
+ * only create objects or refresh the ones they reuse, so anything they
+ * touch is either listed after the sweep began or too young to delete.
+ * @author corey hu **/
+class Gc {
+
+    /** Bits in a word of the mark bitset. **/
+    private static final int WORD = 64;
+
+    /** The .gitlet directory being collected. **/
+    private final File dir;
+    /** Objects last modified before this time, in epoch milliseconds, may
+     * be deleted. **/
+    private final long cutoff;
+    /** The stored commit IDs, sorted. **/
+    private String[] commits;
+    /** The stored blob IDs, sorted. **/
+    private String[] blobs;
+    /** One bit per commit, then per blob, set once it is reachable. **/
+    private AtomicLongArray marks;
+
+    /** Objects deleted: commits, blobs and staged copies. **/
+    private int commitsRemoved, blobsRemoved, stagedRemoved;
+    /** Unreachable objects kept because they are too young. **/
+    private int kept;
+    /** Bytes freed. **/
+    private long reclaimed;
+
+    /** A collection of the repository in the .gitlet directory DIR that
+     * spares objects modified within the last GRACEMILLIS milliseconds.
+     * @param dir a .gitlet directory
+     * @param graceMillis how old an unreachable object must be to go **/
+    Gc(File dir, long graceMillis) {
+        this.dir = dir;
+        this.cutoff = System.currentTimeMillis() - graceMillis;
+    }
+
+    /** Collects the repository and returns a summary of what was freed. **/
+    String collect() {
+        commits = sorted("COMMITS");
+        blobs = sorted("FILES");
+        marks = new AtomicLongArray(
+                (commits.length + blobs.length + WORD - 1) / WORD);
+        Promisor.isShallow();
+
+        Repo repo = Utils.readObject(new File(dir, "repo"), Repo.class);
+        Set<String> staged = new HashSet<>(repo.getStagedAdd().values());
+        for (String sha : repo.getTracking().values()) {
+            markBlob(sha);
+        }
+        Set<String> roots = new HashSet<>(Remote.tips(dir));
+        addLogged(new File(dir, "logs"), roots);
+        mark(roots);
+
+        for (int i = 0; i < commits.length; i += 1) {
+            if (!isMarked(i)
+                    && sweep(new File(dir, "COMMITS/" + commits[i]))) {
+                commitsRemoved += 1;
+            }
+        }
+        for (int i = 0; i < blobs.length; i += 1) {
+            if (!isMarked(commits.length + i)
+                    && sweep(new File(dir, "FILES/" + blobs[i]))) {
+                blobsRemoved += 1;
+            }
+        }
+        for (String sha : Utils.plainFilenamesIn(new File(dir, "STAGING"))) {
+            if (!staged.contains(sha)
+                    && sweep(new File(dir, "STAGING/" + sha))) {
+                stagedRemoved += 1;
+            }
+        }
+        File[] blamed = new File(dir, "blame").listFiles();
+        for (File f : blamed == null ? new File[0] : blamed) {
+            String id = f.getName().split("-")[0];
+            if (!new File(dir, "COMMITS/" + id).isFile()) {
+                f.delete();
+            }
+        }
+        RefLog.retain(new File(dir, "commitHistory"),
+                e -> new File(dir, "COMMITS/" + e.getNewId()).isFile());
+        CommitGraph.write(dir);
+        Bitmaps.write(dir);
+
+        String result = String.format(Locale.ROOT,
+                "Removed %d commits, %d blobs and %d staged files, "
+                + "reclaiming %d bytes.", commitsRemoved, blobsRemoved,
+                stagedRemoved, reclaimed);
+        if (kept > 0) {
+            result += String.format(Locale.ROOT, "%nKept %d unreachable "
+                    + "objects within the grace period.", kept);
+        }
+        return result;
+    }
+
+    /** Returns the sorted names of the files in the directory NAME. An
+     * absent directory is empty.
+     * @param name COMMITS or FILES **/
+    private String[] sorted(String name) {
+        List<String> names = Utils.plainFilenamesIn(new File(dir, name));
+        String[] result = names == null ? new String[0]
+                : names.toArray(new String[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Adds every commit recorded in the reflogs under LOGS, whether a
+     * ref moved to it or from it, to ROOTS.
+     * @param logs a directory of reflogs
+     * @param roots the commits to mark from **/
+    private void addLogged(File logs, Set<String> roots) {
+        File[] files = logs.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                addLogged(f, roots);
+                continue;
+            }
+            for (RefLog.Entry entry : RefLog.read(f)) {
+                if (entry.getOldId() != null) {
+                    roots.add(entry.getOldId());
+                }
+                roots.add(entry.getNewId());
+            }
+        }
+    }
+
+    /** Marks the commits ROOTS and everything reachable from them, from
+     * the bitmaps if there are any and otherwise one generation at a
+     * time. Commits that are not stored, such as the
+     * parents of shallow grafts, end the walk.
+     * @param roots the commits to mark from **/
+    private void mark(Collection<String> roots) {
+        Bitmaps index = Bitmaps.read(dir);
+        if (index != null) {
+            Bitmaps.Reach reach = index.reach(dir, roots);
+            for (String id : reach.commitIds()) {
+                testAndSet(Arrays.binarySearch(commits, id));
+            }
+            for (String sha : reach.blobIds()) {
+                markBlob(sha);
+            }
+            return;
+        }
+        List<String> frontier = new ArrayList<>(roots);
+        while (!frontier.isEmpty()) {
+            frontier = frontier.parallelStream()
+                    .filter(id -> testAndSet(
+                            Arrays.binarySearch(commits, id)))
+                    .flatMap(id -> visit(id).stream())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /** Marks the blobs of the newly marked commit ID and returns its
+     * parents.
+     * @param id a stored commit **/
+    private List<String> visit(String id) {
+        Commit c = Commit.deserialize(
+                new File(dir, "COMMITS/" + id).getPath());
+        List<String> parents = new ArrayList<>(2);
+        if (c == null) {
+            return parents;
+        }
+        for (String sha : c.getBlobs().values()) {
+            markBlob(sha);
+        }
+        if (c.getParent() != null) {
+            parents.add(c.getParent());
+        }
+        if (c.getMergeParent() != null) {
+            parents.add(c.getMergeParent());
+        }
+        return parents;
+    }
+
+    /** Marks the blob SHA, if it is stored.
+     * @param sha a blob ID **/
+    private void markBlob(String sha) {
+        int i = Arrays.binarySearch(blobs, sha);
+        if (i >= 0) {
+            testAndSet(commits.length + i);
+        }
+    }
+
+    /** Sets bit I and returns whether it was clear. Negative indexes,
+     * from objects that are not stored, are never set.
+     * @param i an object index **/
+    private boolean testAndSet(int i) {
+        if (i < 0) {
+            return false;
+        }
+        long bit = 1L << (i % WORD);
+        while (true) {
+            long word = marks.get(i / WORD);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (marks.compareAndSet(i / WORD, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /** Returns whether bit I is set.
+     * @param i an object index **/
+    private boolean isMarked(int i) {
+        return (marks.get(i / WORD) & (1L << (i % WORD))) != 0;
+    }
+
+    /** Deletes the unreachable file F if it is older than the grace
+     * period, adding its size to the bytes reclaimed, and returns
+     * whether it was deleted. Its age is checked just before deleting so
+     * a command that has since reused it keeps it.
+     * @param f an unmarked object or staged copy **/
+    private boolean sweep(File f) {
+        long size = f.length();
+        if (f.lastModified() >= cutoff) {
+            kept += 1;
+            return false;
+        }
+        try {
+            if (!Files.deleteIfExists(f.toPath())) {
+                return false;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        reclaimed += size;
+        return true;
+    }
+}
@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The hash function that names a repository's objects. Each repository
+ * picks one at init, recorded by name in .gitlet/hash; repositories
+ * without that file use SHA-1. Objects are still named by the hex form of
+ * their ID, but an algorithm works on raw bytes and streams and returns
+ * binary IDs, whose length every ID-holding structure takes from the
+ * algorithm instead of assuming twenty bytes.
+ * @author corey hu **/
+abstract class HashAlgorithm {
+
+    /** SHA-1, the original algorithm. **/
+    static final HashAlgorithm SHA1 = new Digest("sha1", "SHA-1", 20);
+    /** SHA-256, which HotSpot runs on the CPU's SHA instructions where
+     * they exist. **/
+    static final HashAlgorithm SHA256 =
+            new Digest("sha256", "SHA-256", 32);
+    /** BLAKE3, which hashes large inputs on all cores. **/
+    static final HashAlgorithm BLAKE3 = new Blake3();
+
+    /** Size of stream buffers. **/
+    private static final int BUFFER = 1 << 16;
+
+    /** The algorithms of the repositories read so far, by the absolute
+     * path of their .gitlet directory. **/
+    private static final Map<String, HashAlgorithm> KNOWN =
+            new ConcurrentHashMap<>();
+
+    /** An incremental hash computation. **/
+    interface Hasher {
+        /** Adds LEN bytes of DATA, starting at OFF, to the input.
+         * @param data the bytes
+         * @param off where they start
+         * @param len how many there are **/
+        void update(byte[] data, int off, int len);
+
+        /** Returns the hash of everything added. **/
+        byte[] finish();
+    }
+
+    /** Returns the algorithm called NAME, or null if there is none.
+     * @param name sha1, sha256 or blake3 **/
+    static HashAlgorithm forName(String name) {
+        for (HashAlgorithm alg
+                 : new HashAlgorithm[] {SHA1, SHA256, BLAKE3}) {
+            if (alg.getName().equals(name)) {
+                return alg;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the algorithm of the repository in the working directory. **/
+    static HashAlgorithm current() {
+        return of(Worktree.common());
+    }
+
+    /** Returns the algorithm of the repository whose .gitlet is DIR.
+     * @param dir a .gitlet directory **/
+    static HashAlgorithm of(File dir) {
+        String key = dir.getAbsolutePath();
+        HashAlgorithm alg = KNOWN.get(key);
+        if (alg == null) {
+            File f = new File(dir, "hash");
+            String name = f.isFile()
+                    ? Utils.readContentsAsString(f).trim() : SHA1.getName();
+            alg = forName(name);
+            if (alg == null) {
+                throw Utils.error("Unknown hash algorithm %s.", name);
+            }
+            KNOWN.put(key, alg);
+        }
+        return alg;
+    }
+
+    /** Makes ALG the algorithm of the repository whose .gitlet is DIR.
+     * @param dir a .gitlet directory
+     * @param alg the algorithm **/
+    static void set(File dir, HashAlgorithm alg) {
+        if (alg != SHA1) {
+            Utils.writeContents(new File(dir, "hash"), alg.getName() + "\n");
+        }
+        KNOWN.put(dir.getAbsolutePath(), alg);
+    }
+
+    /** Returns the algorithm's name, as recorded in .gitlet/hash. **/
+    abstract String getName();
+
+    /** Returns the number of bytes in an ID. **/
+    abstract int length();
+
+    /** Returns the number of hex digits in an ID. **/
+    int hexLength() {
+        return 2 * length();
+    }
+
+    /** Returns a new incremental computation of this hash. **/
+    abstract Hasher newHasher();
+
+    /** Returns the hash of DATA.
+     * @param data the bytes to hash **/
+    byte[] digest(byte[] data) {
+        Trace.Hash span = new Trace.Hash();
+        Hasher h = newHasher();
+        h.update(data, 0, data.length);
+        byte[] result = h.finish();
+        span.done(data.length);
+        return result;
+    }
+
+    /** Returns the hash of the rest of IN.
+     * @param in the stream to hash **/
+    byte[] digest(InputStream in) throws IOException {
+        Trace.Hash span = new Trace.Hash();
+        Hasher h = newHasher();
+        byte[] buf = new byte[BUFFER];
+        long total = 0;
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            h.update(buf, 0, n);
+            total += n;
+        }
+        byte[] result = h.finish();
+        span.done(total);
+        return result;
+    }
+
+    /** Returns the hex ID of the concatenation of VALS, which may be any
+     * mixture of byte arrays and Strings, as for Utils.sha1. The values
+     * are joined into one array and hashed by digest, so an algorithm
+     * that hashes long inputs in parallel does so here too.
+     * @param vals the values to hash **/
+    String hex(Object... vals) {
+        if (vals.length == 1 && vals[0] instanceof byte[]) {
+            return Utils.toHex(digest((byte[]) vals[0]));
+        }
+        byte[][] parts = new byte[vals.length][];
+        int total = 0;
+        for (int i = 0; i < vals.length; i += 1) {
+            if (vals[i] instanceof byte[]) {
+                parts[i] = (byte[]) vals[i];
+            } else if (vals[i] instanceof String) {
+                parts[i] = ((String) vals[i]).getBytes(StandardCharsets.UTF_8);
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+            total += parts[i].length;
+        }
+        byte[] data = new byte[total];
+        int off = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, data, off, part.length);
+            off += part.length;
+        }
+        return Utils.toHex(digest(data));
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /** An algorithm provided by a MessageDigest. **/
+    private static class Digest extends HashAlgorithm {
+        /** The name recorded in .gitlet/hash. **/
+        private final String name;
+        /** The JCA name of the digest. **/
+        private final String jcaName;
+        /** The number of bytes in an ID. **/
+        private final int length;
+
+        /** The algorithm NAME, computed by the MessageDigest JCANAME, with
+         * IDs of LENGTH bytes.
+         * @param name the repository-facing name
+         * @param jcaName the MessageDigest name
+         * @param length ID length in bytes **/
+        Digest(String name, String jcaName, int length) {
+            this.name = name;
+            this.jcaName = jcaName;
+            this.length = length;
+        }
+
+        @Override
+        String getName() {
+            return name;
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        Hasher newHasher() {
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance(jcaName);
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                        "System does not support " + jcaName);
+            }
+            return new Hasher() {
+                @Override
+                public void update(byte[] data, int off, int len) {
+                    md.update(data, off, len);
+                }
+
+                @Override
+                public byte[] finish() {
+                    return md.digest();
+                }
+            };
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package gitlet;
 
 import java.io.File;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author corey hu
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Usage: java gitlet.Main [--trace] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> .... With --trace, a summary of the time
+     *  spent reading, writing, hashing, listing and updating refs is
+     *  printed to stderr when the command finishes. */
     public static void main(String... args) {
+        if (args.length > 0 && args[0].equals("--trace")) {
+            Trace.enable();
+            try {
+                main(Arrays.copyOfRange(args, 1, args.length));
+            } finally {
+                System.err.print(Trace.report());
+            }
+            return;
+        }
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
@@ -18,11 +30,27 @@ public class Main {
 
         File gitDir = new File(".gitlet");
         if (!gitDir.exists() || !gitDir.isDirectory()) {
-            if (!cmd.toLowerCase().equals("init")) {
+            if (!cmd.toLowerCase().equals("init")
+                    && !cmd.toLowerCase().equals("clone")) {
                 System.out.println("Not in an initialized Gitlet directory.");
                 return;
             }
         }
+        try {
+            dispatch(cmd, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        if (Boolean.getBoolean("gitlet.cache.stats")) {
+            System.err.println(ObjectCache.report());
+        }
+
+    }
+
+    /** Runs the command CMD, whose arguments, CMD first, are ARGS.
+     * @param cmd the command's name
+     * @param args the command line **/
+    private static void dispatch(String cmd, String... args) {
         switch (cmd.toLowerCase()) {
         case "init" :
             Command.doInit(args);
@@ -36,6 +64,9 @@ public class Main {
         case "global-log" :
             Command.doGlobalLog(args);
             break;
+        case "reflog" :
+            Command.doReflog(args);
+            break;
         case "commit" :
             Command.doCommit(args);
             break;
@@ -63,12 +94,70 @@ public class Main {
         case "merge" :
             Command.doMerge(args);
             break;
+        case "cherry-pick" :
+            Command.doCherryPick(args);
+            break;
+        case "rebase" :
+            Command.doRebase(args);
+            break;
+        case "clone" :
+            Command.doClone(args);
+            break;
+        case "diff" :
+            Command.doDiff(args);
+            break;
+        case "blame" :
+            Command.doBlame(args);
+            break;
+        case "bitmap" :
+            Command.doBitmap(args);
+            break;
+        case "rev-list" :
+            Command.doRevList(args);
+            break;
+        case "commit-graph" :
+            Command.doCommitGraph(args);
+            break;
+        case "sparse-checkout" :
+            Command.doSparseCheckout(args);
+            break;
+        case "worktree" :
+            Command.doWorktree(args);
+            break;
+        case "fsck" :
+            Command.doFsck(args);
+            break;
+        case "gc" :
+            Command.doGc(args);
+            break;
+        case "archive" :
+            Command.doArchive(args);
+            break;
+        case "bundle" :
+            Command.doBundle(args);
+            break;
+        case "add-remote" :
+            Command.doAddRemote(args);
+            break;
+        case "rm-remote" :
+            Command.doRemoveRemote(args);
+            break;
+        case "serve" :
+            Command.doServe(args);
+            break;
+        case "push" :
+            Command.doPush(args);
+            break;
+        case "fetch" :
+            Command.doFetch(args);
+            break;
+        case "pull" :
+            Command.doPull(args);
+            break;
         default:
             System.out.println("No command with that name exists.");
             break;
         }
-
     }
 
-
 }
@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A size-bounded LRU cache of parsed objects keyed by object ID. Objects
+ * are content addressed, so a cached object never goes stale. There are
+ * two shared caches with separate weight limits: METADATA holds commits
+ * and CONTENT holds blobs. The limits, in bytes, can be set with the
+ * gitlet.cache.metadata and gitlet.cache.content system properties, and
+ * the hit, miss and eviction counters are printed to stderr at exit when
+ * gitlet.cache.stats is true.
+ * @param <V> the type of cached object
+ * @author corey hu **/
+class ObjectCache<V> {
+
+    /** The cache of parsed commits. **/
+    static final ObjectCache<Commit> METADATA = new ObjectCache<>(
+            "metadata", Long.getLong("gitlet.cache.metadata", 32L << 20));
+
+    /** The cache of parsed blobs. **/
+    static final ObjectCache<Blob> CONTENT = new ObjectCache<>(
+            "content", Long.getLong("gitlet.cache.content", 64L << 20));
+
+    /** A cached object with its weight. **/
+    private static class Entry<V> {
+        /** The cached object. **/
+        private final V value;
+        /** Its estimated size in bytes. **/
+        private final long weight;
+
+        /** An entry holding VALUE of size WEIGHT.
+         * @param value the object
+         * @param weight its size in bytes **/
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** The name used when reporting this cache. **/
+    private final String name;
+    /** The most bytes this cache may hold. **/
+    private final long maxWeight;
+    /** Entries, least recently used first. **/
+    private final LinkedHashMap<String, Entry<V>> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** The bytes currently held. **/
+    private long weight;
+    /** Number of lookups that found their object. **/
+    private long hits;
+    /** Number of lookups that did not. **/
+    private long misses;
+    /** Number of objects dropped to stay under the limit. **/
+    private long evictions;
+
+    /** A cache called NAME that holds at most MAXWEIGHT bytes.
+     * @param name name of the cache
+     * @param maxWeight the weight limit in bytes **/
+    ObjectCache(String name, long maxWeight) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+    }
+
+    /** Returns the object with ID, or null if it is not cached.
+     * @param id the object ID **/
+    synchronized V get(String id) {
+        Entry<V> e = entries.get(id);
+        if (e == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return e.value;
+    }
+
+    /** Returns the object with ID, or null if it is not cached, without
+     * counting the lookup as a hit or a miss.
+     * @param id the object ID **/
+    synchronized V peek(String id) {
+        Entry<V> e = entries.get(id);
+        return e == null ? null : e.value;
+    }
+
+    /** Caches VALUE under ID, counting it as SIZE bytes, and evicts the
+     * least recently used objects until the cache fits its limit.
+     * @param id the object ID
+     * @param value the object
+     * @param size its estimated size in bytes **/
+    synchronized void put(String id, V value, long size) {
+        if (value == null || size > maxWeight) {
+            return;
+        }
+        Entry<V> old = entries.put(id, new Entry<>(value, size));
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += size;
+        Iterator<Map.Entry<String, Entry<V>>> lru =
+                entries.entrySet().iterator();
+        while (weight > maxWeight && lru.hasNext()) {
+            weight -= lru.next().getValue().weight;
+            lru.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Counts VALUE, if it is the object cached under ID, as SIZE bytes
+     * from now on, as when it has grown since it was cached, and evicts
+     * the least recently used objects until the cache fits its limit.
+     * @param id the object ID
+     * @param value the object
+     * @param size its estimated size in bytes now **/
+    synchronized void resize(String id, V value, long size) {
+        Entry<V> e = entries.get(id);
+        if (e == null || e.value != value) {
+            return;
+        }
+        entries.remove(id);
+        weight -= e.weight;
+        put(id, value, size);
+    }
+
+    /** Drops every cached object. Counters are kept. **/
+    synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /** Returns the number of lookups that found their object. **/
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not. **/
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Returns the number of objects evicted. **/
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Returns the bytes currently held. **/
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format("%s cache: %d hits, %d misses (%.1f%%), "
+                + "%d evictions, %d/%d bytes", name, hits, misses,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                evictions, weight, maxWeight);
+    }
+
+    /** Returns a report on both shared caches. **/
+    static String report() {
+        return METADATA + "\n" + CONTENT;
+    }
+}
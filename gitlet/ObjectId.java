@@ -0,0 +1,118 @@
+package gitlet;
+
+/** The ID of a stored object, held as the raw bytes of its hash packed
+ * into four longs rather than as a hex string: 48 bytes for any of the
+ * hashes in HashAlgorithm, against about 100 for a 40-digit string and
+ * its array. IDs compare as their hex forms do.
+ * @author corey hu **/
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** The most bytes in an ID. **/
+    static final int MAX_LENGTH = 32;
+
+    /** The ID's bytes, big-endian, eight to a word, zero past the end. **/
+    private final long w0, w1, w2, w3;
+    /** The number of bytes in the ID. **/
+    private final int length;
+
+    /** The ID whose bytes are the LENGTH at OFFSET in RAW.
+     * @param raw bytes holding the ID
+     * @param offset where it starts
+     * @param length its length **/
+    private ObjectId(byte[] raw, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("object ID too long");
+        }
+        this.length = length;
+        w0 = word(raw, offset, length, 0);
+        w1 = word(raw, offset, length, 1);
+        w2 = word(raw, offset, length, 2);
+        w3 = word(raw, offset, length, 3);
+    }
+
+    /** Returns the ID whose bytes are the LENGTH at OFFSET in RAW.
+     * @param raw bytes holding the ID
+     * @param offset where it starts
+     * @param length its length **/
+    static ObjectId fromRaw(byte[] raw, int offset, int length) {
+        return new ObjectId(raw, offset, length);
+    }
+
+    /** Returns the ID whose hex form is HEX.
+     * @param hex an ID in hex **/
+    static ObjectId fromHex(String hex) {
+        byte[] raw = Utils.fromHex(hex);
+        return new ObjectId(raw, 0, raw.length);
+    }
+
+    /** Returns word K of the LENGTH bytes at OFFSET in RAW.
+     * @param raw bytes holding an ID
+     * @param offset where it starts
+     * @param length its length
+     * @param k which word **/
+    private static long word(byte[] raw, int offset, int length, int k) {
+        long result = 0;
+        for (int i = 8 * k; i < 8 * k + 8; i += 1) {
+            result = result << 8
+                    | (i < length ? raw[offset + i] & 0xff : 0);
+        }
+        return result;
+    }
+
+    /** Returns the number of bytes in the ID. **/
+    int length() {
+        return length;
+    }
+
+    /** Writes the ID's bytes to DST at OFFSET.
+     * @param dst where the bytes go
+     * @param offset where they start **/
+    void copyTo(byte[] dst, int offset) {
+        for (int i = 0; i < length; i += 1) {
+            long w = i < 8 ? w0 : i < 16 ? w1 : i < 24 ? w2 : w3;
+            dst[offset + i] = (byte) (w >>> (56 - 8 * (i % 8)));
+        }
+    }
+
+    /** Returns the ID in hex. **/
+    String hex() {
+        byte[] raw = new byte[length];
+        copyTo(raw, 0);
+        return Utils.toHex(raw);
+    }
+
+    @Override
+    public String toString() {
+        return hex();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) o;
+        return w0 == other.w0 && w1 == other.w1 && w2 == other.w2
+                && w3 == other.w3 && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w0 >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(w0, other.w0);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w1, other.w1);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w2, other.w2);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w3, other.w3);
+        }
+        return cmp != 0 ? cmp : Integer.compare(length, other.length);
+    }
+}
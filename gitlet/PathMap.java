@@ -0,0 +1,397 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A map from file names to blob IDs, as the staging area holds them
+ * and trees are written, stored compactly. Each file name is interned
+ * once for the whole process and given a small number, so a map holds an
+ * int per file and the raw bytes of its blob ID, in parallel arrays
+ * probed linearly, rather than a node, a name string and a 40-digit ID
+ * string per file; trees of the same files in many commits share their
+ * names. It reads as any other Map of hex IDs, which are made only when
+ * asked for, and getId and putId move IDs without making them at all.
+ * @author corey hu **/
+class PathMap extends AbstractMap<String, String> implements Serializable {
+
+    /** Slots per entry the table grows to keep at least. **/
+    private static final int SPARE = 2;
+    /** The number of each interned file name. **/
+    private static final Map<String, Integer> NUMBERS =
+            new ConcurrentHashMap<>();
+    /** The interned file names, by number. **/
+    private static volatile String[] names = new String[256];
+    /** The number of interned names. **/
+    private static int interned;
+
+    /** The number, plus one, of the file in each slot, or 0 if empty. **/
+    private transient int[] keys;
+    /** The blob IDs, LENGTH bytes per slot. **/
+    private transient byte[] ids;
+    /** The bytes in a blob ID, or 0 until the first is put. **/
+    private transient int length;
+    /** The number of entries. **/
+    private transient int size;
+
+    /** An empty map. **/
+    PathMap() {
+        this(8);
+    }
+
+    /** An empty map with room for EXPECTED entries.
+     * @param expected the number of entries expected **/
+    PathMap(int expected) {
+        keys = new int[Integer.highestOneBit(
+                Math.max(4, SPARE * expected - 1)) << 1];
+    }
+
+    /** A map holding the entries of MAP.
+     * @param map file names and their blob IDs **/
+    PathMap(Map<String, String> map) {
+        this(map.size());
+        putAll(map);
+    }
+
+    /** Returns the number of the file name NAME, interning it if ADD.
+     * Returns -1 if it is not interned and not ADD.
+     * @param name a file name
+     * @param add whether to intern it **/
+    private static int number(String name, boolean add) {
+        Integer n = NUMBERS.get(name);
+        if (n != null || !add) {
+            return n == null ? -1 : n;
+        }
+        synchronized (NUMBERS) {
+            n = NUMBERS.get(name);
+            if (n == null) {
+                String[] table = names;
+                if (interned == table.length) {
+                    table = Arrays.copyOf(table, 2 * table.length);
+                }
+                n = interned;
+                table[interned] = name;
+                interned += 1;
+                names = table;
+                NUMBERS.put(name, n);
+            }
+            return n;
+        }
+    }
+
+    /** Returns the interned copy of the file name NAME, interning it if
+     * it is not.
+     * @param name a file name **/
+    static String intern(String name) {
+        int n = number(name, true);
+        return names[n];
+    }
+
+    /** Returns the slot holding file number N, or the empty slot where it
+     * would go.
+     * @param n a file number **/
+    private int slot(int n) {
+        int mask = keys.length - 1;
+        int i = n * 0x9e3779b9
+                >>> (Integer.numberOfLeadingZeros(keys.length) + 1);
+        while (keys[i] != 0 && keys[i] != n + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Returns the slot holding KEY, or -1 if it has none.
+     * @param key a file name **/
+    private int find(Object key) {
+        if (!(key instanceof String) || size == 0) {
+            return -1;
+        }
+        int n = number((String) key, false);
+        if (n < 0) {
+            return -1;
+        }
+        int i = slot(n);
+        return keys[i] == 0 ? -1 : i;
+    }
+
+    /** Returns the blob ID of FILENAME, or null if it has none.
+     * @param fileName a file name **/
+    ObjectId getId(String fileName) {
+        int i = find(fileName);
+        return i < 0 ? null : ObjectId.fromRaw(ids, i * length, length);
+    }
+
+    /** Maps FILENAME to the blob ID whose LEN bytes start at OFFSET in RAW.
+     * @param fileName a file name
+     * @param raw bytes holding the ID
+     * @param offset where it starts
+     * @param len its length **/
+    void putRaw(String fileName, byte[] raw, int offset, int len) {
+        if (length == 0) {
+            length = len;
+            ids = new byte[keys.length * length];
+        } else if (len != length) {
+            throw new IllegalArgumentException("mixed object ID lengths");
+        }
+        int n = number(fileName, true);
+        int i = slot(n);
+        if (keys[i] == 0) {
+            if (SPARE * (size + 1) > keys.length) {
+                grow();
+                i = slot(n);
+            }
+            keys[i] = n + 1;
+            size += 1;
+        }
+        System.arraycopy(raw, offset, ids, i * length, length);
+    }
+
+    /** Maps FILENAME to the blob ID ID.
+     * @param fileName a file name
+     * @param id a blob ID **/
+    void putId(String fileName, ObjectId id) {
+        byte[] raw = new byte[id.length()];
+        id.copyTo(raw, 0);
+        putRaw(fileName, raw, 0, raw.length);
+    }
+
+    /** Doubles the table. **/
+    private void grow() {
+        int[] oldKeys = keys;
+        byte[] oldIds = ids;
+        keys = new int[2 * oldKeys.length];
+        ids = new byte[keys.length * length];
+        for (int j = 0; j < oldKeys.length; j += 1) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j] - 1);
+                keys[i] = oldKeys[j];
+                System.arraycopy(oldIds, j * length, ids, i * length,
+                        length);
+            }
+        }
+    }
+
+    /** Returns the hex blob ID in slot I.
+     * @param i a full slot **/
+    private String hex(int i) {
+        return Utils.toHex(ids, i * length, length);
+    }
+
+    /** Returns the file name in slot I.
+     * @param i a full slot **/
+    private String name(int i) {
+        return names[keys[i] - 1];
+    }
+
+    /** Returns the bytes of heap the map holds, roughly. **/
+    long weight() {
+        return 48 + 4L * keys.length + (ids == null ? 0 : ids.length);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        int i = find(key);
+        return i < 0 ? null : hex(i);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        String old = get(key);
+        byte[] raw = Utils.fromHex(value);
+        putRaw(key, raw, 0, raw.length);
+        return old;
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> map) {
+        if (!(map instanceof PathMap)) {
+            super.putAll(map);
+            return;
+        }
+        PathMap other = (PathMap) map;
+        for (int i = 0; i < other.keys.length; i += 1) {
+            if (other.keys[i] != 0) {
+                putRaw(other.name(i), other.ids, i * other.length,
+                        other.length);
+            }
+        }
+    }
+
+    @Override
+    public String remove(Object key) {
+        int i = find(key);
+        if (i < 0) {
+            return null;
+        }
+        String old = hex(i);
+        int mask = keys.length - 1;
+        keys[i] = 0;
+        size -= 1;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int n = keys[j] - 1;
+            keys[j] = 0;
+            int k = slot(n);
+            keys[k] = n + 1;
+            System.arraycopy(ids, j * length, ids, k * length, length);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Slots<>() {
+                    @Override
+                    String at(int i) {
+                        return name(i);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Collection<String> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Slots<>() {
+                    @Override
+                    String at(int i) {
+                        return hex(i);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Slots<>() {
+                    @Override
+                    Map.Entry<String, String> at(int i) {
+                        return new SimpleImmutableEntry<>(name(i), hex(i));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** An iterator over the full slots, in slot order, of something
+     * about each.
+     * @param <T> what is given for each slot **/
+    private abstract class Slots<T> implements Iterator<T> {
+        /** The next full slot, or the table's length if none is left. **/
+        private int next = advance(0);
+
+        /** Returns what is given for the full slot I.
+         * @param i a full slot **/
+        abstract T at(int i);
+
+        /** Returns the first full slot at or after I, or the table's
+         * length.
+         * @param i a slot **/
+        private int advance(int i) {
+            while (i < keys.length && keys[i] == 0) {
+                i += 1;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = at(next);
+            next = advance(next + 1);
+            return result;
+        }
+    }
+
+    /** Writes the map as its size followed by each file name and raw
+     * blob ID, since file numbers differ from process to process.
+     * @param out the stream written to **/
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(length);
+        for (int i = 0; i < keys.length; i += 1) {
+            if (keys[i] != 0) {
+                out.writeUTF(name(i));
+                out.write(ids, i * length, length);
+            }
+        }
+    }
+
+    /** Reads a map written by writeObject.
+     * @param in the stream read from **/
+    private void readObject(ObjectInputStream in) throws IOException {
+        int count = in.readInt();
+        int len = in.readInt();
+        keys = new int[Integer.highestOneBit(
+                Math.max(4, SPARE * count - 1)) << 1];
+        byte[] raw = new byte[len];
+        for (int k = 0; k < count; k += 1) {
+            String name = in.readUTF();
+            in.readFully(raw);
+            putRaw(name, raw, 0, len);
+        }
+    }
+}
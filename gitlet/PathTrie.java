@@ -0,0 +1,785 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** An immutable map from file names to blob IDs, as commits and the
+ * tracked files hold them, in a hash array mapped trie. Each node holds
+ * up to 32 entries or subtries, picked by five bits of a name's hash, so
+ * a tree made from another by a few changes copies only the nodes on the
+ * paths to them and shares the rest. Two trees made one from the
+ * other are compared by diff in time proportional to their differences,
+ * since shared nodes are skipped by reference. A Builder makes many
+ * changes at once, changing in place the nodes it has already copied.
+ * The trie reads as any other Map of hex IDs; getId gives the ID itself.
+ * @author corey hu **/
+final class PathTrie extends AbstractMap<String, String>
+    implements Serializable {
+
+    /** The empty tree. **/
+    static final PathTrie EMPTY = new PathTrie(null, 0);
+
+    /** Bits of the hash used at each level. **/
+    private static final int BITS = 5;
+    /** The largest shift at which a node still branches. **/
+    private static final int MAX_SHIFT = 30;
+
+    /** The root node, or null if the tree is empty. **/
+    private final transient Node root;
+    /** The number of files. **/
+    private final transient int size;
+
+    /** A tree of the SIZE files under ROOT.
+     * @param root the root node, or null
+     * @param size the number of files **/
+    private PathTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /** Returns MAP as a tree, which is MAP itself if it is one.
+     * @param map file names and their blob IDs **/
+    static PathTrie of(Map<String, String> map) {
+        if (map instanceof PathTrie) {
+            return (PathTrie) map;
+        }
+        Builder b = EMPTY.edit();
+        b.putAll(map);
+        return b.build();
+    }
+
+    /** Returns the hash of the file name NAME.
+     * @param name a file name **/
+    private static int hash(String name) {
+        int h = name.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the blob ID of FILENAME, or null if it has none.
+     * @param fileName a file name **/
+    ObjectId getId(String fileName) {
+        return root == null ? null : root.find(0, hash(fileName), fileName);
+    }
+
+    /** Returns this tree with FILENAME mapped to the blob ID.
+     * @param fileName a file name
+     * @param id a blob ID **/
+    PathTrie with(String fileName, ObjectId id) {
+        Builder b = edit();
+        b.put(fileName, id);
+        return b.build();
+    }
+
+    /** Returns this tree without FILENAME.
+     * @param fileName a file name **/
+    PathTrie without(String fileName) {
+        Builder b = edit();
+        b.remove(fileName);
+        return b.build();
+    }
+
+    /** Returns a builder of trees starting from this one. **/
+    Builder edit() {
+        return new Builder(root, size);
+    }
+
+    /** Tells CHANGES of each file that differs between this tree and
+     * AFTER, in no particular order, without looking into the nodes they
+     * share.
+     * @param after the tree compared with
+     * @param changes told of each difference **/
+    void diff(PathTrie after, Changes changes) {
+        diff(root, after.root, changes);
+    }
+
+    /** Returns the bytes of heap the tree holds, roughly, counting nodes
+     * it shares with other trees. **/
+    long weight() {
+        return 32 + 88L * size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && getId((String) key) != null;
+    }
+
+    @Override
+    public String get(Object key) {
+        ObjectId id = key instanceof String ? getId((String) key) : null;
+        return id == null ? null : id.hex();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PathTrie)) {
+            return super.equals(o);
+        }
+        PathTrie other = (PathTrie) o;
+        if (other.size != size) {
+            return false;
+        }
+        boolean[] differs = new boolean[1];
+        diff(other, (name, before, after) -> differs[0] = true);
+        return !differs[0];
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Entries(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Replaces the tree with its entries when it is serialized. **/
+    private Object writeReplace() {
+        return new Serial(new PathMap(this));
+    }
+
+    /** Something told of the differences between two trees. **/
+    interface Changes {
+        /** Tells of the file NAME, whose blob ID changed from BEFORE to
+         * AFTER, either of which is null if it was added or removed.
+         * @param name the file's name
+         * @param before its ID in the first tree, or null
+         * @param after its ID in the second tree, or null **/
+        void change(String name, ObjectId before, ObjectId after);
+    }
+
+    /** Makes trees by changes to one, copying each node it changes once
+     * and changing its copies in place after that. **/
+    static final class Builder {
+        /** Marks the nodes this builder may change in place. **/
+        private Object edit = new Object();
+        /** The root of the tree being built. **/
+        private Node root;
+        /** The number of files in it. **/
+        private int size;
+
+        /** A builder starting from the SIZE files under ROOT.
+         * @param root the root node, or null
+         * @param size the number of files **/
+        private Builder(Node root, int size) {
+            this.root = root;
+            this.size = size;
+        }
+
+        /** Maps FILENAME to the blob ID.
+         * @param fileName a file name
+         * @param id a blob ID **/
+        void put(String fileName, ObjectId id) {
+            int h = hash(fileName);
+            if (root == null) {
+                root = Branch.single(edit, 0, h, fileName, id);
+                size += 1;
+                return;
+            }
+            boolean[] added = new boolean[1];
+            root = root.put(edit, 0, h, fileName, id, added);
+            size += added[0] ? 1 : 0;
+        }
+
+        /** Maps FILENAME to the blob ID whose hex form is SHA.
+         * @param fileName a file name
+         * @param sha a hex blob ID **/
+        void put(String fileName, String sha) {
+            put(PathMap.intern(fileName), ObjectId.fromHex(sha));
+        }
+
+        /** Adds every entry of MAP.
+         * @param map file names and their hex blob IDs **/
+        void putAll(Map<String, String> map) {
+            if (map instanceof PathTrie && root == null) {
+                root = ((PathTrie) map).root;
+                size = map.size();
+                return;
+            }
+            for (Map.Entry<String, String> e : map.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+        }
+
+        /** Removes FILENAME, if present.
+         * @param fileName a file name **/
+        void remove(String fileName) {
+            if (root == null) {
+                return;
+            }
+            boolean[] removed = new boolean[1];
+            root = root.remove(edit, 0, hash(fileName), fileName, removed);
+            size -= removed[0] ? 1 : 0;
+        }
+
+        /** Returns whether the tree being built holds FILENAME.
+         * @param fileName a file name **/
+        boolean containsKey(String fileName) {
+            return root != null
+                    && root.find(0, hash(fileName), fileName) != null;
+        }
+
+        /** Returns the tree built so far. Later changes to the builder do
+         * not change it. **/
+        PathTrie build() {
+            edit = new Object();
+            return size == 0 ? EMPTY : new PathTrie(root, size);
+        }
+    }
+
+    /** Tells CHANGES of each file that differs between the subtries A and
+     * B, either of which may be null, skipping them if they are the same.
+     * @param a a subtrie of the first tree, or null
+     * @param b the subtrie at the same place in the second, or null
+     * @param changes told of each difference **/
+    private static void diff(Node a, Node b, Changes changes) {
+        if (a == b) {
+            return;
+        }
+        if (a instanceof Branch && b instanceof Branch) {
+            Branch x = (Branch) a;
+            Branch y = (Branch) b;
+            for (int bits = x.bitmap | y.bitmap; bits != 0;
+                 bits &= bits - 1) {
+                int bit = Integer.lowestOneBit(bits);
+                Object kx = x.keyAt(bit);
+                Object vx = x.valueAt(bit);
+                Object ky = y.keyAt(bit);
+                Object vy = y.valueAt(bit);
+                if (vx instanceof Node && vy instanceof Node) {
+                    diff((Node) vx, (Node) vy, changes);
+                } else if (kx != null && kx.equals(ky)) {
+                    if (!vx.equals(vy)) {
+                        changes.change((String) kx, (ObjectId) vx,
+                                (ObjectId) vy);
+                    }
+                } else {
+                    diffEntries(kx, vx, ky, vy, changes);
+                }
+            }
+            return;
+        }
+        diffEntries(null, a, null, b, changes);
+    }
+
+    /** Tells CHANGES of each file that differs between the entries in the
+     * slots KX, VX and KY, VY, each a file and its ID, no file and a
+     * subtrie, or nothing at all, by listing them.
+     * @param kx the first slot's file, or null
+     * @param vx its ID or subtrie, or null
+     * @param ky the second slot's file, or null
+     * @param vy its ID or subtrie, or null
+     * @param changes told of each difference **/
+    private static void diffEntries(Object kx, Object vx, Object ky,
+                                    Object vy, Changes changes) {
+        Map<String, ObjectId> before = new HashMap<>();
+        for (Iterator<Object[]> it = new Pairs(kx, vx); it.hasNext();) {
+            Object[] pair = it.next();
+            before.put((String) pair[0], (ObjectId) pair[1]);
+        }
+        for (Iterator<Object[]> it = new Pairs(ky, vy); it.hasNext();) {
+            Object[] pair = it.next();
+            ObjectId was = before.remove((String) pair[0]);
+            if (!pair[1].equals(was)) {
+                changes.change((String) pair[0], was, (ObjectId) pair[1]);
+            }
+        }
+        for (Map.Entry<String, ObjectId> e : before.entrySet()) {
+            changes.change(e.getKey(), e.getValue(), null);
+        }
+    }
+
+    /** A node of the trie. **/
+    private abstract static class Node {
+        /** Marks the builder that may change this node in place. **/
+        protected final Object edit;
+
+        /** A node that the builder marked EDIT may change.
+         * @param edit a builder's mark **/
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        /** Returns the ID of NAME, whose hash is HASH, below this node at
+         * SHIFT, or null.
+         * @param shift the bits of the hash used above this node
+         * @param hash the name's hash
+         * @param name a file name **/
+        abstract ObjectId find(int shift, int hash, String name);
+
+        /** Returns this node with NAME, whose hash is HASH, mapped to ID,
+         * changing nodes marked EDIT in place and setting ADDED[0] if
+         * NAME is new.
+         * @param edit the builder's mark
+         * @param shift the bits of the hash used above this node
+         * @param hash the name's hash
+         * @param name a file name
+         * @param id its blob ID
+         * @param added set if the name is new **/
+        abstract Node put(Object edit, int shift, int hash, String name,
+                          ObjectId id, boolean[] added);
+
+        /** Returns this node without NAME, whose hash is HASH, or null if
+         * nothing is left, changing nodes marked EDIT in place and setting
+         * REMOVED[0] if NAME was present.
+         * @param edit the builder's mark
+         * @param shift the bits of the hash used above this node
+         * @param hash the name's hash
+         * @param name a file name
+         * @param removed set if the name was present **/
+        abstract Node remove(Object edit, int shift, int hash, String name,
+                             boolean[] removed);
+
+        /** Returns the slots of the node: file and ID, or null and a
+         * subtrie, for each entry. **/
+        abstract Object[] slots();
+
+        /** Returns whether the node holds a single file and nothing
+         * else. **/
+        boolean isSingle() {
+            Object[] slots = slots();
+            return slots.length == 2 && slots[0] != null;
+        }
+    }
+
+    /** A node holding up to 32 files and subtries, one for each value of
+     * five bits of the hash, with a bitmap of those present. **/
+    private static final class Branch extends Node {
+        /** The values of the hash's bits present. **/
+        private int bitmap;
+        /** A file and its ID, or null and a subtrie, for each bit set in
+         * BITMAP, in order. **/
+        private Object[] slots;
+
+        /** A node marked EDIT holding SLOTS for the bits in BITMAP.
+         * @param edit a builder's mark
+         * @param bitmap the bits present
+         * @param slots the entries **/
+        Branch(Object edit, int bitmap, Object[] slots) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /** Returns a node at SHIFT holding only NAME, of hash HASH, and ID.
+         * @param edit a builder's mark
+         * @param shift the bits of the hash used above the node
+         * @param hash the name's hash
+         * @param name a file name
+         * @param id its blob ID **/
+        static Branch single(Object edit, int shift, int hash, String name,
+                             ObjectId id) {
+            return new Branch(edit, bitFor(shift, hash),
+                    new Object[] {name, id});
+        }
+
+        /** Returns the bit for HASH at SHIFT.
+         * @param shift the bits of the hash used above the node
+         * @param hash a name's hash **/
+        static int bitFor(int shift, int hash) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        /** Returns the index in the slots of the entry for BIT.
+         * @param bit a single bit **/
+        private int index(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /** Returns the file in the slot for BIT, or null.
+         * @param bit a single bit **/
+        Object keyAt(int bit) {
+            return (bitmap & bit) == 0 ? null : slots[index(bit)];
+        }
+
+        /** Returns the ID or subtrie in the slot for BIT, or null.
+         * @param bit a single bit **/
+        Object valueAt(int bit) {
+            return (bitmap & bit) == 0 ? null : slots[index(bit) + 1];
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+
+        @Override
+        ObjectId find(int shift, int hash, String name) {
+            int bit = bitFor(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int i = index(bit);
+            Object key = slots[i];
+            if (key == null) {
+                return ((Node) slots[i + 1]).find(shift + BITS, hash, name);
+            }
+            return name.equals(key) ? (ObjectId) slots[i + 1] : null;
+        }
+
+        /** Returns this node, or a copy marked EDIT, with the slots
+         * SLOTS and BITMAP.
+         * @param edit the builder's mark
+         * @param newBitmap the bits present
+         * @param newSlots the entries **/
+        private Branch with(Object edit, int newBitmap, Object[] newSlots) {
+            if (this.edit == edit) {
+                bitmap = newBitmap;
+                slots = newSlots;
+                return this;
+            }
+            return new Branch(edit, newBitmap, newSlots);
+        }
+
+        /** Returns this node, or a copy marked EDIT, with slot I set to
+         * VALUE.
+         * @param edit the builder's mark
+         * @param i a slot
+         * @param value its new contents **/
+        private Branch set(Object edit, int i, Object value) {
+            if (this.edit == edit) {
+                slots[i] = value;
+                return this;
+            }
+            Object[] copy = slots.clone();
+            copy[i] = value;
+            return new Branch(edit, bitmap, copy);
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, String name, ObjectId id,
+                 boolean[] added) {
+            int bit = bitFor(shift, hash);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] copy = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, copy, 0, i);
+                copy[i] = name;
+                copy[i + 1] = id;
+                System.arraycopy(slots, i, copy, i + 2, slots.length - i);
+                return with(edit, bitmap | bit, copy);
+            }
+            Object key = slots[i];
+            Object value = slots[i + 1];
+            if (key == null) {
+                Node child = (Node) value;
+                Node changed = child.put(edit, shift + BITS, hash, name, id,
+                        added);
+                return changed == child ? this : set(edit, i + 1, changed);
+            } else if (name.equals(key)) {
+                return id.equals(value) ? this : set(edit, i + 1, id);
+            }
+            added[0] = true;
+            Node sub = pair(edit, shift + BITS, (String) key,
+                    (ObjectId) value, name, hash, id);
+            Branch result = set(edit, i, null);
+            result.slots[i + 1] = sub;
+            return result;
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, String name,
+                    boolean[] removed) {
+            int bit = bitFor(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object key = slots[i];
+            if (key == null) {
+                Node child = (Node) slots[i + 1];
+                Node changed = child.remove(edit, shift + BITS, hash, name,
+                        removed);
+                if (changed == child) {
+                    return this;
+                } else if (changed == null) {
+                    return drop(edit, bit, i);
+                } else if (changed.isSingle()) {
+                    Branch result = set(edit, i, changed.slots()[0]);
+                    result.slots[i + 1] = changed.slots()[1];
+                    return result;
+                }
+                return set(edit, i + 1, changed);
+            } else if (!name.equals(key)) {
+                return this;
+            }
+            removed[0] = true;
+            return drop(edit, bit, i);
+        }
+
+        /** Returns this node without the entry for BIT, at slot I, or null
+         * if it was the only one.
+         * @param edit the builder's mark
+         * @param bit the entry's bit
+         * @param i its slot **/
+        private Branch drop(Object edit, int bit, int i) {
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, copy, 0, i);
+            System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+            return with(edit, bitmap & ~bit, copy);
+        }
+    }
+
+    /** A node holding files whose hashes are all HASH. **/
+    private static final class Collision extends Node {
+        /** The hash of every file. **/
+        private final int hash;
+        /** Each file and its ID. **/
+        private Object[] slots;
+
+        /** A node marked EDIT holding the files and IDs in SLOTS, all of
+         * hash HASH.
+         * @param edit a builder's mark
+         * @param hash their hash
+         * @param slots the entries **/
+        Collision(Object edit, int hash, Object[] slots) {
+            super(edit);
+            this.hash = hash;
+            this.slots = slots;
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+
+        /** Returns the slot of NAME, or -1.
+         * @param name a file name **/
+        private int indexOf(String name) {
+            for (int i = 0; i < slots.length; i += 2) {
+                if (name.equals(slots[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        ObjectId find(int shift, int h, String name) {
+            int i = h == hash ? indexOf(name) : -1;
+            return i < 0 ? null : (ObjectId) slots[i + 1];
+        }
+
+        @Override
+        Node put(Object edit, int shift, int h, String name, ObjectId id,
+                 boolean[] added) {
+            if (h != hash) {
+                Branch b = new Branch(edit, Branch.bitFor(shift, hash),
+                        new Object[] {null, this});
+                return b.put(edit, shift, h, name, id, added);
+            }
+            int i = indexOf(name);
+            Object[] copy;
+            if (i >= 0) {
+                if (id.equals(slots[i + 1])) {
+                    return this;
+                }
+                copy = slots.clone();
+            } else {
+                added[0] = true;
+                i = slots.length;
+                copy = new Object[slots.length + 2];
+                System.arraycopy(slots, 0, copy, 0, slots.length);
+                copy[i] = name;
+            }
+            copy[i + 1] = id;
+            if (this.edit == edit) {
+                slots = copy;
+                return this;
+            }
+            return new Collision(edit, hash, copy);
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int h, String name,
+                    boolean[] removed) {
+            int i = h == hash ? indexOf(name) : -1;
+            if (i < 0) {
+                return this;
+            }
+            removed[0] = true;
+            if (slots.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[slots.length - 2];
+            System.arraycopy(slots, 0, copy, 0, i);
+            System.arraycopy(slots, i + 2, copy, i, slots.length - i - 2);
+            if (this.edit == edit) {
+                slots = copy;
+                return this;
+            }
+            return new Collision(edit, hash, copy);
+        }
+    }
+
+    /** Returns a node at SHIFT holding the files K1, with ID V1, and K2,
+     * whose hash is H2, with ID V2.
+     * @param edit a builder's mark
+     * @param shift the bits of the hash used above the node
+     * @param k1 a file name
+     * @param v1 its ID
+     * @param k2 another file name
+     * @param h2 its hash
+     * @param v2 its ID **/
+    private static Node pair(Object edit, int shift, String k1, ObjectId v1,
+                             String k2, int h2, ObjectId v2) {
+        int h1 = hash(k1);
+        if (h1 == h2 || shift > MAX_SHIFT) {
+            return new Collision(edit, h1, new Object[] {k1, v1, k2, v2});
+        }
+        int b1 = Branch.bitFor(shift, h1);
+        int b2 = Branch.bitFor(shift, h2);
+        if (b1 == b2) {
+            return new Branch(edit, b1, new Object[] {null,
+                pair(edit, shift + BITS, k1, v1, k2, h2, v2)});
+        }
+        Object[] slots = Integer.compareUnsigned(b1, b2) < 0
+                ? new Object[] {k1, v1, k2, v2}
+                : new Object[] {k2, v2, k1, v1};
+        return new Branch(edit, b1 | b2, slots);
+    }
+
+    /** An iterator over each file and ID, as a two-element array, in a
+     * slot's entry or subtrie. **/
+    private static final class Pairs implements Iterator<Object[]> {
+        /** Slot arrays of the nodes being walked, innermost last. **/
+        private final Object[][] stack = new Object[MAX_SHIFT / BITS + 3][];
+        /** The next slot to look at in each of them. **/
+        private final int[] at = new int[stack.length];
+        /** The number of nodes being walked. **/
+        private int depth;
+        /** The next pair, or null if there is none. **/
+        private Object[] next;
+
+        /** An iterator over the files under ROOT, which may be null.
+         * @param root a node **/
+        Pairs(Node root) {
+            this(null, root);
+        }
+
+        /** An iterator over the file KEY with ID VALUE, or, if KEY is null,
+         * the files in the subtrie VALUE, which may also be null.
+         * @param key a file, or null
+         * @param value its ID, or a subtrie, or null **/
+        Pairs(Object key, Object value) {
+            if (key != null) {
+                next = new Object[] {key, value};
+            } else if (value != null) {
+                stack[0] = ((Node) value).slots();
+                depth = 1;
+                advance();
+            }
+        }
+
+        /** Finds the next pair. **/
+        private void advance() {
+            next = null;
+            while (depth > 0) {
+                Object[] slots = stack[depth - 1];
+                int i = at[depth - 1];
+                if (i == slots.length) {
+                    depth -= 1;
+                    continue;
+                }
+                at[depth - 1] = i + 2;
+                if (slots[i] != null) {
+                    next = new Object[] {slots[i], slots[i + 1]};
+                    return;
+                }
+                stack[depth] = ((Node) slots[i + 1]).slots();
+                at[depth] = 0;
+                depth += 1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Object[] next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Object[] result = next;
+            if (depth > 0) {
+                advance();
+            } else {
+                next = null;
+            }
+            return result;
+        }
+    }
+
+    /** An iterator over the entries of a tree, with hex IDs. **/
+    private static final class Entries
+        implements Iterator<Map.Entry<String, String>> {
+        /** The files and IDs. **/
+        private final Pairs pairs;
+
+        /** An iterator over the files under ROOT, which may be null.
+         * @param root a node **/
+        Entries(Node root) {
+            pairs = new Pairs(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pairs.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            Object[] pair = pairs.next();
+            return new SimpleImmutableEntry<>((String) pair[0],
+                    ((ObjectId) pair[1]).hex());
+        }
+    }
+
+    /** The serialized form of a tree: its entries. **/
+    private static final class Serial implements Serializable {
+        /** The tree's entries. **/
+        private final PathMap entries;
+
+        /** The serialized form of the tree holding ENTRIES.
+         * @param entries the tree's entries **/
+        Serial(PathMap entries) {
+            this.entries = entries;
+        }
+
+        /** Returns the tree this stands for. **/
+        private Object readResolve() {
+            Builder b = EMPTY.edit();
+            for (String name : entries.keySet()) {
+                b.put(name, entries.getId(name));
+            }
+            return b.build();
+        }
+    }
+}
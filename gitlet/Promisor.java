@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/** The remote a shallow or partial clone was made from. A partial clone
+ * records the remote's .gitlet directory in .gitlet/promisor and fetches
+ * blobs from it, in batches, the first time they are needed. A shallow
+ * clone lists the commits whose history was cut off in .gitlet/shallow;
+ * those commits are treated as having no parents.
+ * @author corey hu **/
+class Promisor {
+
+    /** The promisor remote, or null if this is not a partial clone. **/
+    private static File remote;
+    /** Commits whose parents were not cloned. **/
+    private static Set<String> grafts;
+
+    /** Returns the .gitlet directory missing blobs are fetched from, or
+     * null if the repository is not a partial clone. **/
+    static File remote() {
+        if (remote == null) {
+            File f = new File(Worktree.common(), "promisor");
+            if (!f.isFile()) {
+                return null;
+            }
+            remote = new File(Utils.readContentsAsString(f).trim());
+        }
+        return remote;
+    }
+
+    /** Makes the repository a partial clone of the .gitlet directory DIR.
+     * @param dir the remote's .gitlet directory **/
+    static void setRemote(File dir) {
+        Utils.writeContents(new File(Worktree.common(), "promisor"),
+                dir.getAbsolutePath() + "\n");
+        remote = dir;
+    }
+
+    /** Returns whether commit ID is a shallow graft, whose parents were
+     * not cloned.
+     * @param id a commit ID **/
+    static boolean isGraft(String id) {
+        return isShallow() && grafts.contains(id);
+    }
+
+    /** Returns whether the repository has shallow grafts. **/
+    static boolean isShallow() {
+        if (grafts == null) {
+            grafts = grafts(Worktree.common());
+        }
+        return !grafts.isEmpty();
+    }
+
+    /** Returns the shallow grafts of the repository whose .gitlet
+     * directory is DIR.
+     * @param dir a .gitlet directory **/
+    static Set<String> grafts(File dir) {
+        File f = new File(dir, "shallow");
+        Set<String> result = new HashSet<>();
+        if (f.isFile()) {
+            result.addAll(Arrays.asList(
+                    Utils.readContentsAsString(f).split("\n")));
+            result.remove("");
+        }
+        return result;
+    }
+
+    /** Records IDS as the shallow grafts of the repository.
+     * @param ids commits whose parents were not cloned **/
+    static void setGrafts(Collection<String> ids) {
+        grafts = new HashSet<>(ids);
+        if (!ids.isEmpty()) {
+            Utils.writeContents(new File(Worktree.common(), "shallow"),
+                    String.join("\n", ids) + "\n");
+        }
+    }
+
+    /** Fetches every blob in SHAS that is not stored locally from the
+     * promisor remote in one batch. Does nothing outside a partial clone.
+     * @param shas blobs about to be read **/
+    static void prefetch(Collection<String> shas) {
+        File from = remote();
+        if (from == null) {
+            return;
+        }
+        for (String sha : shas) {
+            File local = new File(Worktree.common(), "FILES/" + sha);
+            File stored = new File(from, "FILES/" + sha);
+            if (!local.isFile() && stored.isFile()) {
+                Remote.copy(stored, local);
+            }
+        }
+    }
+}
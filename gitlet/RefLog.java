@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** An append-only log of ref movements. Each record is framed by its
+ * length on both sides,
+ * <pre>
+ *   int length, byte[length] payload, int length
+ * </pre>
+ * so the log can be read forwards from the start or backwards from the
+ * end without scanning the whole file. A payload holds the old and new
+ * commit IDs (all zeros when absent), the time in epoch milliseconds and
+ * a message, as an int length and its UTF-8 bytes. The commitHistory
+ * file is a log of this form with one record per commit created, and
+ * every branch keeps its own reflog under .gitlet/logs.
+ * @author corey hu **/
+class RefLog {
+
+    /** A single entry of a log. **/
+    static class Entry {
+        /** The ID the ref pointed at before, or null. **/
+        private final String oldId;
+        /** The ID the ref points at after. **/
+        private final String newId;
+        /** When the ref moved, in epoch milliseconds. **/
+        private final long time;
+        /** Why the ref moved. **/
+        private final String msg;
+
+        /** An entry moving a ref from OLDID to NEWID at TIME because of MSG.
+         * @param oldId the previous ID, or null
+         * @param newId the new ID
+         * @param time the epoch time in milliseconds
+         * @param msg the reason for the move **/
+        Entry(String oldId, String newId, long time, String msg) {
+            this.oldId = oldId;
+            this.newId = newId;
+            this.time = time;
+            this.msg = msg;
+        }
+
+        /** Returns the ID the ref pointed at before, or null. **/
+        String getOldId() {
+            return oldId;
+        }
+
+        /** Returns the ID the ref points at after. **/
+        String getNewId() {
+            return newId;
+        }
+
+        /** Returns when the ref moved, in epoch milliseconds. **/
+        long getTime() {
+            return time;
+        }
+
+        /** Returns why the ref moved. **/
+        String getMsg() {
+            return msg;
+        }
+    }
+
+    /** Returns the reflog file of ref NAME in the .gitlet directory DIR.
+     * @param dir the .gitlet directory
+     * @param name the ref name **/
+    static File logOf(File dir, String name) {
+        return new File(new File(dir, "logs"), name);
+    }
+
+    /** Appends an entry moving a ref from OLDID to NEWID to LOG, holding
+     * the lock on LOG that retain takes while it rewrites it.
+     * @param log the log file, created if needed
+     * @param oldId the previous ID, or null
+     * @param newId the new ID
+     * @param msg the reason for the move **/
+    static void append(File log, String oldId, String newId, String msg) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(payload);
+            out.write(oldId == null ? new byte[newId.length() / 2]
+                    : Utils.fromHex(oldId));
+            out.write(Utils.fromHex(newId));
+            out.writeLong(System.currentTimeMillis());
+            Utils.writeString(out, msg);
+
+            DataOutputStream rec = new DataOutputStream(record);
+            rec.writeInt(payload.size());
+            payload.writeTo(rec);
+            rec.writeInt(payload.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        log.getParentFile().mkdirs();
+        File lock = RefTable.lock(log);
+        try (OutputStream str = Files.newOutputStream(log.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            record.writeTo(str);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Atomically rewrites LOG keeping only the entries KEEP accepts. LOG
+     * is read and replaced under its lock, so no entry appended meanwhile
+     * is lost.
+     * @param log the log file
+     * @param keep accepts the entries to keep **/
+    static void retain(File log, Predicate<Entry> keep) {
+        if (!log.isFile()) {
+            return;
+        }
+        File lock = RefTable.lock(log);
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                        Files.newInputStream(log.toPath())))) {
+            DataOutputStream out = new DataOutputStream(kept);
+            while (in.available() > 0) {
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                in.readInt();
+                if (keep.test(decode(payload))) {
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                    out.writeInt(payload.length);
+                }
+            }
+        } catch (IOException excp) {
+            lock.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (RuntimeException excp) {
+            lock.delete();
+            throw excp;
+        }
+        RefTable.commit(lock, log, kept.toByteArray());
+    }
+
+    /** Returns every entry of LOG, oldest first. An absent log is empty.
+     * @param log the log file **/
+    static List<Entry> read(File log) {
+        List<Entry> result = new ArrayList<>();
+        if (!log.isFile()) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                        Files.newInputStream(log.toPath())))) {
+            while (in.available() > 0) {
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                in.readInt();
+                result.add(decode(payload));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Returns at most the last N entries of LOG, oldest first, reading
+     * only those records from the end of the file.
+     * @param log the log file
+     * @param n the number of entries wanted **/
+    static List<Entry> tail(File log, int n) {
+        List<Entry> result = new ArrayList<>();
+        if (!log.isFile()) {
+            return result;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(log, "r")) {
+            long end = in.length();
+            while (end > 0 && result.size() < n) {
+                in.seek(end - 4);
+                int len = in.readInt();
+                byte[] payload = new byte[len];
+                in.seek(end - 4 - len);
+                in.readFully(payload);
+                result.add(decode(payload));
+                end -= len + 8;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Returns the entry encoded in PAYLOAD.
+     * @param payload the bytes of one record **/
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(payload));
+        byte[] id = new byte[HashAlgorithm.current().length()];
+        in.readFully(id);
+        String oldId = Arrays.equals(id, new byte[id.length]) ? null
+                : Utils.toHex(id);
+        in.readFully(id);
+        String newId = Utils.toHex(id);
+        long time = in.readLong();
+        String msg = Utils.readString(in);
+        return new Entry(oldId, newId, time, msg);
+    }
+}
@@ -0,0 +1,374 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A packed, sorted table of refs. Every branch is a name pointing to the
+ * raw bytes of a commit ID, kept in one file sorted by name so a ref can
+ * be resolved with a binary search over a memory-mapped buffer. HEAD is a
+ * symbolic ref naming the current branch.
+ *
+ * <p>The table file is laid out as
+ * <pre>
+ *   int magic, int idLength, int count, int[count] offsets,
+ *   count * (short nameLength, byte[nameLength] name, byte[idLength] id)
+ * </pre>
+ * where each offset points at a record and records are sorted by name.
+ * An update first creates a lock file, waiting a while for any other
+ * writer to finish, then re-reads the table, writes the changed table to
+ * the lock file and atomically renames it over the table, so concurrent
+ * updates never lose one another.
+ * @author corey hu **/
+class RefTable {
+
+    /** Magic number at the start of every ref table ("GLRF"). **/
+    private static final int MAGIC = 0x474c5246;
+    /** Size of the fixed header in bytes. **/
+    private static final int HEADER = 12;
+    /** Prefix of the contents of a symbolic ref. **/
+    private static final String SYMREF = "ref: ";
+    /** Milliseconds to wait for another writer's lock. **/
+    private static final long LOCK_WAIT = 10000;
+    /** Milliseconds between attempts to take a lock. **/
+    private static final long LOCK_RETRY = 5;
+    /** The .gitlet directory this table belongs to. **/
+    private final File dir;
+    /** Number of raw bytes in a commit ID. **/
+    private final int idBytes;
+    /** The mapped table, or null if the table is empty. **/
+    private ByteBuffer buf;
+    /** Number of refs in the table. **/
+    private int count;
+
+    /** A ref table read from DIR, whose contents are in BUF.
+     * @param dir the .gitlet directory
+     * @param buf the table contents, or null if empty **/
+    private RefTable(File dir, ByteBuffer buf) {
+        this.dir = dir;
+        this.buf = buf;
+        this.count = buf == null ? 0 : buf.getInt(8);
+        this.idBytes = buf == null ? HashAlgorithm.of(dir).length()
+                : buf.getInt(4);
+    }
+
+    /** Returns the ref table of the repository in the working directory. **/
+    static RefTable read() {
+        return read(Worktree.common());
+    }
+
+    /** Returns the ref table of the repository whose .gitlet is DIR.
+     * @param dir the .gitlet directory holding the table **/
+    static RefTable read(File dir) {
+        return new RefTable(dir, load(dir));
+    }
+
+    /** Returns the contents of the table in DIR, or null if it is empty.
+     * @param dir the .gitlet directory holding the table **/
+    private static ByteBuffer load(File dir) {
+        File f = new File(dir, "refs");
+        if (!f.isFile() || f.length() == 0) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY,
+                    0, ch.size());
+            if (b.getInt(0) != MAGIC
+                    || b.getInt(4) != HashAlgorithm.of(dir).length()) {
+                throw Utils.error("Corrupt ref table %s.", f);
+            }
+            return b;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes BUF the contents of this table.
+     * @param b the table contents, or null if empty **/
+    private void reset(ByteBuffer b) {
+        buf = b;
+        count = b == null ? 0 : b.getInt(8);
+    }
+
+    /** Returns the number of refs in the table. **/
+    int size() {
+        return count;
+    }
+
+    /** Returns the name of the Kth ref in sorted order.
+     * @param k index of the ref **/
+    private String nameAt(int k) {
+        int off = buf.getInt(HEADER + 4 * k);
+        byte[] name = new byte[buf.getShort(off)];
+        buf.get(off + 2, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the hex ID stored in the Kth ref.
+     * @param k index of the ref **/
+    private String idAt(int k) {
+        int off = buf.getInt(HEADER + 4 * k);
+        byte[] id = new byte[idBytes];
+        buf.get(off + 2 + buf.getShort(off), id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the index of NAME in the table, or -(insertion point) - 1
+     * if it is absent.
+     * @param name the ref to search for **/
+    private int search(String name) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = nameAt(mid).compareTo(name);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /** Returns whether the table holds a ref called NAME.
+     * @param name the ref name **/
+    boolean contains(String name) {
+        return search(name) >= 0;
+    }
+
+    /** Returns the commit ID NAME points at, or null if there is no
+     * such ref.
+     * @param name the ref name **/
+    String resolve(String name) {
+        int k = search(name);
+        return k < 0 ? null : idAt(k);
+    }
+
+    /** Returns the names of all refs in sorted order. **/
+    List<String> names() {
+        List<String> result = new ArrayList<>(count);
+        for (int k = 0; k < count; k += 1) {
+            result.add(nameAt(k));
+        }
+        return result;
+    }
+
+    /** Points ref NAME at commit ID, creating it if needed, atomically
+     * rewrites the table and records the move in the ref's reflog. The
+     * table is re-read under its lock, so refs other writers changed
+     * since this was read are kept.
+     * @param name the ref name
+     * @param id the hex commit ID
+     * @param msg the reason for the move **/
+    void update(String name, String id, String msg) {
+        File lock = lock(new File(dir, "refs"));
+        String old;
+        try {
+            reset(load(dir));
+            old = put(name, id, lock);
+        } catch (RuntimeException excp) {
+            lock.delete();
+            throw excp;
+        }
+        RefLog.append(RefLog.logOf(dir, name), old, id, msg);
+    }
+
+    /** Writes the table with NAME pointing at ID through the held LOCK,
+     * returning the ID NAME pointed at before, or null.
+     * @param name the ref name
+     * @param id the hex commit ID
+     * @param lock the table's lock file **/
+    private String put(String name, String id, File lock) {
+        int k = search(name);
+        String old = k < 0 ? null : idAt(k);
+        String[] names = new String[k < 0 ? count + 1 : count];
+        String[] ids = new String[names.length];
+        int at = k < 0 ? -k - 1 : k;
+        for (int i = 0, j = 0; i < names.length; i += 1) {
+            if (i == at) {
+                names[i] = name;
+                ids[i] = id;
+                j += k < 0 ? 0 : 1;
+            } else {
+                names[i] = nameAt(j);
+                ids[i] = idAt(j);
+                j += 1;
+            }
+        }
+        write(names, ids, lock);
+        return old;
+    }
+
+    /** Removes ref NAME and its reflog, if present, and atomically
+     * rewrites the table, re-reading it under its lock.
+     * @param name the ref name **/
+    void delete(String name) {
+        File lock = lock(new File(dir, "refs"));
+        try {
+            reset(load(dir));
+            if (!remove(name, lock)) {
+                lock.delete();
+                return;
+            }
+        } catch (RuntimeException excp) {
+            lock.delete();
+            throw excp;
+        }
+        RefLog.logOf(dir, name).delete();
+    }
+
+    /** Writes the table without NAME through the held LOCK, returning
+     * whether NAME was there; if not, nothing is written.
+     * @param name the ref name
+     * @param lock the table's lock file **/
+    private boolean remove(String name, File lock) {
+        int k = search(name);
+        if (k < 0) {
+            return false;
+        }
+        String[] names = new String[count - 1];
+        String[] ids = new String[count - 1];
+        for (int i = 0, j = 0; j < count; j += 1) {
+            if (j != k) {
+                names[i] = nameAt(j);
+                ids[i] = idAt(j);
+                i += 1;
+            }
+        }
+        write(names, ids, lock);
+        return true;
+    }
+
+    /** Writes the sorted refs NAMES, pointing at IDS, to the held LOCK,
+     * renames it over the table and makes it the contents of this.
+     * @param names sorted ref names
+     * @param ids the corresponding hex commit IDs
+     * @param lock the table's lock file **/
+    private void write(String[] names, String[] ids, File lock) {
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(records);
+            int[] offsets = new int[names.length];
+            int base = HEADER + 4 * names.length;
+            for (int k = 0; k < names.length; k += 1) {
+                offsets[k] = base + out.size();
+                byte[] name = names[k].getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(Utils.fromHex(ids[k]));
+            }
+            ByteBuffer table = ByteBuffer.allocate(base + out.size());
+            table.putInt(MAGIC).putInt(idBytes).putInt(names.length);
+            for (int off : offsets) {
+                table.putInt(off);
+            }
+            table.put(records.toByteArray());
+            commit(lock, new File(dir, "refs"), table.array());
+            reset(table);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the branch the HEAD of the working directory's repository
+     * refers to. **/
+    static String head() {
+        return head(new File(".gitlet"));
+    }
+
+    /** Returns the branch the HEAD in DIR refers to.
+     * @param dir the .gitlet directory **/
+    static String head(File dir) {
+        String ref = Utils.readContentsAsString(new File(dir, "HEAD"));
+        return ref.substring(SYMREF.length()).trim();
+    }
+
+    /** Points the HEAD of the working directory's repository at BRANCH.
+     * @param branch the branch name **/
+    static void setHead(String branch) {
+        setHead(new File(".gitlet"), branch);
+    }
+
+    /** Points the HEAD in DIR at BRANCH.
+     * @param dir the .gitlet directory
+     * @param branch the branch name **/
+    static void setHead(File dir, String branch) {
+        File head = new File(dir, "HEAD");
+        if (head.isFile() && branch.equals(head(dir))) {
+            return;
+        }
+        replace(head, (SYMREF + branch + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Atomically replaces TARGET with CONTENTS by writing TARGET.lock and
+     * renaming it, waiting for another process holding the lock to finish.
+     * @param target the file to replace
+     * @param contents its new contents **/
+    static void replace(File target, byte[] contents) {
+        commit(lock(target), target, contents);
+    }
+
+    /** Takes the lock on TARGET by creating TARGET.lock, waiting up to
+     * LOCK_WAIT milliseconds for another process holding it, and returns
+     * the lock file. Fails if the lock is still held after that.
+     * @param target the file to lock **/
+    static File lock(File target) {
+        File lock = new File(target.getPath() + ".lock");
+        long deadline = System.currentTimeMillis() + LOCK_WAIT;
+        while (true) {
+            try {
+                Files.createFile(lock.toPath());
+                return lock;
+            } catch (FileAlreadyExistsException excp) {
+                if (System.currentTimeMillis() > deadline) {
+                    break;
+                }
+            } catch (IOException excp) {
+                break;
+            }
+            try {
+                Thread.sleep(LOCK_RETRY);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw Utils.error("Unable to lock %s; another gitlet command may "
+                + "be running, or remove %s if none is.", target, lock);
+    }
+
+    /** Writes CONTENTS to LOCK, a lock held on TARGET, and renames it over
+     * TARGET, releasing the lock.
+     * @param lock the lock file
+     * @param target the file to replace
+     * @param contents its new contents **/
+    static void commit(File lock, File target, byte[] contents) {
+        Trace.RefUpdate span = new Trace.RefUpdate(target.getPath());
+        try {
+            Files.write(lock.toPath(), contents,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            Files.move(lock.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            lock.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        span.done(contents.length);
+    }
+}
@@ -0,0 +1,324 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Moves objects between two repositories on the local filesystem.
+ * A transfer negotiates which commits the receiving repository lacks by
+ * walking back from the wanted commits and stopping at anything the
+ * receiver already has (its ref tips, or any commit it stores), then
+ * copies only those commits and the blobs they add. When the sending
+ * repository has reachability bitmaps, both are found instead by taking
+ * what the receiver's tips reach away from what the wanted commits
+ * reach. Objects are never
+ * modified once written, so they are hard linked when both repositories
+ * share a filesystem and copied with FileChannel.transferTo otherwise.
+ * @author corey hu **/
+class Remote {
+
+    /** Returns the .gitlet directory PATH names, with '/' separators
+     * converted, or null if there is none.
+     * @param path the path of a remote .gitlet directory **/
+    static File find(String path) {
+        File dir = new File(path.replace("/", File.separator));
+        return dir.isDirectory() ? dir : null;
+    }
+
+    /** Returns the commit IDs of every ref in the repository DIR.
+     * @param dir a .gitlet directory **/
+    static Set<String> tips(File dir) {
+        RefTable refs = RefTable.read(dir);
+        Set<String> result = new HashSet<>();
+        for (String name : refs.names()) {
+            result.add(refs.resolve(name));
+        }
+        return result;
+    }
+
+    /** Returns the commits reachable in SRC from WANTS that DST lacks,
+     * parents before children. The walk stops at HAVES, the commits DST
+     * advertises, at any commit DST already stores, since a stored
+     * commit implies its whole history is stored as well, and at any
+     * commit SRC lacks, as the parents of its shallow grafts.
+     * @param src the .gitlet directory objects come from
+     * @param dst the .gitlet directory objects go to, or null if it
+     *            cannot be inspected
+     * @param wants the commits DST should end up with
+     * @param haves commits DST is known to have **/
+    static List<String> negotiate(File src, File dst,
+                                  Collection<String> wants,
+                                  Collection<String> haves) {
+        Set<String> missing = new LinkedHashSet<>();
+        Bitmaps index = Bitmaps.read(src);
+        if (index != null) {
+            List<String> stored = new ArrayList<>();
+            for (String id : haves) {
+                if (new File(src, "COMMITS/" + id).isFile()) {
+                    stored.add(id);
+                }
+            }
+            Bitmaps.Reach reach = index.reach(src, wants);
+            reach.remove(index.reach(src, stored));
+            for (String id : reach.commitIds()) {
+                if (dst == null || !new File(dst, "COMMITS/" + id).isFile()) {
+                    missing.add(id);
+                }
+            }
+            return topological(src, missing);
+        }
+        Deque<String> work = new ArrayDeque<>(wants);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (missing.contains(id) || haves.contains(id)
+                    || (dst != null
+                    && new File(dst, "COMMITS/" + id).isFile())) {
+                continue;
+            }
+            Commit c = Commit.lookup(src, id);
+            if (c != null) {
+                missing.add(id);
+                pushParents(c, work);
+            }
+        }
+        return topological(src, missing);
+    }
+
+    /** Returns the commits of SRC within DEPTH generations of TIPS, all
+     * of their history if DEPTH is not positive, parents first. Commits
+     * SRC lacks, as the parents of its shallow grafts, end the walk.
+     * @param src the .gitlet directory holding the commits
+     * @param tips the commits to start from
+     * @param depth how many generations to take, counting TIPS as one **/
+    static List<String> select(File src, Collection<String> tips,
+                               int depth) {
+        Set<String> chosen = new LinkedHashSet<>();
+        Deque<String> level = new ArrayDeque<>(tips);
+        for (int d = 0; !level.isEmpty() && (depth <= 0 || d < depth);
+             d += 1) {
+            Deque<String> next = new ArrayDeque<>();
+            for (String id : level) {
+                Commit c = Commit.lookup(src, id);
+                if (c != null && chosen.add(id)) {
+                    pushParents(c, next);
+                }
+            }
+            level = next;
+        }
+        return topological(src, chosen);
+    }
+
+    /** Returns COMMITS, all stored in SRC, ordered parents first.
+     * @param src the .gitlet directory holding the commits
+     * @param commits the commits to order **/
+    private static List<String> topological(File src, Set<String> commits) {
+        List<String> result = new ArrayList<>(commits.size());
+        Set<String> done = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String root : commits) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (done.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit c = Commit.lookup(src, id);
+                boolean ready = true;
+                for (String p : new String[] {c.getParent(),
+                                              c.getMergeParent()}) {
+                    if (p != null && commits.contains(p)
+                            && !done.contains(p)) {
+                        stack.push(p);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.add(id);
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the blobs of COMMITS in SRC that DST does not store. Only
+     * blobs that the parents of COMMITS outside COMMITS lack are checked
+     * with bitmaps, and when DST cannot be inspected, since DST holds
+     * those parents' files.
+     * @param src the .gitlet directory objects come from
+     * @param dst the .gitlet directory objects go to, or null if it
+     *            cannot be inspected
+     * @param commits commits being sent to DST **/
+    static Set<String> missingBlobs(File src, File dst,
+                                    Collection<String> commits) {
+        Set<String> result = new LinkedHashSet<>();
+        Set<String> sent = new HashSet<>(commits);
+        Deque<String> boundary = new ArrayDeque<>();
+        for (String id : commits) {
+            pushParents(Commit.lookup(src, id), boundary);
+        }
+        boundary.removeIf(sent::contains);
+        Bitmaps index = Bitmaps.read(src);
+        if (index != null) {
+            Bitmaps.Reach reach = index.reach(src, commits);
+            reach.remove(index.reach(src, boundary));
+            for (String sha : reach.blobIds()) {
+                if (dst == null || !new File(dst, "FILES/" + sha).isFile()) {
+                    result.add(sha);
+                }
+            }
+            return result;
+        }
+        Set<String> held = new HashSet<>();
+        if (dst == null) {
+            for (String id : boundary) {
+                held.addAll(Commit.lookup(src, id).getBlobs().values());
+            }
+        }
+        for (String id : commits) {
+            for (String sha : Commit.lookup(src, id).getBlobs().values()) {
+                if (!held.contains(sha) && (dst == null
+                        || !new File(dst, "FILES/" + sha).isFile())) {
+                    result.add(sha);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Copies COMMITS, which DST lacks, and unless DST is a partial clone
+     * the blobs they need, from SRC to DST, and records the commits in
+     * DST's commitHistory. Blobs go first and commits parents first, so
+     * DST never holds a commit whose history or files are missing.
+     * Returns the number of objects copied.
+     * @param src the .gitlet directory objects come from
+     * @param dst the .gitlet directory objects go to
+     * @param commits commits missing from DST, parents first
+     * @param withBlobs whether to copy blobs as well **/
+    static int copyObjects(File src, File dst, List<String> commits,
+                           boolean withBlobs) {
+        Set<String> blobs = withBlobs
+                ? missingBlobs(src, dst, commits) : new HashSet<>();
+        for (String sha : blobs) {
+            copy(new File(src, "FILES/" + sha),
+                    new File(dst, "FILES/" + sha));
+        }
+        for (String id : commits) {
+            copy(new File(src, "COMMITS/" + id),
+                    new File(dst, "COMMITS/" + id));
+        }
+        recordHistory(dst, commits);
+        return blobs.size() + commits.size();
+    }
+
+    /** Appends COMMITS, just stored in the .gitlet directory DIR, to its
+     * commitHistory log in order, so global-log and find list them as
+     * they do commits made there.
+     * @param dir the .gitlet directory that received the commits
+     * @param commits their IDs, parents first **/
+    static void recordHistory(File dir, List<String> commits) {
+        File log = new File(dir, "commitHistory");
+        for (String id : commits) {
+            Commit c = Commit.lookup(dir, id);
+            RefLog.append(log, c.getParent(), id, c.getMsg());
+        }
+    }
+
+    /** Copies the object FROM to TO by hard linking it or else streaming
+     * it into a temporary file that is renamed into place. Does nothing if
+     * TO already exists.
+     * @param from the object file to copy
+     * @param to where the object goes **/
+    static void copy(File from, File to) {
+        try {
+            Files.createLink(to.toPath(), from.toPath());
+            return;
+        } catch (FileAlreadyExistsException excp) {
+            return;
+        } catch (IOException | UnsupportedOperationException excp) {
+            transfer(from, to);
+        }
+    }
+
+    /** Streams FROM into a temporary file that is renamed over TO.
+     * @param from the object file to copy
+     * @param to where the object goes **/
+    private static void transfer(File from, File to) {
+        File tmp = new File(to.getPath() + ".tmp");
+        try (FileChannel in = FileChannel.open(from.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size;) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), to.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns whether ANCESTOR is DESCENDANT or one of its ancestors in
+     * the repository DIR, following merge parents as well.
+     * @param dir the .gitlet directory holding DESCENDANT
+     * @param ancestor the candidate ancestor's ID
+     * @param descendant the ID to search back from **/
+    static boolean isAncestor(File dir, String ancestor, String descendant) {
+        if (!new File(dir, "COMMITS/" + ancestor).isFile()) {
+            return false;
+        }
+        Set<String> seen = new HashSet<>();
+        Deque<String> work = new ArrayDeque<>();
+        work.push(descendant);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (!seen.add(id)) {
+                continue;
+            }
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            pushParents(Commit.lookup(dir, id), work);
+        }
+        return false;
+    }
+
+    /** Pushes the parents of C onto WORK, or nothing if C is null, a
+     * commit cut off from a shallow repository.
+     * @param c a commit, or null
+     * @param work the stack of commits still to visit **/
+    static void pushParents(Commit c, Deque<String> work) {
+        if (c == null) {
+            return;
+        }
+        if (c.getParent() != null) {
+            work.push(c.getParent());
+        }
+        if (c.getMergeParent() != null) {
+            work.push(c.getMergeParent());
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Detects files renamed or copied between two trees. A file's blob ID
+ * covers its name as well as its contents, so files are first matched
+ * by contents alone, and each added file whose contents some deleted
+ * file had exactly is a rename. The rest are matched by similarity: each
+ * file becomes a MinHash sketch, SKETCH minimums over the hashes of its
+ * lines, and the sketches are split into BANDS bands that are hashed
+ * into buckets. Only files sharing a bucket are compared, by the share
+ * of their sketches that agree, which estimates the Jaccard similarity
+ * of their lines; pairs of at least MIN_SCORE percent are taken best
+ * first. Files deleted are rename sources, each used once, and files
+ * modified are copy sources, used any number of times. So moving
+ * thousands of files costs a sketch apiece and a handful of
+ * comparisons, not a comparison of every pair.
+ * @author corey hu **/
+class Renames {
+
+    /** Minimums in a sketch. **/
+    private static final int SKETCH = 60;
+    /** Sketch values hashed together into one bucket key. **/
+    private static final int ROWS = 3;
+    /** Buckets each sketch is placed in. **/
+    private static final int BANDS = SKETCH / ROWS;
+    /** The lowest similarity, in percent, reported as a rename. **/
+    static final int MIN_SCORE = 50;
+    /** The seeds of the sketch's hash functions. **/
+    private static final long[] SEEDS = new long[SKETCH];
+
+    static {
+        long x = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < SKETCH; i += 1) {
+            x = mix(x + 0x9e3779b97f4a7c15L);
+            SEEDS[i] = x;
+        }
+    }
+
+    /** A file found renamed or copied. **/
+    static class Pair {
+        /** The file's name before. **/
+        private final String from;
+        /** The file's name after. **/
+        private final String to;
+        /** How similar the two are, in percent. **/
+        private final int score;
+        /** Whether the source is still present. **/
+        private final boolean copy;
+
+        /** A rename, or a copy if COPY, of FROM to TO with similarity
+         * SCORE.
+         * @param from the source
+         * @param to the destination
+         * @param score similarity in percent
+         * @param copy whether FROM is kept **/
+        Pair(String from, String to, int score, boolean copy) {
+            this.from = from;
+            this.to = to;
+            this.score = score;
+            this.copy = copy;
+        }
+
+        /** Returns the source's name. **/
+        String getFrom() {
+            return from;
+        }
+
+        /** Returns the destination's name. **/
+        String getTo() {
+            return to;
+        }
+
+        /** Returns the similarity in percent. **/
+        int getScore() {
+            return score;
+        }
+
+        /** Returns whether this is a copy rather than a rename. **/
+        boolean isCopy() {
+            return copy;
+        }
+    }
+
+    /** Returns the renames and copies from the files BEFORE to the files
+     * AFTER, both mapping names to blob IDs, ordered by destination.
+     * Files deleted from BEFORE are renamed, files in both but changed
+     * are copied, and the destinations are the files AFTER adds.
+     * @param before the old tree
+     * @param after the new tree **/
+    static List<Pair> detect(Map<String, String> before,
+                             Map<String, String> after) {
+        List<String> deleted = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        PathTrie.of(before).diff(PathTrie.of(after), (name, was, now) -> {
+            if (now == null) {
+                deleted.add(name);
+            } else if (was == null) {
+                added.add(name);
+            } else {
+                modified.add(name);
+            }
+        });
+        if (added.isEmpty() || (deleted.isEmpty() && modified.isEmpty())) {
+            return new ArrayList<>();
+        }
+        Map<String, String> sources = new HashMap<>();
+        Map<String, List<String>> byContents = new HashMap<>();
+        for (String name : deleted) {
+            String contents = contents(before.get(name));
+            sources.put(name, contents);
+            byContents.computeIfAbsent(contents, k -> new ArrayList<>())
+                    .add(name);
+        }
+        TreeMap<String, Pair> found = new TreeMap<>();
+        Map<String, String> targets = new HashMap<>();
+        for (String name : added) {
+            String contents = contents(after.get(name));
+            List<String> same = byContents.get(contents);
+            if (same != null && !same.isEmpty()) {
+                String from = same.remove(same.size() - 1);
+                sources.remove(from);
+                found.put(name, new Pair(from, name, 100, false));
+            } else {
+                targets.put(name, contents);
+            }
+        }
+        for (String name : modified) {
+            sources.put(name, contents(before.get(name)));
+        }
+        for (Pair p : similar(sources, targets, new HashSet<>(modified))) {
+            found.put(p.getTo(), p);
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /** Returns the renames from the files BEFORE to the files AFTER, both
+     * mapping names to blob IDs, ordered by destination, without looking
+     * for copies.
+     * @param before the old tree
+     * @param after the new tree **/
+    static List<Pair> renames(Map<String, String> before,
+                              Map<String, String> after) {
+        Map<String, String> gone = new HashMap<>();
+        Map<String, String> added = new HashMap<>();
+        PathTrie.of(before).diff(PathTrie.of(after), (name, was, now) -> {
+            if (now == null) {
+                gone.put(name, was.hex());
+            } else if (was == null) {
+                added.put(name, now.hex());
+            }
+        });
+        return detect(gone, added);
+    }
+
+    /** Returns the changes from the files BEFORE to the files AFTER, both
+     * mapping names to blob IDs, one per line ordered by name: A for an
+     * added file, D for a deleted one, M for a modified one, and R or C
+     * followed by the similarity for a renamed or copied one, with its
+     * source's name before its own.
+     * @param before the old tree
+     * @param after the new tree **/
+    static String nameStatus(Map<String, String> before,
+                             Map<String, String> after) {
+        TreeMap<String, String> lines = new TreeMap<>();
+        PathTrie.of(before).diff(PathTrie.of(after), (name, was, now) ->
+                lines.put(name, (now == null ? "D\t" : was == null ? "A\t"
+                        : "M\t") + name));
+        for (Pair p : detect(before, after)) {
+            if (!p.isCopy()) {
+                lines.remove(p.getFrom());
+            }
+            lines.put(p.getTo(), String.format("%c%03d\t%s\t%s",
+                    p.isCopy() ? 'C' : 'R', p.getScore(), p.getFrom(),
+                    p.getTo()));
+        }
+        StringBuilder out = new StringBuilder();
+        for (String line : lines.values()) {
+            out.append(line).append("\n");
+        }
+        return out.toString();
+    }
+
+    /** Returns the best pairing of the files TARGETS with the files
+     * SOURCES, both mapping names to contents, whose similarity is at
+     * least MIN_SCORE. Sources in COPYSOURCES may be used more than
+     * once; others only once.
+     * @param sources candidate sources
+     * @param targets files to find sources for
+     * @param copySources sources that are kept **/
+    private static List<Pair> similar(Map<String, String> sources,
+                                      Map<String, String> targets,
+                                      Set<String> copySources) {
+        List<Pair> result = new ArrayList<>();
+        if (sources.isEmpty() || targets.isEmpty()) {
+            return result;
+        }
+        Map<String, long[]> sketches = new HashMap<>();
+        Map<Long, List<String>> buckets = new HashMap<>();
+        for (Map.Entry<String, String> e : sources.entrySet()) {
+            long[] sketch = sketch(e.getValue());
+            if (sketch == null) {
+                continue;
+            }
+            sketches.put(e.getKey(), sketch);
+            for (int b = 0; b < BANDS; b += 1) {
+                buckets.computeIfAbsent(band(sketch, b),
+                        k -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+        List<Pair> candidates = new ArrayList<>();
+        for (Map.Entry<String, String> e : targets.entrySet()) {
+            long[] sketch = sketch(e.getValue());
+            if (sketch == null) {
+                continue;
+            }
+            Set<String> seen = new HashSet<>();
+            for (int b = 0; b < BANDS; b += 1) {
+                for (String from : buckets.getOrDefault(band(sketch, b),
+                        List.of())) {
+                    if (!seen.add(from)) {
+                        continue;
+                    }
+                    int score = agreement(sketch, sketches.get(from));
+                    if (score >= MIN_SCORE) {
+                        candidates.add(new Pair(from, e.getKey(), score,
+                                copySources.contains(from)));
+                    }
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingInt(Pair::getScore).reversed()
+                .thenComparing(Pair::getTo).thenComparing(Pair::getFrom));
+        Set<String> usedTargets = new HashSet<>();
+        Set<String> usedSources = new HashSet<>();
+        for (Pair p : candidates) {
+            if (usedTargets.contains(p.getTo())
+                    || (!p.isCopy() && usedSources.contains(p.getFrom()))) {
+                continue;
+            }
+            usedTargets.add(p.getTo());
+            if (!p.isCopy()) {
+                usedSources.add(p.getFrom());
+            }
+            result.add(p);
+        }
+        return result;
+    }
+
+    /** Returns the MinHash sketch of the lines of CONTENTS, or null if it
+     * has none.
+     * @param contents a file's contents **/
+    static long[] sketch(String contents) {
+        long[] result = null;
+        int start = 0;
+        while (start < contents.length()) {
+            int end = contents.indexOf('\n', start);
+            end = end < 0 ? contents.length() : end;
+            long line = 0xcbf29ce484222325L;
+            for (int k = start; k < end; k += 1) {
+                line = (line ^ contents.charAt(k)) * 0x100000001b3L;
+            }
+            if (result == null) {
+                result = new long[SKETCH];
+                Arrays.fill(result, Long.MAX_VALUE);
+            }
+            for (int i = 0; i < SKETCH; i += 1) {
+                long h = mix(line ^ SEEDS[i]);
+                if (h < result[i]) {
+                    result[i] = h;
+                }
+            }
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /** Returns the percentage of positions at which sketches A and B
+     * agree.
+     * @param a a sketch
+     * @param b another **/
+    static int agreement(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SKETCH; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return 100 * same / SKETCH;
+    }
+
+    /** Returns the bucket key of band B of SKETCH.
+     * @param sketch a sketch
+     * @param b a band number **/
+    private static long band(long[] sketch, int b) {
+        long h = b;
+        for (int i = b * ROWS; i < (b + 1) * ROWS; i += 1) {
+            h = mix(h * 31 + sketch[i]);
+        }
+        return h;
+    }
+
+    /** Returns X with its bits well mixed, by the SplitMix64 finalizer.
+     * @param x a value **/
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Returns the contents of the blob SHA, stored or staged.
+     * @param sha a blob ID **/
+    private static String contents(String sha) {
+        Blob b = Blob.getBlob(sha);
+        if (b == null) {
+            b = Blob.getStagedBlob(sha);
+        }
+        return b == null ? "" : b.getContents();
+    }
+}
@@ -4,28 +4,29 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.List;
+import java.util.Map;
 
 
 /** Our repository object with all functions of gitlet.
  * @author corey hu**/
 public class Repo implements Serializable {
 
-    /** The current branch of the repo. **/
-    private String currentBranch;
     /** The mapping of file names being tracked to their SHA1 blob codes. **/
-    private HashMap<String, String> tracking;
-    /** The list of braches in the repo. **/
-    private ArrayList<String> branches;
+    private PathTrie tracking;
     /** The list of files that are staged to be removed. **/
     private ArrayList<String> stagedRemove;
     /** The map of filenames and their SHA1 codes
      * that are staged to be added. **/
-    private HashMap<String, String> stagedAdd;
+    private PathMap stagedAdd;
     /** Hashamp of Remotes/parent repos. **/
     private HashMap<String, String> remotes;
 
@@ -33,39 +34,149 @@ public class Repo implements Serializable {
 
     /** Constructor for the repo object. **/
     public Repo() {
-        currentBranch = "master";
-        tracking = new HashMap<>();
-        branches = new ArrayList<>();
+        tracking = PathTrie.EMPTY;
         stagedRemove = new ArrayList<>();
-        stagedAdd = new HashMap<>();
+        stagedAdd = new PathMap();
         remotes = new HashMap<>();
     }
 
 
     /** Initialize our .gitlet repository. **/
     public void init() {
-        File dir = new File(".gitlet");
+        init(HashAlgorithm.SHA1);
+    }
 
-        if (dir.mkdir()) {
-            new File(".gitlet/COMMITS").mkdir();
-            new File(".gitlet/FILES").mkdir();
-            new File(".gitlet/BRANCHES").mkdir();
-            new File(".gitlet/STAGING").mkdir();
-            new File(".gitlet/REMOTES").mkdir();
-
-            try {
-                new File(".gitlet/commitHistory").createNewFile();
-                new File(".gitlet/tracking").createNewFile();
-            } catch (IOException e) {
-                return;
-            }
+    /** Initialize our .gitlet repository, naming objects with ALG.
+     * @param alg the repository's hash algorithm **/
+    public void init(HashAlgorithm alg) {
+        if (makeDirectories()) {
+            HashAlgorithm.set(new File(".gitlet"), alg);
             Commit.makeInitialCommit();
-            branches.add("master");
             serialize();
+        }
+    }
+
+    /** Creates an empty .gitlet directory.
+     * @return whether it was created **/
+    private boolean makeDirectories() {
+        File dir = new File(".gitlet");
+
+        if (dir.mkdir()) {
+            return makeDirectories(dir);
         } else {
             System.out.println("A Gitlet version-control system"
                     + " already exists in the current directory.");
+            return false;
+        }
+    }
+
+    /** Fills the new directory DIR with what an empty .gitlet holds.
+     * @param dir the new .gitlet directory
+     * @return whether it was filled **/
+    private static boolean makeDirectories(File dir) {
+        new File(dir, "COMMITS").mkdir();
+        new File(dir, "FILES").mkdir();
+        new File(dir, "STAGING").mkdir();
+        new File(dir, "REMOTES").mkdir();
+
+        try {
+            new File(dir, "commitHistory").createNewFile();
+            new File(dir, "tracking").createNewFile();
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /** Clone the repository at remotePath into the working directory,
+     * registering it as the remote origin. Only DEPTH generations of
+     * history are copied if DEPTH is positive, with the commits at the
+     * cut, and any of the remote's own grafts, recorded as shallow
+     * grafts. A blobless clone copies no blobs; they are fetched from the
+     * remote as they are first needed. The clone is made in a temporary
+     * directory that becomes .gitlet only once its objects and refs are
+     * all in place.
+     * @param remotePath the path of the remote .gitlet directory
+     * @param depth how many generations of history to copy
+     * @param blobless whether to leave blobs on the remote **/
+    public void cloneFrom(String remotePath, int depth, boolean blobless) {
+        File src = Remote.find(remotePath);
+        if (src == null) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        File local = new File(".gitlet");
+        if (local.exists()) {
+            System.out.println("A Gitlet version-control system"
+                    + " already exists in the current directory.");
+            return;
+        }
+        HashAlgorithm alg = HashAlgorithm.of(src);
+        RefTable srcRefs = RefTable.read(src);
+        List<String> commits = Remote.select(src, Remote.tips(src), depth);
+        Set<String> copied = new HashSet<>(commits);
+        Set<String> grafts = new LinkedHashSet<>();
+        for (String id : commits) {
+            Commit c = Commit.lookup(src, id);
+            if ((c.getParent() != null && !copied.contains(c.getParent()))
+                    || (c.getMergeParent() != null
+                    && !copied.contains(c.getMergeParent()))) {
+                grafts.add(id);
+            }
+        }
+        for (String id : Promisor.grafts(src)) {
+            if (copied.contains(id)) {
+                grafts.add(id);
+            }
+        }
+        File tmp = null;
+        try {
+            tmp = Files.createTempDirectory(
+                    new File(".").toPath(), ".gitlet-clone").toFile();
+            if (!makeDirectories(tmp)) {
+                throw new IOException("cannot create " + tmp);
+            }
+            HashAlgorithm.set(tmp, alg);
+            Remote.copyObjects(src, tmp, commits, !blobless);
+            RefTable refs = RefTable.read(tmp);
+            for (String name : srcRefs.names()) {
+                refs.update(name, srcRefs.resolve(name),
+                        "clone: from " + remotePath);
+            }
+            RefTable.setHead(tmp, RefTable.head(src));
+            Files.move(tmp.toPath(), local.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException excp) {
+            deleteAll(tmp);
+            System.out.println("Clone failed: " + excp.getMessage());
+            return;
+        }
+        HashAlgorithm.set(local, alg);
+        if (blobless) {
+            Promisor.setRemote(src.getAbsoluteFile());
+        }
+        Promisor.setGrafts(grafts);
+        remotes.put("origin", remotePath);
+        Commit head = Commit.getHeadCommit();
+        head.restore();
+        tracking = Sparse.select(head.getBlobs());
+        serialize();
+    }
+
+    /** Deletes the file or directory F and everything under it. Does
+     * nothing if F is null.
+     * @param f the file or directory to delete **/
+    private static void deleteAll(File f) {
+        if (f == null) {
+            return;
+        }
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
         }
+        f.delete();
     }
 
     /** Convert all files in our STAGING area to a commit. **/
@@ -74,42 +185,49 @@ public class Repo implements Serializable {
             System.out.println("No changes added to the commit.");
             return;
         }
+        PathTrie.Builder tracked = tracking.edit();
         for (String fileName : stagedAdd.keySet()) {
             String blobSha = stagedAdd.get(fileName);
             Blob b = Blob.deserialize(".gitlet/STAGING/" + blobSha);
-            tracking.put(b.getFileName(), blobSha);
-            b.serialize(".gitlet/FILES/" + blobSha);
+            tracked.put(b.getFileName(), blobSha);
+            File stored = new File(Worktree.common(), "FILES/" + blobSha);
+            if (!stored.setLastModified(System.currentTimeMillis())) {
+                b.serialize(stored.getPath());
+            }
             new File(".gitlet/STAGING/" + blobSha).delete();
         }
         for (String fileName : stagedRemove) {
-            tracking.remove(fileName);
+            tracked.remove(fileName);
         }
+        tracking = tracked.build();
         clearStaging();
     }
 
     /** Make a branch in our repository.
      * @param name name of the branch**/
     public void makeBranch(String name) {
-        if (branches.contains(name)) {
+        RefTable refs = RefTable.read();
+        if (refs.contains(name)) {
             System.out.println("A branch with that name already exists.");
         } else {
-            branches.add(name);
-            Commit.getHeadCommit().makeBranchHead(name);
-            serialize();
+            refs.update(name, refs.resolve(RefTable.head()),
+                    "branch: Created from " + RefTable.head());
         }
     }
 
     /** Remove a branch in our repository.
      * @param name name of the branch**/
     public void removeBranch(String name) {
-        if (!branches.contains(name)) {
+        RefTable refs = RefTable.read();
+        if (!refs.contains(name)) {
             System.out.println("A branch with that name does not exist.");
-        } else if (name.equals(currentBranch)) {
+        } else if (name.equals(getCurrentBranch())) {
             System.out.println("Cannot remove the current branch.");
+        } else if (Worktree.holder(name, new File(".gitlet")) != null) {
+            System.out.println("Cannot remove a branch checked out "
+                    + "in another worktree.");
         } else {
-            branches.remove(name);
-            new File(".gitlet/BRANCHES/" + name).delete();
-            serialize();
+            refs.delete(name);
         }
     }
 
@@ -120,24 +238,15 @@ public class Repo implements Serializable {
         if (!stagedAdd.isEmpty() || !stagedRemove.isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return false;
-        } else if (!new File(".gitlet/BRANCHES/" + otherBranch).exists()) {
+        } else if (!RefTable.read().contains(otherBranch)) {
             System.out.println("A branch with that name does not exist.");
             return false;
-        } else if (currentBranch.equals(otherBranch)) {
+        } else if (getCurrentBranch().equals(otherBranch)) {
             System.out.println("Cannot merge a branch with itself.");
             return false;
-        } else {
-            Commit branchHead = Commit.getBranchHead(otherBranch);
-            List<String> wd = Utils.plainFilenamesIn(".");
-            for (String fileName : branchHead.getBlobs().keySet()) {
-                if (!tracking.containsKey(fileName) && wd.contains(fileName)) {
-                    System.out.println("There is an untracked file in the way; "
-                            + "delete it or add it first.");
-                    return false;
-                }
-            }
         }
-        return true;
+        return !untrackedInTheWay(
+                Commit.getBranchHead(otherBranch).getBlobs());
     }
 
     /** Ties all the merges together.
@@ -155,8 +264,8 @@ public class Repo implements Serializable {
                     "Given branch is an ancestor of the current branch.");
             return;
         } else if (splitPoint.id().equals(headB.id())) {
-            otherB.updateHeads();
-            otherB.makeBranchHead(currentBranch);
+            otherB.updateHeads(getCurrentBranch(),
+                    "merge " + otherBranch + ": Fast-forward");
             System.out.println("Current branch fast-forwarded. ");
         } else {
             makeMerge(headB, otherB, splitPoint, otherBranch);
@@ -170,64 +279,167 @@ public class Repo implements Serializable {
      * @param otherBranch name of the other branch to merge to **/
     private void makeMerge(Commit headB, Commit otherB,
                            Commit splitPoint, String otherBranch) {
-        boolean encounteredConflict = false;
-        HashSet<String> allFiles = new HashSet<>();
-        allFiles.addAll(headB.getBlobs().keySet());
-        allFiles.addAll(otherB.getBlobs().keySet());
-        allFiles.addAll(splitPoint.getBlobs().keySet());
-        ArrayList<String> modifiedHead = modifiedFiles(headB, splitPoint);
-        ArrayList<String> modifiedOther = modifiedFiles(otherB, splitPoint);
-        Set<String> presentInHead = headB.getBlobs().keySet();
-        Set<String> presentInOther = otherB.getBlobs().keySet();
-        Set<String> presentInSplit = splitPoint.getBlobs().keySet();
-        for (String fileName : allFiles) {
-            if (!modifiedHead.contains(fileName)) {
-                if (modifiedOther.contains(fileName)) {
-                    checkout(otherB, fileName);
-                    stage(fileName);
-                } else if (presentInSplit.contains(fileName)
-                        && !presentInOther.contains(fileName)) {
-                    removeStaging(fileName);
-                }
-            } else if (!presentInHead.contains(fileName)
-                    && presentInOther.contains(fileName)
-                    && !presentInSplit.contains(fileName)) {
-                checkout(otherB, fileName);
-                stage(fileName);
-            } else if ((modifiedHead.contains(fileName)
-                    && modifiedOther.contains(fileName)
-                    && !headB.getBlobs().get(fileName).equals(
-                    otherB.getBlobs().get(fileName)))
-                    || (presentInSplit.contains(fileName)
-                    && ((!presentInHead.contains(fileName)
-                    && modifiedOther.contains(fileName))
-                    || (!presentInOther.contains(fileName)
-                    && modifiedHead.contains(fileName))))) {
-                Blob headBlob = Blob.getBlob(
-                        headB.getBlobs().get(fileName));
-                Blob otherBlob = Blob.getBlob(
-                        otherB.getBlobs().get(fileName));
-                String headContents = headBlob != null
-                        ? headBlob.getContents() : "";
-                String otherContents = otherBlob != null
-                        ? otherBlob.getContents() : "";
-                if (!headContents.equals(otherContents)) {
-                    encounteredConflict = true;
-                    String newContents = "<<<<<<< HEAD\n"
-                            + headContents + "=======\n"
-                            + otherContents + ">>>>>>>\n";
-                    Utils.writeContents(new File(fileName),
-                            newContents.getBytes());
-                    stage(fileName);
-                }
+        TreeMerge m = new TreeMerge(splitPoint.getBlobs(),
+                headB.getBlobs(), otherB.getBlobs()).run();
+        notifyMergeConflict(!m.getConflicts().isEmpty());
+        String mergeMsg = "Merged " + otherBranch
+                + " into " + getCurrentBranch() + ".";
+        moveWorkingDir(headB.getBlobs(), m.getTree());
+        Commit.makeMergeCommit(mergeMsg, m.getTree(), otherB.id());
+        serialize();
+    }
+
+    /** Applies the commit COMMITID to the head commit as a new commit. The
+     * changes it made to its parent are merged with the head in memory,
+     * and the working directory is written once, with the result.
+     * @param commitID the commit to apply **/
+    public void cherryPick(String commitID) {
+        if (!stagedAdd.isEmpty() || !stagedRemove.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Commit c = Commit.lookup(commitID);
+        if (c == null) {
+            System.out.println("No commit with that id exists.");
+            return;
+        }
+        Commit head = Commit.getHeadCommit();
+        TreeMerge m = replay(c, head);
+        if (m.getTree().equals(head.getBlobs())) {
+            System.out.println("No changes added to the commit.");
+            return;
+        } else if (untrackedInTheWay(m.getTree())) {
+            return;
+        }
+        notifyMergeConflict(!m.getConflicts().isEmpty());
+        Commit picked = Commit.make(c.getMsg(), head.id(), m.getTree());
+        picked.save();
+        moveWorkingDir(head.getBlobs(), m.getTree());
+        picked.updateHeads(getCurrentBranch(), "cherry-pick: " + c.getMsg());
+        serialize();
+    }
+
+    /** Replays the commits of the current branch since it split from
+     * BRANCH on top of BRANCH's head, one merge in memory per commit, and
+     * moves the current branch to the last of them. Commits whose changes
+     * BRANCH already has are dropped, and merge commits are replayed as
+     * the changes from their first parent. Nothing is written to the
+     * working directory until every commit has been replayed, and if any
+     * conflicts, nothing is changed at all.
+     * @param branch the branch to rebase onto **/
+    public void rebase(String branch) {
+        if (!stagedAdd.isEmpty() || !stagedRemove.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        } else if (!RefTable.read().contains(branch)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        } else if (getCurrentBranch().equals(branch)) {
+            System.out.println("Cannot rebase a branch onto itself.");
+            return;
+        }
+        Commit head = Commit.getHeadCommit();
+        Commit onto = Commit.getBranchHead(branch);
+        Commit splitPoint = getSplitPoint(head, onto);
+        if (splitPoint.id().equals(onto.id())) {
+            System.out.println(
+                    "Given branch is an ancestor of the current branch.");
+            return;
+        }
+        ArrayList<Commit> todo = new ArrayList<>();
+        for (Commit c = head; !c.id().equals(splitPoint.id());
+             c = Commit.lookup(c.getParent())) {
+            todo.add(c);
+        }
+        Collections.reverse(todo);
+        ArrayList<Commit> made = new ArrayList<>();
+        Commit tip = onto;
+        for (Commit c : todo) {
+            TreeMerge m = replay(c, tip);
+            if (!m.getConflicts().isEmpty()) {
+                System.out.println("Encountered a merge conflict in "
+                        + c.id().substring(0, 7) + "; rebase aborted.");
+                return;
+            } else if (!m.getTree().equals(tip.getBlobs())) {
+                tip = Commit.make(c.getMsg(), tip.id(), m.getTree());
+                made.add(tip);
             }
         }
-        notifyMergeConflict(encounteredConflict);
-        stagingToCommit();
-        String mergeMsg = "Merged " + otherBranch
-                + " into " + currentBranch + ".";
+        if (untrackedInTheWay(tip.getBlobs())) {
+            return;
+        }
+        for (Commit c : made) {
+            c.save();
+        }
+        moveWorkingDir(head.getBlobs(), tip.getBlobs());
+        tip.updateHeads(getCurrentBranch(), "rebase: onto " + branch);
+        serialize();
+    }
+
+    /** Returns the merge of the changes commit C made to its parent into
+     * the files of commit ONTO.
+     * @param c the commit to replay
+     * @param onto the commit to replay it on **/
+    private TreeMerge replay(Commit c, Commit onto) {
+        Map<String, String> base = c.getParent() == null ? Map.of()
+                : Commit.lookup(c.getParent()).getBlobs();
+        return new TreeMerge(base, onto.getBlobs(), c.getBlobs()).run();
+    }
+
+    /** Returns whether a file of TREE that the sparse checkout patterns
+     * include is in the working directory but not tracked, which is
+     * reported.
+     * @param tree files about to be checked out **/
+    private boolean untrackedInTheWay(Map<String, String> tree) {
+        if (untracked(Sparse.select(tree)).isEmpty()) {
+            return false;
+        }
+        System.out.println("There is an untracked file in the way; "
+                + "delete it or add it first.");
+        return true;
+    }
 
-        Commit.makeMergeCommit(mergeMsg , this, otherB.id());
+    /** Returns the files of TREE that are in the working directory but
+     * not tracked, looking only at those TREE adds to the tracked files.
+     * @param tree files about to be checked out **/
+    private List<String> untracked(PathTrie tree) {
+        Set<String> wd = new HashSet<>(Utils.plainFilenamesIn("."));
+        List<String> result = new ArrayList<>();
+        tracking.diff(tree, (fileName, before, after) -> {
+            if (before == null && wd.contains(fileName)) {
+                result.add(fileName);
+            }
+        });
+        return result;
+    }
+
+    /** Moves the working directory from the files BEFORE to the files
+     * AFTER, writing only those whose blobs differ and deleting those
+     * AFTER drops, then tracks AFTER with an empty staging area. Files
+     * the sparse checkout patterns exclude are left alone.
+     * @param before the files checked out now
+     * @param after the files to check out **/
+    private void moveWorkingDir(PathTrie before, PathTrie after) {
+        List<String> changed = new ArrayList<>();
+        List<String> dropped = new ArrayList<>();
+        before.diff(after, (fileName, was, now) -> {
+            if (!Sparse.includes(fileName)) {
+                return;
+            } else if (now == null) {
+                dropped.add(fileName);
+            } else {
+                changed.add(now.hex());
+            }
+        });
+        Promisor.prefetch(changed);
+        for (String sha : changed) {
+            Blob.getBlob(sha).restore();
+        }
+        for (String fileName : dropped) {
+            new File(fileName).delete();
+        }
+        tracking = Sparse.select(after);
+        clearStaging();
     }
 
     /** Notifies the terminal that a merge conflict is afoot.
@@ -244,11 +456,11 @@ public class Repo implements Serializable {
      * @return a commit that represents the
      * splitpoint of two commits with diff branches **/
     private Commit getSplitPoint(Commit a, Commit b) {
-        List<String> ancestorsA = a.getAncestors();
-        List<String> ancestorsB = b.getAncestors();
-        for (String ancestorSHA : ancestorsA) {
-            if (ancestorsB.contains(ancestorSHA)) {
-                return Commit.lookup(ancestorSHA);
+        List<ObjectId> ancestorsA = a.getAncestors();
+        Set<ObjectId> ancestorsB = new HashSet<>(b.getAncestors());
+        for (ObjectId ancestor : ancestorsA) {
+            if (ancestorsB.contains(ancestor)) {
+                return Commit.lookup(ancestor.hex());
             }
         }
         return null;
@@ -262,33 +474,22 @@ public class Repo implements Serializable {
             System.out.println("No commit with that id exists.");
             return;
         }
-        Set<String> errorOn = new HashSet<>(c.getBlobs().keySet());
-        errorOn.removeAll(tracking.keySet());
-        List<String> wd = Utils.plainFilenamesIn(".");
-        for (String file : errorOn) {
-            if (wd.contains(file)) {
-                System.out.println(
-                        "There is an untracked file in the way; "
-                                + "delete it or add it first.");
-                return;
-            }
+        PathTrie cBlobs = Sparse.select(c.getBlobs());
+        if (!untracked(cBlobs).isEmpty()) {
+            System.out.println(
+                    "There is an untracked file in the way; "
+                            + "delete it or add it first.");
+            return;
         }
 
-        Set<String> deleteFiles = new HashSet<>(tracking.keySet());
-        deleteFiles.removeAll(c.getBlobs().keySet());
-
-        for (String fileName : deleteFiles) {
+        for (String fileName : dropped(cBlobs)) {
             new File(fileName).delete();
         }
 
-        Set<String> cFiles = c.getBlobs().keySet();
-
-        for (String cFileName : cFiles) {
-            checkout(c, cFileName);
-        }
+        c.restore();
 
-        c.updateHeads();
-        tracking = new HashMap<>(c.getBlobs());
+        c.updateHeads(getCurrentBranch(), "reset: moving to " + c.id());
+        tracking = cBlobs;
         clearStaging();
         serialize();
     }
@@ -296,40 +497,48 @@ public class Repo implements Serializable {
     /** Checksout the repo based on a branchname.
      * @param branch the name of the branch to checkout**/
     public void checkout(String branch) {
-        if (branch.equals(currentBranch)) {
+        if (branch.equals(getCurrentBranch())) {
             System.out.println("No need to checkout the current branch.");
         } else {
             Commit bh = Commit.getBranchHead(branch);
             if (bh == null) {
                 System.out.println("No such branch exists.");
             } else {
-                List<String> wd = Utils.plainFilenamesIn(".");
-                for (String fileName : bh.getBlobs().keySet()) {
-                    if (!tracking.containsKey(fileName)
-                            && wd.contains(fileName)) {
-                        System.out.println(
-                                "There is an untracked file in the way;"
-                                + "delete it or add it first.");
-                        return;
-                    }
+                PathTrie bhBlobs = Sparse.select(bh.getBlobs());
+                if (!untracked(bhBlobs).isEmpty()) {
+                    System.out.println(
+                            "There is an untracked file in the way;"
+                            + "delete it or add it first.");
+                    return;
                 }
 
-                Set<String> notInBranch = new HashSet<>(tracking.keySet());
-                notInBranch.removeAll(bh.getBlobs().keySet());
-                for (String fileName : notInBranch) {
+                if (!Worktree.claim(new File(".gitlet"), branch, false)) {
+                    return;
+                }
+                for (String fileName : dropped(bhBlobs)) {
                     new File(fileName).delete();
                 }
 
                 bh.restore();
-                bh.updateHeads(branch);
-                currentBranch = branch;
-                tracking = new HashMap<>(bh.getBlobs());
+                tracking = bhBlobs;
                 clearStaging();
                 serialize();
             }
         }
     }
 
+    /** Returns the tracked files that TREE does not have.
+     * @param tree files about to be checked out **/
+    private List<String> dropped(PathTrie tree) {
+        List<String> result = new ArrayList<>();
+        tracking.diff(tree, (fileName, before, after) -> {
+            if (after == null) {
+                result.add(fileName);
+            }
+        });
+        return result;
+    }
+
     /** Checks out a file in a commit.
      * @param fileName the filename to check out
      * @param c the commit to lookup the filename in**/
@@ -344,25 +553,6 @@ public class Repo implements Serializable {
         serialize();
     }
 
-    /** Returns Arraylist of filenames that have
-     * been modified between two commits. *
-     * @param a first commit to compare against
-     * @param b second commit to compare*/
-    private ArrayList<String> modifiedFiles(Commit a, Commit b) {
-        HashMap<String, String> aFiles = a.getBlobs();
-        HashMap<String, String> bFiles = b.getBlobs();
-
-        ArrayList<String> modifiedFiles = new ArrayList<>();
-
-        for (String fileName : aFiles.keySet()) {
-            if (!(bFiles.containsKey(fileName)
-                    && aFiles.get(fileName).equals(bFiles.get(fileName)))) {
-                modifiedFiles.add(fileName);
-            }
-        }
-        return modifiedFiles;
-    }
-
     /** A helper function to find the status msg.
      * @param allFiles all files in WD and head commit
      * @param workingDirFiles all files in WD
@@ -373,7 +563,7 @@ public class Repo implements Serializable {
      * @param untracked  a list for untracked files **/
     private void getStatusHelper(Set<String> allFiles,
                                  List<String> workingDirFiles,
-                                 HashMap<String, String> headCommitFiles,
+                                 Map<String, String> headCommitFiles,
                                  Set<String> staged, Set<String> removed,
                                  Set<String> modifiedNotStaged,
                                  Set<String> untracked) {
@@ -418,19 +608,21 @@ public class Repo implements Serializable {
         Commit head = Commit.getHeadCommit();
         String statusmsg = "";
         String branchResult = "=== Branches ===\n";
-        for (String branchName : branches) {
+        String currentBranch = getCurrentBranch();
+        for (String branchName : RefTable.read().names()) {
             if (branchName.equals(currentBranch)) {
                 branchName = "*" + branchName;
             }
             branchResult += branchName + "\n";
         }
         List<String> workingDirFiles = Utils.plainFilenamesIn(".");
-        HashMap<String, String> headCommitFiles = head.getBlobs();
+        PathTrie headCommitFiles = Sparse.select(head.getBlobs());
         Set<String> allFiles = new HashSet<>();
         allFiles.addAll(workingDirFiles);
+        allFiles.removeAll(Sparse.excluded(head.getBlobs()).keySet());
         allFiles.addAll(stagedAdd.keySet());
         allFiles.addAll(stagedRemove);
-        allFiles.addAll(head.getBlobs().keySet());
+        allFiles.addAll(headCommitFiles.keySet());
         Set<String> staged = new HashSet<>();
         Set<String> removed = new HashSet<>();
         Set<String> modifiedNotStaged = new HashSet<>();
@@ -438,6 +630,7 @@ public class Repo implements Serializable {
 
         getStatusHelper(allFiles,  workingDirFiles, headCommitFiles,
                 staged, removed, modifiedNotStaged, untracked);
+        showRenames(headCommitFiles, staged, removed);
 
         statusmsg += branchResult;
         statusmsg += "\n=== Staged Files ===\n";
@@ -457,6 +650,46 @@ public class Repo implements Serializable {
         return statusmsg;
     }
 
+    /** Replaces each file in STAGED that renames one in REMOVED with a
+     * note naming the file it was renamed from, which is then dropped from
+     * REMOVED.
+     * @param headCommitFiles all files in head commit
+     * @param staged the staged files
+     * @param removed the removed files **/
+    private void showRenames(Map<String, String> headCommitFiles,
+                             Set<String> staged, Set<String> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        HashMap<String, String> gone = new HashMap<>();
+        for (String fileName : removed) {
+            gone.put(fileName, headCommitFiles.get(fileName));
+        }
+        HashMap<String, String> added = new HashMap<>();
+        for (String fileName : staged) {
+            if (!headCommitFiles.containsKey(fileName)) {
+                added.put(fileName, stagedAdd.get(fileName));
+            }
+        }
+        for (Renames.Pair p : Renames.detect(gone, added)) {
+            staged.remove(p.getTo());
+            staged.add(p.getTo() + " (renamed from " + p.getFrom() + ")");
+            removed.remove(p.getFrom());
+        }
+    }
+
+    /** Returns the files the next commit made on HEAD would track, with
+     * their blob IDs.
+     * @param head the head commit **/
+    public PathTrie getIndex(Commit head) {
+        PathTrie.Builder index = getTree(head).edit();
+        index.putAll(stagedAdd);
+        for (String fileName : stagedRemove) {
+            index.remove(fileName);
+        }
+        return index.build();
+    }
+
     /** Stages a file given a filename.
      * @param fileName the filename to stage**/
     public void stage(String fileName) {
@@ -496,27 +729,89 @@ public class Repo implements Serializable {
     }
 
     /** Return a hashmap of all tracked files. **/
-    public HashMap<String, String> getTracking() {
+    public PathTrie getTracking() {
         return tracking;
     }
 
-    /** Return your current branch. **/
-    public String getCurrentBranch() {
-        return currentBranch;
+    /** Returns the files of a commit made now on top of HEAD: the
+     * tracked files, and those of HEAD that the sparse checkout patterns
+     * exclude. It is made from HEAD's files by the changes tracked since,
+     * so it shares all the rest with them.
+     * @param head the commit to be the parent **/
+    public PathTrie getTree(Commit head) {
+        PathTrie files = head.getBlobs();
+        PathTrie.Builder tree = files.edit();
+        Sparse.select(files).diff(tracking, (fileName, before, after) -> {
+            if (after == null) {
+                tree.remove(fileName);
+            } else {
+                tree.put(fileName, after);
+            }
+        });
+        return tree.build();
+    }
+
+    /** Makes PATTERNS the sparse checkout patterns, or disables sparse
+     * checkout if PATTERNS is null, then removes the head commit's files
+     * they no longer include from the working directory and writes those
+     * they now include.
+     * @param patterns globs of the files to include, or null **/
+    public void sparseCheckout(List<String> patterns) {
+        if (!stagedAdd.isEmpty() || !stagedRemove.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        List<String> old = Sparse.isEnabled() ? Sparse.patterns() : null;
+        Commit head = Commit.getHeadCommit();
+        Sparse.setPatterns(patterns);
+        PathTrie included = Sparse.select(head.getBlobs());
+        List<String> wd = Utils.plainFilenamesIn(".");
+        for (String fileName : included.keySet()) {
+            if (!tracking.containsKey(fileName) && wd.contains(fileName)) {
+                System.out.println("There is an untracked file in the way; "
+                        + "delete it or add it first.");
+                Sparse.setPatterns(old);
+                return;
+            }
+        }
+        for (String fileName : tracking.keySet()) {
+            if (!included.containsKey(fileName) && wd.contains(fileName)
+                    && !new Blob(fileName).id().equals(
+                            tracking.get(fileName))) {
+                System.out.println("There is an unstaged change in the way; "
+                        + "commit or restore it first.");
+                Sparse.setPatterns(old);
+                return;
+            }
+        }
+        for (String fileName : tracking.keySet()) {
+            if (!included.containsKey(fileName)) {
+                new File(fileName).delete();
+            }
+        }
+        HashMap<String, String> added = new HashMap<>(included);
+        added.keySet().removeAll(tracking.keySet());
+        Promisor.prefetch(added.values());
+        for (String sha : added.values()) {
+            Blob.getBlob(sha).restore();
+        }
+        tracking = included;
+        serialize();
+    }
+
+    /** Return a hashmap of all files staged for addition. **/
+    public PathMap getStagedAdd() {
+        return stagedAdd;
     }
 
     /** Return your current branch. **/
-    public ArrayList<String> getBranches() {
-        return branches;
+    public String getCurrentBranch() {
+        return RefTable.head();
     }
 
-    /** Deserialize the remote repo with a given name.
-     * @param name name of the remote to deserialize
-     * @return the deserialized remote repo **/
-    public Repo deserializeRemote(String name) {
-        return Utils.readObject(
-                new File(remotes.get(name) + "/repo"),
-                Repo.class);
+    /** Return the names of all branches, in sorted order. **/
+    public List<String> getBranches() {
+        return RefTable.read().names();
     }
 
     /** Deserialize your repo from .gitlet/repo.
@@ -540,6 +835,47 @@ public class Repo implements Serializable {
         }
     }
 
+    /** Makes the directory PATH a linked worktree with BRANCH checked out,
+     * sharing this repository's objects and refs but with its own HEAD,
+     * index and staging area.
+     * @param path the new worktree's directory
+     * @param branch the branch to check out there **/
+    public void addWorktree(String path, String branch) {
+        Commit bh = Commit.getBranchHead(branch);
+        if (bh == null) {
+            System.out.println("No such branch exists.");
+            return;
+        }
+        File top = new File(path);
+        String[] existing = top.list();
+        if (top.isFile() || (existing != null && existing.length > 0)) {
+            System.out.println("That directory already exists.");
+            return;
+        }
+        boolean made = !top.exists();
+        File local = new File(top, ".gitlet");
+        local.mkdirs();
+        new File(local, "STAGING").mkdir();
+        if (!Worktree.claim(local, branch, true)) {
+            new File(local, "STAGING").delete();
+            local.delete();
+            if (made) {
+                top.delete();
+            }
+            return;
+        }
+        Repo linked = new Repo();
+        linked.tracking = bh.getBlobs();
+        linked.remotes = new HashMap<>(remotes);
+        Utils.writeObject(new File(local, "repo"), linked);
+        Promisor.prefetch(bh.getBlobs().values());
+        for (String sha : bh.getBlobs().values()) {
+            Blob b = Blob.getBlob(sha);
+            Utils.writeContents(new File(top, b.getFileName()),
+                    b.getContents().getBytes());
+        }
+    }
+
     /** Adding remotes.
      * @param name name of the remote
      * @param remotePath the path of the remote **/
@@ -548,8 +884,10 @@ public class Repo implements Serializable {
             System.out.println("A remote with that name already exists.");
         } else {
             remotes.put(name, remotePath);
+            serialize();
         }
     }
+
     /** Removing remotes.
      * @param name name of the remote **/
     public void removeRemote(String name) {
@@ -557,37 +895,93 @@ public class Repo implements Serializable {
             System.out.println("A remote with that name does not exist.");
         } else {
             remotes.remove(name);
+            serialize();
         }
     }
 
+    /** Returns the .gitlet directory of the remote NAME, or null after
+     * reporting that it cannot be found.
+     * @param name name of the remote **/
+    private File remoteDir(String name) {
+        File dir = remotes.containsKey(name)
+                ? Remote.find(remotes.get(name)) : null;
+        if (dir == null) {
+            System.out.println("Remote directory not found.");
+        } else if (HashAlgorithm.of(dir) != HashAlgorithm.current()) {
+            System.out.println("Remote uses a different hash algorithm.");
+            return null;
+        }
+        return dir;
+    }
+
     /** Push your commit to your remote.
      * @param name name of the remote
      * @param branch the brand you wish to push to on the remote **/
     public void pushRemote(String name, String branch) {
-        Repo remote = deserializeRemote(name);
-        if (!remote.getBranches().contains(branch)) {
-            remote.makeBranch(branch);
+        if (Sync.isUrl(remotes.get(name))) {
+            Sync.push(remotes.get(name), branch,
+                    Commit.getHeadCommit().id(), getCurrentBranch());
+            return;
         }
-        Commit curHead = Commit.getHeadCommit();
-        Commit remoteHead = Commit.
-                deserializeRemoteHead(remotes.get(name), branch);
-
-        fastForward(remoteHead, curHead);
-
-    }
-
-    /** Updates the commits between two commits.
-     * @param past the commit in the history of another
-     * @param future the more updated commit **/
-    private void fastForward(Commit past, Commit future) {
-        List<String> currAncestors = future.getAncestors();
-        if (future.getAncestors().
-                contains(past.id())) {
+        File remoteDir = remoteDir(name);
+        if (remoteDir == null) {
+            return;
+        }
+        File local = Worktree.common();
+        RefTable remoteRefs = RefTable.read(remoteDir);
+        String remoteHead = remoteRefs.resolve(branch);
+        String head = Commit.getHeadCommit().id();
+        if (remoteHead != null
+                && !Remote.isAncestor(local, remoteHead, head)) {
             System.out.println(
                     "Please pull down remote changes before pushing.");
             return;
         }
+        List<String> missing = Remote.negotiate(local, remoteDir,
+                List.of(head), Remote.tips(remoteDir));
+        Remote.copyObjects(local, remoteDir, missing, true);
+        remoteRefs.update(branch, head, "push: " + getCurrentBranch());
+    }
+
+    /** Fetch a branch of a remote into the branch NAME/BRANCH.
+     * @param name name of the remote
+     * @param branch the branch to fetch from the remote
+     * @return whether the fetch succeeded **/
+    public boolean fetchRemote(String name, String branch) {
+        String remoteHead;
+        if (Sync.isUrl(remotes.get(name))) {
+            remoteHead = Sync.fetch(remotes.get(name), branch);
+            if (remoteHead == null) {
+                return false;
+            }
+        } else {
+            File remoteDir = remoteDir(name);
+            if (remoteDir == null) {
+                return false;
+            }
+            remoteHead = RefTable.read(remoteDir).resolve(branch);
+            if (remoteHead == null) {
+                System.out.println("That remote does not have that branch.");
+                return false;
+            }
+            File local = Worktree.common();
+            List<String> missing = Remote.negotiate(remoteDir, local,
+                    List.of(remoteHead), Remote.tips(local));
+            Remote.copyObjects(remoteDir, local, missing,
+                    Promisor.remote() == null);
+        }
+        RefTable.read().update(name + "/" + branch, remoteHead,
+                "fetch: " + name + " " + branch);
+        return true;
+    }
 
+    /** Fetch a branch of a remote and merge it into the current branch.
+     * @param name name of the remote
+     * @param branch the branch to pull from the remote **/
+    public void pullRemote(String name, String branch) {
+        if (fetchRemote(name, branch)) {
+            merge(name + "/" + branch);
+        }
     }
 
 }
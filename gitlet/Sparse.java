@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** The sparse checkout patterns of the repository, one glob per line of
+ * .gitlet/sparse; a pattern ending in '/' takes everything below that
+ * directory. Files matching no pattern stay in every commit but are kept
+ * out of the working directory and the index: checkout, reset and merge
+ * never write them, and status never reads them. Without the file every
+ * file is included.
+ * @author corey hu **/
+class Sparse {
+
+    /** The compiled patterns, or null if every file is included. **/
+    private static List<PathMatcher> matchers;
+    /** Whether the patterns have been read. **/
+    private static boolean loaded;
+
+    /** Returns whether sparse checkout is enabled. **/
+    static boolean isEnabled() {
+        load();
+        return matchers != null;
+    }
+
+    /** Returns the patterns, in the order given, or an empty list if
+     * sparse checkout is disabled. **/
+    static List<String> patterns() {
+        File f = new File(".gitlet/sparse");
+        List<String> result = new ArrayList<>();
+        if (f.isFile()) {
+            for (String line
+                     : Utils.readContentsAsString(f).split("\n")) {
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Makes PATTERNS the sparse checkout patterns, or disables sparse
+     * checkout if PATTERNS is null.
+     * @param patterns globs of the files to include **/
+    static void setPatterns(List<String> patterns) {
+        File f = new File(".gitlet/sparse");
+        if (patterns == null) {
+            f.delete();
+        } else {
+            Utils.writeContents(f, String.join("\n", patterns) + "\n");
+        }
+        loaded = false;
+    }
+
+    /** Returns whether FILENAME matches a pattern.
+     * @param fileName a tracked file **/
+    static boolean includes(String fileName) {
+        load();
+        if (matchers == null) {
+            return true;
+        }
+        for (PathMatcher m : matchers) {
+            if (m.matches(Paths.get(fileName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the entries of BLOBS whose files match a pattern.
+     * @param blobs file names and their blob IDs **/
+    static PathTrie select(Map<String, String> blobs) {
+        return filter(blobs, true);
+    }
+
+    /** Returns the entries of BLOBS whose files match no pattern.
+     * @param blobs file names and their blob IDs **/
+    static PathTrie excluded(Map<String, String> blobs) {
+        return filter(blobs, false);
+    }
+
+    /** Returns the entries of BLOBS whose inclusion is INCLUDED.
+     * @param blobs file names and their blob IDs
+     * @param included whether to keep included or excluded files **/
+    private static PathTrie filter(Map<String, String> blobs,
+                                   boolean included) {
+        if (!isEnabled()) {
+            return included ? PathTrie.of(blobs) : PathTrie.EMPTY;
+        }
+        PathTrie all = PathTrie.of(blobs);
+        PathTrie.Builder result = all.edit();
+        for (String fileName : all.keySet()) {
+            if (includes(fileName) != included) {
+                result.remove(fileName);
+            }
+        }
+        return result.build();
+    }
+
+    /** Reads and compiles the patterns if they have not been. **/
+    private static void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        matchers = null;
+        if (!new File(".gitlet/sparse").isFile()) {
+            return;
+        }
+        matchers = new ArrayList<>();
+        for (String pattern : patterns()) {
+            if (pattern.endsWith("/")) {
+                pattern += "**";
+            }
+            matchers.add(FileSystems.getDefault()
+                    .getPathMatcher("glob:" + pattern));
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Fetches from and pushes to a repository that "gitlet serve" offers
+ * over TCP, for remotes not on a shared filesystem. Such a remote is
+ * named by a URL gitlet://HOST:PORT. A conversation is
+ * <pre>
+ *   client: magic, UTF hash algorithm
+ *   server: byte OK, int count, count * (UTF ref name, ID)
+ *           or byte ERROR, UTF message
+ *   fetch:  client: byte FETCH, boolean with blobs,
+ *                   int count, count * wanted ID,
+ *                   batches of int count, count * have ID, then int 0
+ *           server: for each batch, int count, count * common ID,
+ *                   then a pack
+ *   push:   client: byte PUSH, UTF branch, boolean had,
+ *                   [old ID,] new ID
+ *           server: byte OK or ERROR, UTF message
+ *           client: if OK, a pack
+ *           server: byte OK or ERROR, UTF message
+ * </pre>
+ * A pack is one deflated stream of objects as in a Bundle, blobs first
+ * and commits parents first, followed by END and a SHA-1 of everything
+ * before it, and holds only the objects the receiver lacks. The client
+ * sends its haves newest first without waiting for the answer to each
+ * batch, and stops walking back from any commit the server has. A push
+ * is checked before its pack is sent, so a refused push stores nothing,
+ * and is refused for a branch checked out in the served repository,
+ * whose working directory would no longer match it. Commits received
+ * either way are recorded in commitHistory. Each connection is served
+ * on its own thread.
+ * @author corey hu **/
+class Sync {
+
+    /** The scheme of a served remote's URL. **/
+    static final String SCHEME = "gitlet://";
+    /** The port served when none is given. **/
+    static final int DEFAULT_PORT = 9419;
+    /** The first bytes a client sends. **/
+    private static final byte[] MAGIC = "GLSYNC1".getBytes();
+    /** Reply tag of success. **/
+    private static final byte OK = 0;
+    /** Reply tag of failure, followed by a message. **/
+    private static final byte ERROR = 1;
+    /** Request tag of a fetch. **/
+    private static final byte FETCH = 1;
+    /** Request tag of a push. **/
+    private static final byte PUSH = 2;
+    /** The most haves in a batch. **/
+    private static final int BATCH = 256;
+    /** The most batches sent before the first unanswered one is read. **/
+    private static final int IN_FLIGHT = 2;
+    /** The most haves sent in one fetch. **/
+    private static final int MAX_HAVES = 16 * BATCH;
+    /** Size of stream buffers. **/
+    private static final int BUFFER = 1 << 16;
+    /** The branch names a push may create or move. **/
+    private static final String BRANCH_NAME =
+            "[A-Za-z0-9_-][A-Za-z0-9._-]*(/[A-Za-z0-9_-][A-Za-z0-9._-]*)*";
+    /** Held while a pushed ref is checked and moved. **/
+    private static final Object REF_LOCK = new Object();
+
+    /** Returns whether LOCATION names a served remote rather than a
+     * .gitlet directory.
+     * @param location a remote's path or URL, or null **/
+    static boolean isUrl(String location) {
+        return location != null && location.startsWith(SCHEME);
+    }
+
+    /** Serves the repository in the working directory on the loopback
+     * interface at PORT, or a free port if PORT is 0, until the process
+     * is stopped.
+     * @param port the port to listen on **/
+    static void serve(int port) {
+        File dir = Worktree.common();
+        HashAlgorithm alg = HashAlgorithm.of(dir);
+        ExecutorService pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "gitlet-serve");
+            t.setDaemon(true);
+            return t;
+        });
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port));
+            System.out.println("Serving on port " + server.getLocalPort()
+                    + ".");
+            while (true) {
+                Socket socket = server.accept();
+                pool.execute(() -> handle(dir, alg, socket));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Answers the client on SOCKET from the repository DIR, which names
+     * objects with ALG.
+     * @param dir the served .gitlet directory
+     * @param alg its hash algorithm
+     * @param socket the connection **/
+    private static void handle(File dir, HashAlgorithm alg, Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(
+                     socket.getInputStream(), BUFFER));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream(),
+                             BUFFER))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                return;
+            }
+            if (!in.readUTF().equals(alg.getName())) {
+                reply(out, ERROR, "Remote uses a different hash algorithm.");
+                return;
+            }
+            out.writeByte(OK);
+            RefTable refs = RefTable.read(dir);
+            out.writeInt(refs.size());
+            for (String name : refs.names()) {
+                out.writeUTF(name);
+                out.write(Utils.fromHex(refs.resolve(name)));
+            }
+            out.flush();
+            int request = in.read();
+            if (request == FETCH) {
+                serveFetch(dir, in, out);
+            } else if (request == PUSH) {
+                servePush(dir, in, out);
+            }
+        } catch (IOException | RuntimeException excp) {
+            System.err.println("Connection from "
+                    + socket.getRemoteSocketAddress() + " failed: "
+                    + excp.getMessage());
+        }
+    }
+
+    /** Answers a fetch read from IN with the pack of what the client
+     * lacks, written to OUT.
+     * @param dir the served .gitlet directory
+     * @param in the request
+     * @param out the reply **/
+    private static void serveFetch(File dir, DataInputStream in,
+                                   DataOutputStream out) throws IOException {
+        boolean withBlobs = in.readBoolean();
+        List<String> wants = readIds(in);
+        for (String id : wants) {
+            if (Commit.lookup(dir, id) == null) {
+                throw Utils.error("No commit %s to send.", id);
+            }
+        }
+        Set<String> common = new HashSet<>();
+        for (List<String> batch = readIds(in); !batch.isEmpty();
+             batch = readIds(in)) {
+            List<String> stored = new ArrayList<>();
+            for (String id : batch) {
+                if (new File(dir, "COMMITS/" + id).isFile()) {
+                    stored.add(id);
+                }
+            }
+            common.addAll(stored);
+            writeIds(out, stored);
+            out.flush();
+        }
+        List<String> commits = missing(dir, wants, common);
+        Collection<String> blobs = withBlobs
+                ? Remote.missingBlobs(dir, null, commits) : List.of();
+        sendPack(dir, blobs, commits, out);
+    }
+
+    /** Checks the push read from IN, and only if it may go ahead, stores
+     * its pack and moves the pushed branch if no one has moved it since
+     * the client looked, replying on OUT.
+     * @param dir the served .gitlet directory
+     * @param in the request
+     * @param out the reply **/
+    private static void servePush(File dir, DataInputStream in,
+                                  DataOutputStream out) throws IOException {
+        String branch = in.readUTF();
+        String old = in.readBoolean() ? readId(in) : null;
+        String head = readId(in);
+        String refusal = refusal(dir, branch, old);
+        if (refusal != null) {
+            reply(out, ERROR, refusal);
+            return;
+        }
+        reply(out, OK, "");
+        try {
+            Remote.recordHistory(dir, receivePack(dir, in));
+        } catch (GitletException excp) {
+            reply(out, ERROR, excp.getMessage());
+            return;
+        }
+        if (Commit.lookup(dir, head) == null) {
+            reply(out, ERROR, "Push is missing its commits.");
+            return;
+        }
+        synchronized (REF_LOCK) {
+            refusal = refusal(dir, branch, old);
+            if (refusal != null) {
+                reply(out, ERROR, refusal);
+                return;
+            }
+            RefTable.read(dir).update(branch, head, "push");
+        }
+        reply(out, OK, "");
+    }
+
+    /** Returns why a push moving BRANCH from OLD may not go ahead in DIR,
+     * or null if it may.
+     * @param dir the served .gitlet directory
+     * @param branch the pushed branch
+     * @param old the commit the client saw BRANCH at, or null **/
+    private static String refusal(File dir, String branch, String old) {
+        if (!branch.matches(BRANCH_NAME)) {
+            return "Bad branch name " + branch + ".";
+        } else if (RefTable.head(dir).equals(branch)
+                || Worktree.holder(branch, dir) != null) {
+            return "Refusing to update the checked-out branch "
+                    + branch + ".";
+        } else if (!Objects.equals(RefTable.read(dir).resolve(branch), old)) {
+            return "Please pull down remote changes before pushing.";
+        }
+        return null;
+    }
+
+    /** Writes the reply TAG, with MSG, to OUT.
+     * @param out the reply stream
+     * @param tag OK or ERROR
+     * @param msg the message **/
+    private static void reply(DataOutputStream out, byte tag, String msg)
+        throws IOException {
+        out.writeByte(tag);
+        out.writeUTF(msg);
+        out.flush();
+    }
+
+    /** Fetches BRANCH from the served remote URL into the repository in
+     * the working directory and returns its commit ID, or null after
+     * reporting why it could not be fetched.
+     * @param url the remote's URL
+     * @param branch the branch to fetch **/
+    static String fetch(String url, String branch) {
+        File local = Worktree.common();
+        try (Session s = Session.open(url)) {
+            if (s == null) {
+                return null;
+            }
+            String remoteHead = s.refs.get(branch);
+            if (remoteHead == null) {
+                System.out.println("That remote does not have that branch.");
+                return null;
+            }
+            s.out.writeByte(FETCH);
+            s.out.writeBoolean(Promisor.remote() == null);
+            writeIds(s.out, List.of(remoteHead));
+            sendHaves(local, s);
+            Remote.recordHistory(local, receivePack(local, s.in));
+            return remoteHead;
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return null;
+        } catch (IOException excp) {
+            System.out.println("Lost connection to remote.");
+            return null;
+        }
+    }
+
+    /** Sends the haves of the fetch on S in batches, newest first, reading
+     * each batch's answer only once later batches are on their way, and
+     * stops walking back from any commit the server has.
+     * @param local the .gitlet directory being fetched into
+     * @param s the connection **/
+    private static void sendHaves(File local, Session s) throws IOException {
+        Deque<String> work = new ArrayDeque<>(Remote.tips(local));
+        Set<String> seen = new HashSet<>(work);
+        Set<String> common = new HashSet<>();
+        int sent = 0;
+        int unanswered = 0;
+        while (!work.isEmpty() && sent < MAX_HAVES) {
+            List<String> batch = new ArrayList<>();
+            while (!work.isEmpty() && batch.size() < BATCH) {
+                String id = work.removeFirst();
+                Commit c = Commit.lookup(local, id);
+                if (c == null || common.contains(id)) {
+                    continue;
+                }
+                batch.add(id);
+                Deque<String> parents = new ArrayDeque<>();
+                Remote.pushParents(c, parents);
+                for (String p : parents) {
+                    if (seen.add(p)) {
+                        work.addLast(p);
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            writeIds(s.out, batch);
+            s.out.flush();
+            sent += batch.size();
+            unanswered += 1;
+            if (unanswered == IN_FLIGHT) {
+                markCommon(local, readIds(s.in), common);
+                unanswered -= 1;
+            }
+        }
+        writeIds(s.out, List.of());
+        s.out.flush();
+        for (; unanswered > 0; unanswered -= 1) {
+            readIds(s.in);
+        }
+    }
+
+    /** Adds IDS, which the server has, and their parents to COMMON, so
+     * the walk for haves does not go past them.
+     * @param local the .gitlet directory being fetched into
+     * @param ids commits both sides have
+     * @param common the commits not to send **/
+    private static void markCommon(File local, List<String> ids,
+                                   Set<String> common) {
+        for (String id : ids) {
+            common.add(id);
+            Deque<String> parents = new ArrayDeque<>();
+            Remote.pushParents(Commit.lookup(local, id), parents);
+            common.addAll(parents);
+        }
+    }
+
+    /** Pushes HEAD, the head commit of the branch FROM, to BRANCH of the
+     * served remote URL, reporting any failure.
+     * @param url the remote's URL
+     * @param branch the branch to push to
+     * @param head the commit to push
+     * @param from the branch being pushed **/
+    static void push(String url, String branch, String head, String from) {
+        File local = Worktree.common();
+        try (Session s = Session.open(url)) {
+            if (s == null) {
+                return;
+            }
+            String remoteHead = s.refs.get(branch);
+            if (remoteHead != null
+                    && !Remote.isAncestor(local, remoteHead, head)) {
+                System.out.println(
+                        "Please pull down remote changes before pushing.");
+                return;
+            }
+            Set<String> stored = new HashSet<>();
+            for (String id : s.refs.values()) {
+                if (new File(local, "COMMITS/" + id).isFile()) {
+                    stored.add(id);
+                }
+            }
+            List<String> commits = missing(local, List.of(head), stored);
+            Set<String> blobs = Remote.missingBlobs(local, null, commits);
+            Promisor.prefetch(blobs);
+            s.out.writeByte(PUSH);
+            s.out.writeUTF(branch);
+            s.out.writeBoolean(remoteHead != null);
+            if (remoteHead != null) {
+                s.out.write(Utils.fromHex(remoteHead));
+            }
+            s.out.write(Utils.fromHex(head));
+            s.out.flush();
+            if (s.in.readByte() != OK) {
+                System.out.println(s.in.readUTF());
+                return;
+            }
+            s.in.readUTF();
+            sendPack(local, blobs, commits, s.out);
+            if (s.in.readByte() != OK) {
+                System.out.println(s.in.readUTF());
+            }
+        } catch (IOException excp) {
+            System.out.println("Lost connection to remote.");
+        }
+    }
+
+    /** Returns the commits reachable in SRC from WANTS that a receiver
+     * holding COMMON, all stored in SRC, lacks, parents first. The walk
+     * from WANTS stops at COMMON. Only through a merge can it reach the
+     * history of COMMON by another path, and then only commits no older
+     * than the oldest it found, so the history of COMMON is walked back
+     * just that far; only if that meets one of them is all of it walked,
+     * as the stop set. With bitmaps, negotiate is exact from COMMON
+     * alone.
+     * @param src the .gitlet directory objects come from
+     * @param wants the commits the receiver should end up with
+     * @param common commits both sides store **/
+    private static List<String> missing(File src, Collection<String> wants,
+                                        Collection<String> common) {
+        List<String> commits = Remote.negotiate(src, null, wants, common);
+        if (common.isEmpty() || commits.isEmpty()
+                || Bitmaps.read(src) != null) {
+            return commits;
+        }
+        Set<String> found = new HashSet<>(commits);
+        long oldest = Long.MAX_VALUE;
+        for (String id : commits) {
+            oldest = Math.min(oldest, Commit.lookup(src, id).getTime());
+        }
+        Set<String> seen = new HashSet<>();
+        Deque<String> work = new ArrayDeque<>(common);
+        while (!work.isEmpty()) {
+            String id = work.pop();
+            if (found.contains(id)) {
+                return Remote.negotiate(src, null, wants,
+                        new HashSet<>(Remote.select(src, common, 0)));
+            }
+            Commit c = Commit.lookup(src, id);
+            if (seen.add(id) && c != null && c.getTime() >= oldest) {
+                Remote.pushParents(c, work);
+            }
+        }
+        return commits;
+    }
+
+    /** Writes to OUT a pack of BLOBS and COMMITS, parents first, from the
+     * repository SRC.
+     * @param src the .gitlet directory holding the objects
+     * @param blobs the blobs to send
+     * @param commits the commits to send, parents first
+     * @param out the connection **/
+    private static void sendPack(File src, Collection<String> blobs,
+                                 List<String> commits, OutputStream out)
+        throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        MessageDigest md = Bundle.digest();
+        DeflaterOutputStream deflated =
+                new DeflaterOutputStream(out, deflater, BUFFER);
+        DigestOutputStream digested = new DigestOutputStream(deflated, md);
+        DataOutputStream pack = new DataOutputStream(digested);
+        for (String sha : blobs) {
+            Bundle.writeObject(pack, Bundle.BLOB, sha,
+                    new File(src, "FILES/" + sha));
+        }
+        for (String id : commits) {
+            Bundle.writeObject(pack, Bundle.COMMIT, id,
+                    new File(src, "COMMITS/" + id));
+        }
+        pack.writeByte(Bundle.END);
+        digested.on(false);
+        pack.write(md.digest());
+        deflated.finish();
+        deflater.end();
+        out.flush();
+    }
+
+    /** Reads a pack from IN into the repository whose .gitlet directory
+     * is DIR, checking each object and the pack's checksum, and returns
+     * the IDs of the commits it stored, parents first. Throws a
+     * GitletException if either is wrong.
+     * @param dir the .gitlet directory to store into
+     * @param in the connection **/
+    private static List<String> receivePack(File dir, InputStream in)
+        throws IOException {
+        Inflater inflater = new Inflater();
+        MessageDigest md = Bundle.digest();
+        DigestInputStream digested = new DigestInputStream(
+                new InflaterInputStream(in, inflater, BUFFER), md);
+        DataInputStream pack = new DataInputStream(digested);
+        List<String> commits = new ArrayList<>();
+        try {
+            for (byte type = pack.readByte(); type != Bundle.END;
+                 type = pack.readByte()) {
+                String stored = Bundle.readObject(dir, pack, type);
+                if (stored != null && type == Bundle.COMMIT) {
+                    commits.add(stored);
+                }
+            }
+            digested.on(false);
+            byte[] checksum = new byte[md.getDigestLength()];
+            pack.readFully(checksum);
+            if (!MessageDigest.isEqual(checksum, md.digest())) {
+                throw Utils.error("Pack checksum mismatch.");
+            }
+        } finally {
+            inflater.end();
+        }
+        return commits;
+    }
+
+    /** Writes IDS to OUT as a count and raw IDs.
+     * @param out the stream
+     * @param ids hex IDs **/
+    private static void writeIds(DataOutputStream out,
+                                 Collection<String> ids) throws IOException {
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            out.write(Utils.fromHex(id));
+        }
+    }
+
+    /** Returns the IDs written to IN by writeIds.
+     * @param in the stream **/
+    private static List<String> readIds(DataInputStream in)
+        throws IOException {
+        int count = in.readInt();
+        List<String> result = new ArrayList<>(Math.min(count, BATCH));
+        for (int k = 0; k < count; k += 1) {
+            result.add(readId(in));
+        }
+        return result;
+    }
+
+    /** Returns the hex form of the raw ID read from IN.
+     * @param in the stream **/
+    private static String readId(DataInputStream in) throws IOException {
+        byte[] raw = new byte[HashAlgorithm.current().length()];
+        in.readFully(raw);
+        return Utils.toHex(raw);
+    }
+
+    /** A client's connection to a served remote, past the greeting. **/
+    private static final class Session implements Closeable {
+        /** The connection. **/
+        private final Socket socket;
+        /** What the server sends. **/
+        private final DataInputStream in;
+        /** What is sent to the server. **/
+        private final DataOutputStream out;
+        /** The server's refs and their commit IDs. **/
+        private final Map<String, String> refs = new LinkedHashMap<>();
+
+        /** A session on SOCKET.
+         * @param socket a connection to a server **/
+        private Session(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream(), BUFFER));
+            out = new DataOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream(), BUFFER));
+        }
+
+        /** Connects to the server at URL, greets it and reads its refs,
+         * returning the session, or null after reporting why there is
+         * none.
+         * @param url a gitlet:// URL **/
+        static Session open(String url) throws IOException {
+            String address = url.substring(SCHEME.length());
+            int colon = address.lastIndexOf(':');
+            String host = colon < 0 ? address : address.substring(0, colon);
+            int port = DEFAULT_PORT;
+            if (colon >= 0) {
+                try {
+                    port = Integer.parseInt(address.substring(colon + 1));
+                } catch (NumberFormatException excp) {
+                    port = -1;
+                }
+            }
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port));
+            } catch (IOException | IllegalArgumentException excp) {
+                socket.close();
+                System.out.println("Unable to connect to remote.");
+                return null;
+            }
+            Session s = new Session(socket);
+            s.out.write(MAGIC);
+            s.out.writeUTF(HashAlgorithm.current().getName());
+            s.out.flush();
+            if (s.in.readByte() != OK) {
+                System.out.println(s.in.readUTF());
+                s.close();
+                return null;
+            }
+            for (int k = s.in.readInt(); k > 0; k -= 1) {
+                String name = s.in.readUTF();
+                s.refs.put(name, readId(s.in));
+            }
+            return s;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Instrumentation of gitlet's I/O. Object reads and writes, hashing,
+ * directory scans and ref updates are each a Span: a JDK Flight Recorder
+ * event, visible when gitlet runs under
+ * -XX:StartFlightRecording=filename=gitlet.jfr, that also adds its time
+ * and size to a per-kind summary when the --trace flag is given. With
+ * neither enabled a span costs one unrecorded event, which the JIT
+ * removes, and no clock reads.
+ * @author corey hu **/
+class Trace {
+
+    /** The kinds of traced operations. **/
+    enum Kind {
+        /** Reading a stored object or file. **/
+        READ,
+        /** Writing a stored object or file. **/
+        WRITE,
+        /** Hashing bytes. **/
+        HASH,
+        /** Listing a directory. **/
+        SCAN,
+        /** Replacing a ref file. **/
+        REF
+    }
+
+    /** Whether the --trace summary is being collected. **/
+    private static boolean enabled;
+    /** When tracing started, in nanoseconds. **/
+    private static long started;
+    /** Number of operations of each kind. **/
+    private static final long[] COUNTS = new long[Kind.values().length];
+    /** Nanoseconds spent in operations of each kind. **/
+    private static final long[] NANOS = new long[Kind.values().length];
+    /** Bytes or entries handled by operations of each kind. **/
+    private static final long[] AMOUNTS = new long[Kind.values().length];
+
+    /** Starts collecting the --trace summary. **/
+    static void enable() {
+        enabled = true;
+        started = System.nanoTime();
+    }
+
+    /** Returns whether the --trace summary is being collected. **/
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the summary collected since enable(): for each kind of
+     * operation, how many ran, how much they handled and how long they
+     * took. **/
+    static String report() {
+        long total = System.nanoTime() - started;
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "trace: %.3f ms total%n", total / 1e6));
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            out.append(String.format(Locale.ROOT,
+                    "  %-5s %8d ops %12d %-7s %10.3f ms %5.1f%%%n",
+                    kind.name().toLowerCase(Locale.ROOT), COUNTS[k],
+                    AMOUNTS[k], kind == Kind.SCAN ? "entries" : "bytes",
+                    NANOS[k] / 1e6,
+                    total == 0 ? 0.0 : 100.0 * NANOS[k] / total));
+        }
+        return out.toString();
+    }
+
+    /** Adds an operation of KIND that took NANOS and handled AMOUNT
+     * bytes or entries to the summary. Spans may end on several threads.
+     * @param kind the kind of operation
+     * @param nanos its duration in nanoseconds
+     * @param amount bytes or entries handled **/
+    private static synchronized void record(Kind kind, long nanos,
+                                            long amount) {
+        int k = kind.ordinal();
+        COUNTS[k] += 1;
+        NANOS[k] += nanos;
+        AMOUNTS[k] += amount;
+    }
+
+    /** Clears the summary. **/
+    static void reset() {
+        for (int k = 0; k < COUNTS.length; k += 1) {
+            COUNTS[k] = NANOS[k] = AMOUNTS[k] = 0;
+        }
+        started = System.nanoTime();
+    }
+
+    /** A traced operation, timed from construction to done(). **/
+    @Category("Gitlet")
+    abstract static class Span extends Event {
+        /** The kind of operation, for the summary. **/
+        private final transient Kind kind;
+        /** When the operation started, if tracing. **/
+        private final transient long start;
+
+        /** Starts timing an operation of KIND.
+         * @param kind the kind of operation **/
+        Span(Kind kind) {
+            this.kind = kind;
+            this.start = enabled ? System.nanoTime() : 0;
+            begin();
+        }
+
+        /** Ends the operation, which handled AMOUNT bytes or entries,
+         * and records it.
+         * @param amount bytes or entries handled **/
+        final void done(long amount) {
+            end();
+            if (shouldCommit()) {
+                setAmount(amount);
+                commit();
+            }
+            if (enabled) {
+                record(kind, System.nanoTime() - start, amount);
+            }
+        }
+
+        /** Sets the recorded size of the operation to AMOUNT.
+         * @param amount bytes or entries handled **/
+        abstract void setAmount(long amount);
+    }
+
+    /** A stored object or file being read. **/
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    static final class ObjectRead extends Span {
+        /** What was read. **/
+        @Label("Type")
+        private final String type;
+        /** The file read. **/
+        @Label("Path")
+        private final String path;
+        /** Bytes read. **/
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+
+        /** Starts reading a TYPE from PATH.
+         * @param type what is read: a class name, or contents
+         * @param path the file read **/
+        ObjectRead(String type, String path) {
+            super(Kind.READ);
+            this.type = type;
+            this.path = path;
+        }
+
+        @Override
+        void setAmount(long amount) {
+            bytes = amount;
+        }
+    }
+
+    /** A stored object or file being written. **/
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    static final class ObjectWrite extends Span {
+        /** What was written. **/
+        @Label("Type")
+        private final String type;
+        /** The file written. **/
+        @Label("Path")
+        private final String path;
+        /** Bytes written. **/
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+
+        /** Starts writing a TYPE to PATH.
+         * @param type what is written: a class name, or contents
+         * @param path the file written **/
+        ObjectWrite(String type, String path) {
+            super(Kind.WRITE);
+            this.type = type;
+            this.path = path;
+        }
+
+        @Override
+        void setAmount(long amount) {
+            bytes = amount;
+        }
+    }
+
+    /** Bytes being hashed into an object ID. **/
+    @Name("gitlet.Hash")
+    @Label("Hash")
+    static final class Hash extends Span {
+        /** Bytes hashed. **/
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+
+        /** Starts hashing. **/
+        Hash() {
+            super(Kind.HASH);
+        }
+
+        @Override
+        void setAmount(long amount) {
+            bytes = amount;
+        }
+    }
+
+    /** A directory being listed. **/
+    @Name("gitlet.DirectoryScan")
+    @Label("Directory Scan")
+    static final class DirectoryScan extends Span {
+        /** The directory listed. **/
+        @Label("Path")
+        private final String path;
+        /** Entries found. **/
+        @Label("Entries")
+        private long entries;
+
+        /** Starts listing PATH.
+         * @param path the directory **/
+        DirectoryScan(String path) {
+            super(Kind.SCAN);
+            this.path = path;
+        }
+
+        @Override
+        void setAmount(long amount) {
+            entries = amount;
+        }
+    }
+
+    /** A ref table or HEAD being replaced. **/
+    @Name("gitlet.RefUpdate")
+    @Label("Ref Update")
+    @Description("An atomic replacement of the ref table or HEAD")
+    static final class RefUpdate extends Span {
+        /** The file replaced. **/
+        @Label("Path")
+        private final String path;
+        /** Bytes written. **/
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+
+        /** Starts replacing PATH.
+         * @param path the ref file **/
+        RefUpdate(String path) {
+            super(Kind.REF);
+            this.path = path;
+        }
+
+        @Override
+        void setAmount(long amount) {
+            bytes = amount;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** A three-way merge of two trees, each a map from file names to blob IDs,
+ * against the tree they both came from. The merge starts from our tree
+ * and looks only at the files either side changed, found by diffing the
+ * trees, and compares blob IDs only, so files neither side changed are
+ * never read; the only blobs made, for files whose merged contents are
+ * new, are added to FILES and nothing else is written. Neither the
+ * working directory nor the index is touched, which is left to the
+ * caller once the result is known. A file that one side renamed and the
+ * other changed under its old name gets the change under its new name,
+ * as found by Renames.
+ * @author corey hu **/
+class TreeMerge {
+
+    /** The tree both sides came from. **/
+    private final PathTrie base;
+    /** Our side, the head. **/
+    private final PathTrie ours;
+    /** Their side, being merged in. **/
+    private final PathTrie theirs;
+    /** The merged tree, made from ours. **/
+    private final PathTrie.Builder tree;
+    /** The files left in conflict, in order. **/
+    private final List<String> conflicts = new ArrayList<>();
+
+    /** A merge of OURS and THEIRS, both descended from BASE.
+     * @param base the common tree
+     * @param ours the head's tree
+     * @param theirs the other tree **/
+    TreeMerge(Map<String, String> base, Map<String, String> ours,
+              Map<String, String> theirs) {
+        this.base = PathTrie.of(base);
+        this.ours = PathTrie.of(ours);
+        this.theirs = PathTrie.of(theirs);
+        this.tree = this.ours.edit();
+    }
+
+    /** Merges the trees and returns this. **/
+    TreeMerge run() {
+        Set<String> handled = new HashSet<>();
+        mergeRenames(true, handled);
+        mergeRenames(false, handled);
+        Set<String> oursChanged = new HashSet<>();
+        base.diff(ours, (fileName, was, now) -> oursChanged.add(fileName));
+        base.diff(theirs, (fileName, was, now) -> {
+            String t = now == null ? null : now.hex();
+            if (handled.contains(fileName)
+                    || Objects.equals(ours.getId(fileName), now)) {
+                return;
+            } else if (!oursChanged.contains(fileName)) {
+                set(fileName, t);
+            } else {
+                set(fileName, conflict(fileName,
+                        contents(ours.get(fileName)), contents(t)));
+            }
+        });
+        Collections.sort(conflicts);
+        return this;
+    }
+
+    /** Returns the merged files and their blob IDs. **/
+    PathTrie getTree() {
+        return tree.build();
+    }
+
+    /** Makes SHA the blob of FILENAME in the merged tree, or drops the
+     * file if SHA is null.
+     * @param fileName a file
+     * @param sha its merged blob ID, or null **/
+    private void set(String fileName, String sha) {
+        if (sha == null) {
+            tree.remove(fileName);
+        } else {
+            tree.put(fileName, sha);
+        }
+    }
+
+    /** Returns the files left in conflict, in order. **/
+    List<String> getConflicts() {
+        return conflicts;
+    }
+
+    /** Merges the files our side, if OURSRENAMED, or else their side
+     * renamed while the other changed them under their old names, adding
+     * both names to HANDLED.
+     * @param oursRenamed which side's renames to look for
+     * @param handled the files merged already **/
+    private void mergeRenames(boolean oursRenamed, Set<String> handled) {
+        Map<String, String> renamer = oursRenamed ? ours : theirs;
+        Map<String, String> changer = oursRenamed ? theirs : ours;
+        for (Renames.Pair p : Renames.renames(base, renamer)) {
+            String from = p.getFrom();
+            String to = p.getTo();
+            String changed = changer.get(from);
+            if (changed == null || changed.equals(base.get(from))
+                    || changer.containsKey(to)
+                    || handled.contains(from) || handled.contains(to)) {
+                continue;
+            }
+            String original = contents(base.get(from));
+            String renamed = contents(renamer.get(to));
+            String change = contents(changed);
+            if (renamed.equals(original) || renamed.equals(change)) {
+                tree.put(to, new Blob(to, change).store());
+            } else if (oursRenamed) {
+                tree.put(to, conflict(to, renamed, change));
+            } else {
+                tree.put(to, conflict(to, change, renamed));
+            }
+            tree.remove(from);
+            handled.add(from);
+            handled.add(to);
+        }
+    }
+
+    /** Records FILENAME as conflicted and returns the ID of the blob
+     * holding both versions, OURCONTENTS and THEIRCONTENTS.
+     * @param fileName the conflicted file
+     * @param ourContents its contents on our side
+     * @param theirContents its contents on their side **/
+    private String conflict(String fileName, String ourContents,
+                            String theirContents) {
+        conflicts.add(fileName);
+        String merged = "<<<<<<< HEAD\n" + ourContents + "=======\n"
+                + theirContents + ">>>>>>>\n";
+        return new Blob(fileName, merged).store();
+    }
+
+    /** Returns the contents of the blob SHA, or "" if SHA is null.
+     * @param sha a blob ID, or null **/
+    private static String contents(String sha) {
+        return sha == null ? "" : Blob.getBlob(sha).getContents();
+    }
+}
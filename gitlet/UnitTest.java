@@ -3,8 +3,27 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import static org.junit.Assert.*;
 
@@ -39,6 +58,430 @@ public class UnitTest {
 
     }
 
+    /** Ref IDs are stored as raw bytes and must survive the trip back. */
+    @Test
+    public void testHexRoundTrip() {
+        String sha = Utils.sha1("hello");
+        byte[] raw = Utils.fromHex(sha);
+        assertEquals(HashAlgorithm.SHA1.length(), raw.length);
+        assertEquals(sha, Utils.toHex(raw));
+    }
+
+    /** Ref updates re-read the table under its lock, so a table read
+     * before another writer's change keeps that change, and HEAD resolves
+     * through the branch it names. */
+    @Test
+    public void testRefTable() throws Exception {
+        File dir = Files.createTempDirectory("refs").toFile();
+        RefTable stale = RefTable.read(dir);
+        RefTable refs = RefTable.read(dir);
+        refs.update("master", Utils.sha1("a"), "one");
+        stale.update("other", Utils.sha1("b"), "two");
+        RefTable.setHead(dir, "other");
+        RefTable back = RefTable.read(dir);
+        assertEquals(List.of("master", "other"), back.names());
+        assertEquals(Utils.sha1("b"), back.resolve(RefTable.head(dir)));
+        refs.update("master", Utils.sha1("c"), "three");
+        stale.delete("other");
+        back = RefTable.read(dir);
+        assertEquals(List.of("master"), back.names());
+        assertEquals(Utils.sha1("c"), back.resolve("master"));
+        assertNull(back.resolve("other"));
+        assertFalse(RefLog.logOf(dir, "other").exists());
+        assertEquals(Utils.sha1("a"), RefLog.read(
+                RefLog.logOf(dir, "master")).get(1).getOldId());
+        Thread[] writers = new Thread[8];
+        for (int i = 0; i < writers.length; i += 1) {
+            String name = "par" + i;
+            writers[i] = new Thread(() -> RefTable.read(dir)
+                    .update(name, Utils.sha1(name), "branch"));
+            writers[i].start();
+        }
+        for (Thread t : writers) {
+            t.join();
+        }
+        assertEquals(9, RefTable.read(dir).size());
+        assertFalse(new File(dir, "refs.lock").exists());
+    }
+
+    /** Stored blobs from elsewhere parse only as blobs. */
+    @Test
+    public void testBlobParse() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Blob("a.txt", "hello\n"));
+        }
+        Blob b = Blob.parse(bytes.toByteArray());
+        assertEquals(new Blob("a.txt", "hello\n").id(), b.id());
+        bytes.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new HashMap<>(Map.of("a", "b")));
+        }
+        boolean rejected = false;
+        try {
+            Blob.parse(bytes.toByteArray());
+        } catch (IllegalArgumentException excp) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+
+    /** Bundles with a bad header, an object length out of range or too
+     * few bytes are refused without storing anything, and a good one is
+     * read in. */
+    @Test
+    public void testBundleErrors() throws IOException {
+        File dir = Files.createTempDirectory("bundle").toFile();
+        new File(dir, "COMMITS").mkdir();
+        new File(dir, "FILES").mkdir();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Blob("a.txt", "hello\n"));
+        }
+        byte[] blob = bytes.toByteArray();
+        String id = new Blob("a.txt", "hello\n").id();
+        List<String> commits = new ArrayList<>();
+        assertNull(Bundle.read(dir, bundleOf(dir, "NOTABUNDLE", id, blob,
+                blob.length, blob.length), commits));
+        assertNull(Bundle.read(dir, bundleOf(dir, "GLBUNDLE", id, blob,
+                -5, 0), commits));
+        assertNull(Bundle.read(dir, bundleOf(dir, "GLBUNDLE", id, blob,
+                0x7ffffff0, blob.length), commits));
+        assertNull(Bundle.read(dir, bundleOf(dir, "GLBUNDLE", id, blob,
+                blob.length, 10), commits));
+        assertEquals(List.of("COMMITS", "FILES"),
+                new ArrayList<>(new TreeSet<>(List.of(dir.list()))));
+        assertEquals(0, new File(dir, "FILES").list().length);
+        assertEquals(Map.of("master", id), Bundle.read(dir,
+                bundleOf(dir, "GLBUNDLE", id, blob, blob.length,
+                        blob.length), commits));
+        assertTrue(new File(dir, "FILES/" + id).isFile());
+        assertTrue(commits.isEmpty());
+    }
+
+    /** Returns a bundle file in DIR whose header starts with MAGIC and
+     * that holds one blob with ID, claiming LENGTH bytes of STORED and
+     * holding the first SENT of them, followed by the bundle's end if
+     * all were sent. */
+    private static File bundleOf(File dir, String magic, String id,
+                                 byte[] stored, int length, int sent)
+        throws IOException {
+        File file = File.createTempFile("test", ".bundle");
+        file.deleteOnExit();
+        MessageDigest md = Bundle.digest();
+        try (DigestOutputStream digested = new DigestOutputStream(
+                new FileOutputStream(file), md);
+             DataOutputStream out = new DataOutputStream(digested)) {
+            out.write(magic.getBytes());
+            out.writeInt(2);
+            out.writeUTF(HashAlgorithm.of(dir).getName());
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeUTF("master");
+            out.write(Utils.fromHex(id));
+            out.writeByte(Bundle.BLOB);
+            out.write(Utils.fromHex(id));
+            out.writeInt(length);
+            out.write(stored, 0, sent);
+            if (sent == length) {
+                out.writeByte(Bundle.END);
+                digested.on(false);
+                out.write(md.digest());
+            }
+        }
+        return file;
+    }
+
+    /** Tail reads walk the log backwards and agree with a full read. */
+    @Test
+    public void testRefLogTail() throws IOException {
+        File log = File.createTempFile("reflog", null);
+        log.delete();
+        for (int i = 0; i < 5; i += 1) {
+            RefLog.append(log, i == 0 ? null : Utils.sha1("" + (i - 1)),
+                    Utils.sha1("" + i), "commit " + i);
+        }
+        assertEquals(5, RefLog.read(log).size());
+        assertNull(RefLog.read(log).get(0).getOldId());
+        List<RefLog.Entry> tail = RefLog.tail(log, 2);
+        assertEquals(2, tail.size());
+        assertEquals("commit 3", tail.get(0).getMsg());
+        assertEquals(Utils.sha1("4"), tail.get(1).getNewId());
+        log.delete();
+    }
+
+    /** Retaining entries rewrites the log without the others, and keeps
+     * entries appended while it runs. */
+    @Test
+    public void testRefLogRetain() throws Exception {
+        File log = File.createTempFile("reflog", null);
+        log.delete();
+        for (int i = 0; i < 4; i += 1) {
+            RefLog.append(log, null, Utils.sha1("" + i), "commit " + i);
+        }
+        RefLog.retain(log, e -> !e.getMsg().equals("commit 2"));
+        List<RefLog.Entry> kept = RefLog.read(log);
+        assertEquals(3, kept.size());
+        assertEquals("commit 3", kept.get(2).getMsg());
+        assertEquals("commit 3", RefLog.tail(log, 1).get(0).getMsg());
+        Thread appender = new Thread(() -> {
+            for (int i = 0; i < 200; i += 1) {
+                RefLog.append(log, null, Utils.sha1("" + i), "added " + i);
+            }
+        });
+        appender.start();
+        for (int i = 0; i < 20; i += 1) {
+            RefLog.retain(log, e -> !e.getMsg().startsWith("commit"));
+        }
+        appender.join();
+        assertEquals(200, RefLog.read(log).size());
+        assertFalse(new File(log.getPath() + ".lock").exists());
+        log.delete();
+    }
+
+    /** A diff keeps the longest run of common lines. */
+    @Test
+    public void testDiffMatch() {
+        String[] before = {"a", "b", "c", "a", "b", "b", "a"};
+        String[] after = {"c", "b", "a", "b", "a", "c"};
+        int[] kept = Diff.match(before, after);
+        int common = 0;
+        for (int j = 0; j < kept.length; j += 1) {
+            if (kept[j] >= 0) {
+                assertEquals(before[kept[j]], after[j]);
+                assertTrue(common == 0 || kept[j] > kept[j - 1]
+                        || kept[j - 1] < 0);
+                common += 1;
+            }
+        }
+        assertEquals(4, common);
+        kept = Diff.match(new String[] {"x", "y"},
+                new String[] {"x", "z", "y"});
+        assertEquals("[0, -1, 1]", Arrays.toString(kept));
+    }
+
+    /** Sketches of files sharing most lines mostly agree. */
+    @Test
+    public void testRenameSketch() {
+        String a = "";
+        String b = "";
+        String c = "";
+        for (int i = 0; i < 40; i += 1) {
+            a += "line " + i + "\n";
+            b += (i % 10 == 0 ? "changed " : "line ") + i + "\n";
+            c += "other " + i + "\n";
+        }
+        long[] sa = Renames.sketch(a);
+        assertEquals(100, Renames.agreement(sa, Renames.sketch(a)));
+        assertTrue(Renames.agreement(sa, Renames.sketch(b))
+                >= Renames.MIN_SCORE);
+        assertTrue(Renames.agreement(sa, Renames.sketch(c))
+                < Renames.MIN_SCORE);
+        assertNull(Renames.sketch(""));
+    }
+
+    /** A merge takes each side's changes by blob ID alone. */
+    @Test
+    public void testTreeMerge() {
+        Map<String, String> base = Map.of("a", "01", "b", "02", "c", "03");
+        Map<String, String> ours = Map.of("a", "01", "b", "0e", "c", "03",
+                "d", "04");
+        Map<String, String> theirs = Map.of("a", "0f", "b", "02");
+        TreeMerge m = new TreeMerge(base, ours, theirs).run();
+        assertEquals(Map.of("a", "0f", "b", "0e", "d", "04"), m.getTree());
+        assertTrue(m.getConflicts().isEmpty());
+    }
+
+    /** A compressed bitmap or'es back in to the bits it was made from. */
+    @Test
+    public void testBitmapEncoding() {
+        Bitmap b = new Bitmap(1000);
+        for (int i = 100; i < 700; i += 1) {
+            b.set(i);
+        }
+        b.set(3);
+        b.set(999);
+        Bitmap copy = new Bitmap(1000);
+        copy.or(ByteBuffer.wrap(b.encode()), 0);
+        assertEquals(602, copy.cardinality(0, 1000));
+        assertTrue(copy.get(3) && copy.get(699) && copy.get(999));
+        assertFalse(copy.get(700) || copy.get(99));
+        assertTrue(b.encode().length < 1000 / 8);
+        copy.andNot(b);
+        assertEquals(-1, copy.nextSetBit(0));
+    }
+
+    /** A path map holds what a HashMap would, through puts and removes. */
+    @Test
+    public void testPathMap() {
+        Map<String, String> expected = new HashMap<>();
+        PathMap m = new PathMap();
+        for (int i = 0; i < 500; i += 1) {
+            String sha = Utils.sha1("contents " + i);
+            expected.put("file" + i, sha);
+            m.put("file" + i, sha);
+        }
+        for (int i = 0; i < 500; i += 3) {
+            assertEquals(expected.remove("file" + i), m.remove("file" + i));
+        }
+        assertNull(m.remove("file0"));
+        assertEquals(expected, m);
+        assertEquals(m, new PathMap(m));
+        assertEquals(ObjectId.fromHex(expected.get("file1")),
+                m.getId("file1"));
+        assertEquals(expected.get("file1"), m.getId("file1").hex());
+        assertTrue(ObjectId.fromHex("00ff").compareTo(
+                ObjectId.fromHex("ff00")) < 0);
+    }
+
+    /** A trie made by changes to another holds what a HashMap would,
+     * leaves the other as it was, and diffs against it by those changes. */
+    @Test
+    public void testPathTrie() {
+        Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i += 1) {
+            expected.put("file" + i, Utils.sha1("contents " + i));
+        }
+        PathTrie before = PathTrie.of(expected);
+        assertEquals(expected, before);
+        PathTrie.Builder b = before.edit();
+        Map<String, String> changes = new TreeMap<>();
+        for (int i = 0; i < 2000; i += 7) {
+            b.remove("file" + i);
+            changes.put("file" + i, "D");
+        }
+        b.put("file1", Utils.sha1("changed"));
+        b.put("added", Utils.sha1("added"));
+        changes.put("file1", "M");
+        changes.put("added", "A");
+        PathTrie after = b.build();
+        assertEquals(expected, before);
+        assertEquals(2000 - 286 + 1, after.size());
+        assertNull(after.get("file0"));
+        assertEquals(Utils.sha1("changed"), after.get("file1"));
+        Map<String, String> found = new TreeMap<>();
+        before.diff(after, (name, was, now) -> found.put(name,
+                now == null ? "D" : was == null ? "A" : "M"));
+        assertEquals(changes, found);
+        PathTrie back = after.without("added")
+                .with("file1", ObjectId.fromHex(expected.get("file1")));
+        for (int i = 0; i < 2000; i += 7) {
+            back = back.with("file" + i,
+                    ObjectId.fromHex(expected.get("file" + i)));
+        }
+        assertEquals(before, back);
+        assertEquals(back, new HashMap<>(back));
+    }
+
+    /** Changed-path filters hold their files and few others. */
+    @Test
+    public void testChangedPathFilter() {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < 100; i += 1) {
+            names.add("file" + i + ".txt");
+        }
+        byte[] filter = CommitGraph.filterOf(names);
+        ByteBuffer buf = ByteBuffer.wrap(filter);
+        for (String name : names) {
+            assertTrue(CommitGraph.mayContain(buf, 0, filter.length,
+                    CommitGraph.hashes(name)));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i += 1) {
+            if (CommitGraph.mayContain(buf, 0, filter.length,
+                    CommitGraph.hashes("other" + i))) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < 300);
+        assertFalse(CommitGraph.mayContain(buf, 0, 0,
+                CommitGraph.hashes("file0.txt")));
+    }
+
+    /** The least recently used objects go first once the limit is hit,
+     * including when a cached object grows. */
+    @Test
+    public void testObjectCacheEviction() {
+        ObjectCache<String> cache = new ObjectCache<>("test", 30);
+        cache.put("a", "A", 10);
+        cache.put("b", "B", 10);
+        cache.put("c", "C", 10);
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D", 10);
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(30, cache.getWeight());
+        cache.resize("c", "C", 20);
+        assertNull(cache.peek("d"));
+        assertEquals(30, cache.getWeight());
+        cache.resize("a", "other", 5);
+        assertEquals(30, cache.getWeight());
+    }
+
+    /** Every algorithm matches its published test vectors, and BLAKE3
+     * agrees with itself whether it hashes in parallel or streams. */
+    @Test
+    public void testHashAlgorithms() {
+        assertEquals(Utils.sha1("abc"), HashAlgorithm.SHA1.hex("abc"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223"
+                + "b00361a396177a9cb410ff61f20015ad",
+                HashAlgorithm.SHA256.hex("abc"));
+        assertEquals("af1349b9f5f9a1a6a0404dea36dcc949"
+                + "9bcb25c9adc112b7cc9a93cae41f3262",
+                HashAlgorithm.BLAKE3.hex(""));
+        assertEquals("6437b3ac38465133ffb63b75273a8db5"
+                + "48c558465d79db03fd359c6cd5bd9d85",
+                HashAlgorithm.BLAKE3.hex("abc"));
+        byte[] big = new byte[(3 << 20) + 17];
+        new Random(61).nextBytes(big);
+        HashAlgorithm.Hasher h = HashAlgorithm.BLAKE3.newHasher();
+        for (int off = 0; off < big.length; off += 1000) {
+            h.update(big, off, Math.min(1000, big.length - off));
+        }
+        assertArrayEquals(h.finish(), HashAlgorithm.BLAKE3.digest(big));
+    }
+
+    /** A blob of a megabyte or more reaches BLAKE3's parallel digest as
+     * one array, and gets the ID streaming it would. */
+    @Test
+    public void testBlobHashParallel() {
+        List<Integer> digested = new ArrayList<>();
+        HashAlgorithm spy = new Blake3() {
+            @Override
+            byte[] digest(byte[] data) {
+                digested.add(data.length);
+                return super.digest(data);
+            }
+        };
+        StringBuilder contents = new StringBuilder();
+        while (contents.length() < Blake3.PARALLEL_MIN) {
+            contents.append("line ").append(contents.length()).append('\n');
+        }
+        Blob b = new Blob("big.txt", contents.toString());
+        String id = b.id(spy);
+        byte[] name = "big.txt".getBytes(StandardCharsets.UTF_8);
+        byte[] data = contents.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(List.of(name.length + data.length), digested);
+        assertTrue(digested.get(0) >= Blake3.PARALLEL_MIN);
+        HashAlgorithm.Hasher h = HashAlgorithm.BLAKE3.newHasher();
+        h.update(name, 0, name.length);
+        h.update(data, 0, data.length);
+        assertEquals(Utils.toHex(h.finish()), id);
+    }
+
+    /** The --trace summary counts hashing and the bytes hashed. */
+    @Test
+    public void testTraceSummary() {
+        Trace.enable();
+        Trace.reset();
+        Utils.sha1("abc", "de");
+        assertTrue(Trace.report().matches(
+                "(?s).*hash +1 ops +5 bytes.*"));
+        Trace.reset();
+    }
+
 }
 
 
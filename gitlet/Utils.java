@@ -3,10 +3,13 @@ package gitlet;
 import java.io.FilenameFilter;
 import java.io.FileOutputStream;
 import java.io.ObjectOutputStream;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
@@ -16,7 +19,6 @@ import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -30,25 +32,31 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The hexadecimal digits, as Latin-1 bytes. */
+    private static final byte[] HEX_DIGITS =
+        "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        Trace.Hash span = new Trace.Hash();
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long bytes = 0;
             for (Object val : vals) {
+                byte[] data;
                 if (val instanceof byte[]) {
-                    md.update((byte[]) val);
+                    data = (byte[]) val;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    data = ((String) val).getBytes(StandardCharsets.UTF_8);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
+                md.update(data);
+                bytes += data.length;
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            span.done(bytes);
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -60,6 +68,60 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the lower-case hexadecimal numeral for BYTES. Its digits
+     *  are looked up and built as Latin-1 bytes, the form the string
+     *  keeps them in, so nothing is allocated besides the string. */
+    static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /** Returns the lower-case hexadecimal numeral for the LENGTH bytes
+     *  at OFFSET in BYTES. */
+    static String toHex(byte[] bytes, int offset, int length) {
+        byte[] result = new byte[2 * length];
+        for (int i = 0; i < length; i += 1) {
+            byte b = bytes[offset + i];
+            result[2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new NumberFormatException("not hex: " + hex);
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
+    /** Writes S to OUT as an int count of its UTF-8 bytes followed by
+     *  those bytes. Unlike writeUTF, this holds strings of any length. */
+    static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns the string written by writeString that IN holds next.
+     *  IN must report every byte it has left as available. */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -94,8 +156,12 @@ class Utils {
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        Trace.ObjectRead span = new Trace.ObjectRead("contents",
+                file.getPath());
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] result = Files.readAllBytes(file.toPath());
+            span.done(result.length);
+            return result;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -113,6 +179,14 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        write(file, "contents", contents);
+    }
+
+    /** Writes CONTENTS, of kind TYPE, to FILE as for writeContents,
+     *  tracing the write. */
+    private static void write(File file, String type, Object... contents) {
+        Trace.ObjectWrite span = new Trace.ObjectWrite(type, file.getPath());
+        long bytes = 0;
         try {
             if (file.isDirectory()) {
                 throw
@@ -121,13 +195,13 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] data = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(data);
+                bytes += data.length;
             }
             str.close();
+            span.done(bytes);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -137,11 +211,15 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
+        Trace.ObjectRead span = new Trace.ObjectRead(
+                expectedClass.getSimpleName(), file.getPath());
         try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
             ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            span.done(bytes.length);
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -152,7 +230,7 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        write(file, obj.getClass().getSimpleName(), serialize(obj));
     }
 
     /* DIRECTORIES */
@@ -170,10 +248,12 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        Trace.DirectoryScan span = new Trace.DirectoryScan(dir.getPath());
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
         } else {
+            span.done(files.length);
             Arrays.sort(files);
             return Arrays.asList(files);
         }
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The working directories of a repository. The repository's own .gitlet
+ * directory holds everything they share: the object store, the refs, the
+ * logs and the caches built from them. A linked worktree, made by
+ * worktree add, has a .gitlet directory of its own holding only its
+ * HEAD, its index (the repo file), its STAGING area and its sparse
+ * patterns, together with commondir, which names the shared directory,
+ * so it costs no more disk than its checked-out files. Linked worktrees
+ * are registered one per file in the shared worktrees directory. A
+ * branch is checked out in at most one worktree: moving a HEAD first
+ * takes the shared worktrees.lock, then checks every other worktree's
+ * HEAD.
+ * @author corey hu **/
+class Worktree {
+
+    /** The shared .gitlet directory, once found. **/
+    private static File common;
+
+    /** Returns the .gitlet directory shared by every worktree of the
+     * repository in the working directory. **/
+    static File common() {
+        if (common == null) {
+            File f = new File(".gitlet/commondir");
+            common = f.isFile()
+                    ? new File(Utils.readContentsAsString(f).trim())
+                    : new File(".gitlet");
+        }
+        return common;
+    }
+
+    /** Returns the .gitlet directories of every worktree, the shared one
+     * first. Registered worktrees whose directories are gone are
+     * dropped. **/
+    static List<File> all() {
+        List<File> result = new ArrayList<>();
+        result.add(common());
+        File[] registered = new File(common(), "worktrees").listFiles();
+        if (registered != null) {
+            for (File f : registered) {
+                File dir = new File(Utils.readContentsAsString(f).trim());
+                if (new File(dir, "HEAD").isFile()) {
+                    result.add(dir);
+                } else {
+                    f.delete();
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the top directory of the worktree, other than the one
+     * whose .gitlet is EXCEPT, that has BRANCH checked out, or null if
+     * none does.
+     * @param branch a branch name
+     * @param except a .gitlet directory to pass over **/
+    static File holder(String branch, File except) {
+        for (File dir : all()) {
+            if (!canonical(dir).equals(canonical(except))
+                    && RefTable.head(dir).equals(branch)) {
+                return canonical(dir).getParentFile();
+            }
+        }
+        return null;
+    }
+
+    /** Returns F as an absolute path without . or .. parts.
+     * @param f a file **/
+    private static File canonical(File f) {
+        return f.toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    /** Points the HEAD in DIR at BRANCH unless another worktree has it
+     * checked out, which is reported instead, and returns whether it did.
+     * With REGISTER, DIR is also made a linked worktree of this
+     * repository.
+     * @param dir the .gitlet directory of a worktree
+     * @param branch a branch name
+     * @param register whether DIR is a new linked worktree **/
+    static boolean claim(File dir, String branch, boolean register) {
+        File lockFile = new File(common(), "worktrees.lock");
+        try (FileChannel ch = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = ch.lock()) {
+            File other = holder(branch, dir);
+            if (other != null) {
+                System.out.println("That branch is already checked out at "
+                        + other + ".");
+                return false;
+            }
+            if (register) {
+                Utils.writeContents(new File(dir, "commondir"),
+                        canonical(common()) + "\n");
+                File registry = new File(common(), "worktrees");
+                registry.mkdir();
+                String name = canonical(dir).getParentFile().getName();
+                File entry = new File(registry, name);
+                for (int k = 1; entry.exists(); k += 1) {
+                    entry = new File(registry, name + k);
+                }
+                Utils.writeContents(entry, canonical(dir) + "\n");
+            }
+            RefTable.setHead(dir, branch);
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Unregisters the linked worktree whose top directory is TOP and
+     * deletes its .gitlet directory, leaving its files in place, and
+     * returns whether there was one.
+     * @param top a linked worktree's directory **/
+    static boolean remove(File top) {
+        File dir = canonical(new File(top, ".gitlet"));
+        File[] registered = new File(common(), "worktrees").listFiles();
+        for (File f : registered == null ? new File[0] : registered) {
+            File entry = new File(Utils.readContentsAsString(f).trim());
+            if (canonical(entry).equals(dir)) {
+                f.delete();
+                for (String name : Utils.plainFilenamesIn(
+                        new File(dir, "STAGING"))) {
+                    new File(dir, "STAGING/" + name).delete();
+                }
+                new File(dir, "STAGING").delete();
+                for (String name : Utils.plainFilenamesIn(dir)) {
+                    new File(dir, name).delete();
+                }
+                dir.delete();
+                return true;
+            }
+        }
+        return false;
+    }
+}